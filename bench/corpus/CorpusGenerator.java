@@ -0,0 +1,309 @@
+package corpus;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.json.JSONObject;
+
+/*
+ * Writes a compilable Java source tree of a chosen size and shape, plus
+ * expected-stats.json with the graph counts ingestion should produce for it.
+ * Same seed and parameters, same bytes, so scaling curves can be rerun
+ * exactly.
+ *
+ *   java -cp target/benchmarks.jar corpus.CorpusGenerator --out /tmp/corpus-100k --methods 100000
+ *
+ * Options:
+ *   --out DIR                 where to write (required); sources go under DIR/src
+ *   --seed N                  (42)
+ *   --methods N               declared methods, constructors not included (10000)
+ *   --methods-per-class N     (20)
+ *   --package-depth N         levels below the root package "gen" (deep enough for ~20 classes per leaf)
+ *   --package-fanout N        subpackages per package, so fanout^depth leaf packages (4)
+ *   --calls-per-method N      call sites per method; duplicates collapse into one edge (3)
+ *   --call-locality P         chance a call stays inside the caller's package (0.6)
+ *   --inheritance P           chance a class extends an earlier class (0.2)
+ *   --fields-per-class N      (4)
+ *   --ref-fields P            chance a field has a corpus class type instead of a primitive (0.5)
+ *
+ * Only primitives, arrays and corpus classes are used, since the scraper's
+ * type solver has no JDK classes to resolve against; every method is static
+ * so each call resolves without needing receiver types. callEdgesIntoSubclasses
+ * counts the call edges whose target class extends another corpus class:
+ * resolving those walks up to java.lang.Object, which the scraper currently
+ * cannot see, so expect ingestion to come up short by that many.
+ */
+public class CorpusGenerator {
+
+    private static final String ROOT_PACKAGE = "gen";
+    private static final int CLASSES_PER_PACKAGE = 20;
+    private static final String[] PRIMITIVES = {"int", "long", "double", "boolean"};
+
+    private final Random random;
+    private final int methods;
+    private final int methodsPerClass;
+    private final int depth;
+    private final int fanout;
+    private final int callsPerMethod;
+    private final double callLocality;
+    private final double inheritance;
+    private final int fieldsPerClass;
+    private final double refFields;
+
+    private final int classes;
+    private final int leaves;
+    private final int[] parents;
+
+    // expected graph counts
+    private long methodCount;
+    private long constructors;
+    private long callEdges;
+    private long callEdgesIntoSubclasses;
+    private long extendsEdges;
+    private long fields;
+    private long fieldTypeEdges;
+    private long importEdges;
+    private long lines;
+    private final Set<String> importNames = new TreeSet<>();
+
+    CorpusGenerator(Map<String, String> opts) {
+        random = new Random(Long.parseLong(opts.getOrDefault("seed", "42")));
+        methods = Integer.parseInt(opts.getOrDefault("methods", "10000"));
+        methodsPerClass = Integer.parseInt(opts.getOrDefault("methods-per-class", "20"));
+        fanout = Integer.parseInt(opts.getOrDefault("package-fanout", "4"));
+        callsPerMethod = Integer.parseInt(opts.getOrDefault("calls-per-method", "3"));
+        callLocality = Double.parseDouble(opts.getOrDefault("call-locality", "0.6"));
+        inheritance = Double.parseDouble(opts.getOrDefault("inheritance", "0.2"));
+        fieldsPerClass = Integer.parseInt(opts.getOrDefault("fields-per-class", "4"));
+        refFields = Double.parseDouble(opts.getOrDefault("ref-fields", "0.5"));
+
+        classes = (methods + methodsPerClass - 1) / methodsPerClass;
+        depth = opts.containsKey("package-depth")
+                ? Integer.parseInt(opts.get("package-depth"))
+                : defaultDepth(classes, fanout);
+        leaves = (int) Math.pow(fanout, depth);
+
+        // decided up front so a call knows whether its target has a superclass
+        parents = new int[classes];
+        for (int cls = 0; cls < classes; cls++) {
+            parents[cls] = cls > 0 && random.nextDouble() < inheritance ? random.nextInt(cls) : -1;
+        }
+    }
+
+    // deep enough that leaf packages hold about CLASSES_PER_PACKAGE classes
+    private static int defaultDepth(int classes, int fanout) {
+        double packages = Math.max(1.0, (double) classes / CLASSES_PER_PACKAGE);
+        return Math.max(1, (int) Math.round(Math.log(packages) / Math.log(fanout)));
+    }
+
+    // ---------------------------------------------------------------
+    //                          layout
+    // ---------------------------------------------------------------
+    // class i lives in leaf package i % leaves, so every package gets a share
+    private String packageOf(int cls) {
+        int leaf = cls % leaves;
+        StringBuilder sb = new StringBuilder(ROOT_PACKAGE);
+        int[] path = new int[depth];
+        for (int d = depth - 1; d >= 0; d--) {
+            path[d] = leaf % fanout;
+            leaf /= fanout;
+        }
+        for (int d = 0; d < depth; d++) {
+            sb.append(".p").append(d).append('_').append(path[d]);
+        }
+        return sb.toString();
+    }
+
+    private int methodsIn(int cls) {
+        return cls == classes - 1 ? methods - cls * methodsPerClass : methodsPerClass;
+    }
+
+    private static String className(int cls) {
+        return "C" + cls;
+    }
+
+    private static String methodName(int cls, int m) {
+        return "m" + cls + "_" + m;
+    }
+
+    // another class in the same leaf package (when there is one) or anywhere
+    private int pickClass(int from, double sameCluster) {
+        int sameLeafCount = (classes - 1 - from % leaves) / leaves + 1;
+        if (random.nextDouble() < sameCluster && sameLeafCount > 1) {
+            return from % leaves + random.nextInt(sameLeafCount) * leaves;
+        }
+        return random.nextInt(classes);
+    }
+
+    // ---------------------------------------------------------------
+    //                          generation
+    // ---------------------------------------------------------------
+    void generate(Path out) throws IOException {
+        Path src = out.resolve("src");
+        Set<String> packages = new TreeSet<>();
+
+        for (int cls = 0; cls < classes; cls++) {
+            String pkg = packageOf(cls);
+            packages.add(pkg);
+            Path dir = src.resolve(pkg.replace('.', '/'));
+            Files.createDirectories(dir);
+            String source = classSource(cls, pkg);
+            lines += source.chars().filter(c -> c == '\n').count();
+            try (BufferedWriter w = Files.newBufferedWriter(dir.resolve(className(cls) + ".java"), StandardCharsets.UTF_8)) {
+                w.write(source);
+            }
+        }
+
+        // every package directory plus src itself, the way FileWalker visits them
+        Set<String> dirs = new TreeSet<>();
+        dirs.add("src");
+        for (String pkg : packages) {
+            String path = "src";
+            for (String part : pkg.split("\\.")) {
+                path += "/" + part;
+                dirs.add(path);
+            }
+        }
+
+        JSONObject params = new JSONObject()
+                .put("methods", methods)
+                .put("methodsPerClass", methodsPerClass)
+                .put("packageDepth", depth)
+                .put("packageFanout", fanout)
+                .put("callsPerMethod", callsPerMethod)
+                .put("callLocality", callLocality)
+                .put("inheritance", inheritance)
+                .put("fieldsPerClass", fieldsPerClass)
+                .put("refFields", refFields);
+
+        JSONObject expected = new JSONObject()
+                .put("params", params)
+                .put("files", classes)
+                .put("dirs", dirs.size())
+                .put("packages", packages.size())
+                .put("classes", classes)
+                .put("methods", methodCount)
+                .put("constructors", constructors)
+                .put("methodNodes", methodCount + constructors)
+                .put("callEdges", callEdges)
+                .put("callEdgesIntoSubclasses", callEdgesIntoSubclasses)
+                .put("extendsEdges", extendsEdges)
+                .put("fields", fields)
+                .put("fieldTypeEdges", fieldTypeEdges)
+                .put("imports", importNames.size())
+                .put("importEdges", importEdges)
+                .put("lines", lines);
+        Files.writeString(out.resolve("expected-stats.json"), expected.toString(2), StandardCharsets.UTF_8);
+    }
+
+    private String classSource(int cls, String pkg) {
+        Set<Integer> referenced = new LinkedHashSet<>();
+
+        // header decisions first, so the random stream doesn't depend on output order
+        int parent = parents[cls];
+        if (parent >= 0) {
+            referenced.add(parent);
+            extendsEdges++;
+        }
+
+        List<String> fieldDecls = new ArrayList<>();
+        for (int f = 0; f < fieldsPerClass; f++) {
+            fields++;
+            if (random.nextDouble() < refFields) {
+                int type = pickClass(cls, 0.5);
+                referenced.add(type);
+                fieldTypeEdges++;
+                fieldDecls.add("    private " + className(type) + " f" + f + ";\n");
+            } else {
+                String type = PRIMITIVES[random.nextInt(PRIMITIVES.length)];
+                fieldDecls.add("    private " + type + " f" + f + ";\n");
+            }
+        }
+
+        StringBuilder body = new StringBuilder();
+        int count = methodsIn(cls);
+        for (int m = 0; m < count; m++) {
+            methodCount++;
+            body.append("\n    public static int ").append(methodName(cls, m)).append("(int x) {\n");
+            body.append("        int acc = x + ").append(m).append(";\n");
+            Set<String> callees = new LinkedHashSet<>();
+            for (int c = 0; c < callsPerMethod; c++) {
+                int target = pickClass(cls, callLocality);
+                int targetMethod = random.nextInt(methodsIn(target));
+                if (target == cls && targetMethod == m) {
+                    continue; // no self calls, they'd make cycle counting noisy
+                }
+                if (target != cls) {
+                    referenced.add(target);
+                }
+                String call = className(target) + "." + methodName(target, targetMethod);
+                if (callees.add(call) && parents[target] >= 0) {
+                    callEdgesIntoSubclasses++;
+                }
+                body.append("        acc += ").append(call).append("(acc);\n");
+            }
+            callEdges += callees.size();
+            body.append("        return acc;\n    }\n");
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("package ").append(pkg).append(";\n\n");
+
+        Set<String> imports = new TreeSet<>();
+        for (int ref : referenced) {
+            String refPkg = packageOf(ref);
+            if (!refPkg.equals(pkg)) {
+                imports.add(refPkg + "." + className(ref));
+            }
+        }
+        for (String imp : imports) {
+            sb.append("import ").append(imp).append(";\n");
+        }
+        importEdges += imports.size();
+        importNames.addAll(imports);
+        if (!imports.isEmpty()) {
+            sb.append('\n');
+        }
+
+        sb.append("public class ").append(className(cls));
+        if (parent >= 0) {
+            sb.append(" extends ").append(className(parent));
+        }
+        sb.append(" {\n\n");
+        fieldDecls.forEach(sb::append);
+        sb.append("\n    public ").append(className(cls)).append("() {\n    }\n");
+        constructors++;
+        sb.append(body);
+        return sb.append("}\n").toString();
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            opts.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+        }
+        if (!opts.containsKey("out")) {
+            System.err.println("usage: CorpusGenerator --out DIR [--methods N] [--seed N] ... (see class comment)");
+            System.exit(2);
+        }
+
+        Path out = Paths.get(opts.get("out"));
+        long start = System.nanoTime();
+        CorpusGenerator generator = new CorpusGenerator(opts);
+        generator.generate(out);
+        System.out.println(Files.readString(out.resolve("expected-stats.json")));
+        System.out.println("written in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,385 @@
+package load;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/*
+ * Drives a running NativeHttpServer and reports throughput and latency
+ * percentiles per endpoint.
+ *
+ *   java -cp target/benchmarks.jar load.LoadTest --scenarios query,chat --concurrency 16 --duration 60 --stub
+ *
+ * Options (all optional):
+ *   --target URL          server under test (http://localhost:8080)
+ *   --scenarios LIST      any of query, chat, ingest, comma separated (query)
+ *   --concurrency N       closed loop: N workers, each sends its next request when the last one returns (8)
+ *   --rate R              open loop instead: R requests/s on a fixed schedule, latency measured from
+ *                         the scheduled send time so a stalled server can't hide its queueing
+ *   --max-inflight N      open loop only: requests beyond this are counted as dropped (512)
+ *   --warmup S / --duration S   seconds, warmup is not recorded (5 / 30)
+ *   --top-k K             topK sent with queries (10)
+ *   --prompts FILE        one question per line instead of the built-in ones
+ *   --ingest-root DIR     project root to re-ingest for the ingest scenario
+ *   --cache               let the server answer from its query/chat caches (bypassed by default)
+ *   --stub                start StubInference in-process and point the server's config at it
+ *   --stub-port, --stub-latency-ms, --stub-jitter-ms, --stub-error-rate, --stub-dim
+ *   --report FILE         write the report as JSON (for comparing builds)
+ *   --baseline FILE       print deltas against an earlier --report
+ */
+public class LoadTest {
+
+    enum Scenario {
+        QUERY("/api/query"), CHAT("/api/openaiChat"), INGEST("/api/processUploads");
+
+        final String path;
+
+        Scenario(String path) {
+            this.path = path;
+        }
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static final String[] DEFAULT_PROMPTS = {
+        "where is the http server started",
+        "how are query results cached",
+        "which method parses java files",
+        "how does the graph get its embeddings",
+        "where are neo4j connections opened",
+        "what happens when a cluster is expanded",
+        "how is the llm called",
+        "where are upload paths validated"
+    };
+
+    // latencies in microseconds, up to an hour
+    private static final class Stats {
+
+        final Histogram latency = new ConcurrentHistogram(TimeUnit.HOURS.toMicros(1), 3);
+        final LongAdder ok = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder failed = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+
+        void reset() {
+            latency.reset();
+            ok.reset();
+            rejected.reset();
+            failed.reset();
+            dropped.reset();
+        }
+    }
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    private final String target;
+    private final List<Scenario> scenarios = new ArrayList<>();
+    private final Map<Scenario, Stats> stats = new EnumMap<>(Scenario.class);
+    private final String[] prompts;
+    private final int topK;
+    private final boolean useCache;
+    private final String ingestRoot;
+    private final AtomicLong sequence = new AtomicLong();
+    private volatile boolean recording = false;
+
+    LoadTest(Map<String, String> opts) throws IOException {
+        target = opts.getOrDefault("target", "http://localhost:8080");
+        for (String name : opts.getOrDefault("scenarios", "query").split(",")) {
+            Scenario scenario = Scenario.valueOf(name.trim().toUpperCase(Locale.ROOT));
+            scenarios.add(scenario);
+            stats.put(scenario, new Stats());
+        }
+        prompts = opts.containsKey("prompts")
+                ? Files.readAllLines(Paths.get(opts.get("prompts"))).stream().filter(l -> !l.isBlank()).toArray(String[]::new)
+                : DEFAULT_PROMPTS;
+        topK = Integer.parseInt(opts.getOrDefault("top-k", "10"));
+        useCache = opts.containsKey("cache");
+        ingestRoot = opts.get("ingest-root");
+        if (scenarios.contains(Scenario.INGEST) && ingestRoot == null) {
+            throw new IllegalArgumentException("--ingest-root is required for the ingest scenario");
+        }
+    }
+
+    // ---------------------------------------------------------------
+    //                          requests
+    // ---------------------------------------------------------------
+    private HttpRequest request(Scenario scenario, long n) {
+        String prompt = prompts[(int) (n % prompts.length)];
+        JSONObject body;
+        switch (scenario) {
+            case QUERY:
+                body = new JSONObject().put("prompt", prompt).put("topK", topK);
+                break;
+            case CHAT:
+                body = new JSONObject().put("messages", new JSONArray()
+                        .put(new JSONObject().put("role", "system").put("content", "You explain code."))
+                        .put(new JSONObject().put("role", "user").put("content", prompt)));
+                break;
+            default:
+                body = new JSONObject().put("projectRoot", ingestRoot);
+                break;
+        }
+        HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(target + scenario.path))
+                .timeout(Duration.ofMinutes(5))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString()));
+        if (!useCache) {
+            builder.header("X-Purple-Cache", "bypass");
+        }
+        return builder.build();
+    }
+
+    private void send(Scenario scenario, long intendedStartNanos) {
+        long n = sequence.getAndIncrement();
+        int status;
+        try {
+            status = client.send(request(scenario, n), HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (!recording) {
+            return;
+        }
+        Stats s = stats.get(scenario);
+        s.latency.recordValue(Math.max(0, (System.nanoTime() - intendedStartNanos) / 1000));
+        if (status >= 200 && status < 300) {
+            s.ok.increment();
+        } else if (status == 429) {
+            s.rejected.increment();
+        } else {
+            s.failed.increment();
+        }
+    }
+
+    // ---------------------------------------------------------------
+    //                          load shapes
+    // ---------------------------------------------------------------
+    private void closedLoop(int workers, long seconds) throws InterruptedException {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicInteger turn = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        for (int w = 0; w < workers; w++) {
+            pool.execute(() -> {
+                while (System.nanoTime() < end && !Thread.currentThread().isInterrupted()) {
+                    Scenario scenario = scenarios.get(Math.floorMod(turn.getAndIncrement(), scenarios.size()));
+                    send(scenario, System.nanoTime());
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(seconds + 300, TimeUnit.SECONDS);
+    }
+
+    private void openLoop(double rate, int maxInFlight, long seconds) throws InterruptedException {
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long intervalNanos = (long) (1_000_000_000L / rate);
+        AtomicInteger inFlight = new AtomicInteger();
+        ExecutorService pool = Executors.newCachedThreadPool();
+
+        for (long i = 0;; i++) {
+            long intended = start + i * intervalNanos;
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            Scenario scenario = scenarios.get((int) (i % scenarios.size()));
+            if (inFlight.get() >= maxInFlight) {
+                if (recording) {
+                    stats.get(scenario).dropped.increment();
+                }
+                continue;
+            }
+            inFlight.incrementAndGet();
+            pool.execute(() -> {
+                try {
+                    send(scenario, intended);
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            });
+        }
+        pool.shutdown();
+        pool.awaitTermination(300, TimeUnit.SECONDS);
+    }
+
+    // ---------------------------------------------------------------
+    //                          report
+    // ---------------------------------------------------------------
+    private JSONObject report(Map<String, String> opts, double seconds) {
+        JSONObject byScenario = new JSONObject();
+        for (Scenario scenario : scenarios) {
+            Stats s = stats.get(scenario);
+            Histogram h = s.latency;
+            byScenario.put(scenario.label(), new JSONObject()
+                    .put("requests", h.getTotalCount())
+                    .put("ok", s.ok.sum())
+                    .put("rejected", s.rejected.sum())
+                    .put("failed", s.failed.sum())
+                    .put("dropped", s.dropped.sum())
+                    .put("throughput", s.ok.sum() / seconds)
+                    .put("latencyMs", new JSONObject()
+                            .put("mean", h.getMean() / 1000.0)
+                            .put("p50", h.getValueAtPercentile(50) / 1000.0)
+                            .put("p90", h.getValueAtPercentile(90) / 1000.0)
+                            .put("p99", h.getValueAtPercentile(99) / 1000.0)
+                            .put("p999", h.getValueAtPercentile(99.9) / 1000.0)
+                            .put("max", h.getMaxValue() / 1000.0)));
+        }
+        return new JSONObject()
+                .put("startedAt", System.currentTimeMillis())
+                .put("options", new JSONObject(opts))
+                .put("seconds", seconds)
+                .put("scenarios", byScenario);
+    }
+
+    private static void print(JSONObject report, JSONObject baseline) {
+        System.out.printf("%-8s %9s %7s %7s %7s %9s %9s %9s %9s %9s %9s%n",
+                "scenario", "requests", "ok", "429", "failed", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        JSONObject scenarios = report.getJSONObject("scenarios");
+        for (String name : scenarios.keySet()) {
+            JSONObject s = scenarios.getJSONObject(name);
+            JSONObject l = s.getJSONObject("latencyMs");
+            System.out.printf("%-8s %9d %7d %7d %7d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    name, s.getLong("requests"), s.getLong("ok"), s.getLong("rejected"), s.getLong("failed") + s.getLong("dropped"),
+                    s.getDouble("throughput"), l.getDouble("p50"), l.getDouble("p90"), l.getDouble("p99"),
+                    l.getDouble("p999"), l.getDouble("max"));
+
+            JSONObject base = baseline == null ? null : baseline.getJSONObject("scenarios").optJSONObject(name);
+            if (base != null) {
+                JSONObject bl = base.getJSONObject("latencyMs");
+                System.out.printf("%-8s %9s %7s %7s %7s %9s %9s %9s %9s %9s %9s%n", "  vs base", "", "", "", "",
+                        delta(s.getDouble("throughput"), base.getDouble("throughput")),
+                        delta(l.getDouble("p50"), bl.getDouble("p50")),
+                        delta(l.getDouble("p90"), bl.getDouble("p90")),
+                        delta(l.getDouble("p99"), bl.getDouble("p99")),
+                        delta(l.getDouble("p999"), bl.getDouble("p999")),
+                        delta(l.getDouble("max"), bl.getDouble("max")));
+            }
+        }
+    }
+
+    private static String delta(double now, double base) {
+        return base == 0 ? "n/a" : String.format(Locale.ROOT, "%+.1f%%", (now - base) * 100 / base);
+    }
+
+    // ---------------------------------------------------------------
+    //                          entry
+    // ---------------------------------------------------------------
+    static Map<String, String> options(String[] args) {
+        Map<String, String> opts = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("unexpected argument " + args[i]);
+            }
+            String key = args[i].substring(2);
+            boolean flag = i + 1 == args.length || args[i + 1].startsWith("--");
+            opts.put(key, flag ? "true" : args[++i]);
+        }
+        return opts;
+    }
+
+    private void configureStub(StubInference stub, int dim) throws IOException, InterruptedException {
+        JSONObject config = new JSONObject()
+                .put("embeddings", new JSONObject()
+                        .put("url", stub.embeddingsUrl()).put("token", "stub").put("dim", String.valueOf(dim)).put("tpe", "512"))
+                .put("llm", new JSONObject()
+                        .put("provider", "stub").put("model", "stub").put("apiKey", "stub").put("tpr", "4000")
+                        .put("url", stub.chatUrl()));
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(target + "/api/setInferenceConfig"))
+                .POST(HttpRequest.BodyPublishers.ofString(config.toString()))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IOException("setInferenceConfig returned " + response.statusCode() + ": " + response.body());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = options(args);
+        LoadTest test = new LoadTest(opts);
+
+        StubInference stub = null;
+        if (opts.containsKey("stub")) {
+            int dim = Integer.parseInt(opts.getOrDefault("stub-dim", "384"));
+            stub = new StubInference(
+                    Integer.parseInt(opts.getOrDefault("stub-port", "9090")),
+                    Long.parseLong(opts.getOrDefault("stub-latency-ms", "50")),
+                    Long.parseLong(opts.getOrDefault("stub-jitter-ms", "10")),
+                    Double.parseDouble(opts.getOrDefault("stub-error-rate", "0")),
+                    dim);
+            test.configureStub(stub, dim);
+        }
+
+        long warmup = Long.parseLong(opts.getOrDefault("warmup", "5"));
+        long duration = Long.parseLong(opts.getOrDefault("duration", "30"));
+        double rate = Double.parseDouble(opts.getOrDefault("rate", "0"));
+        int concurrency = Integer.parseInt(opts.getOrDefault("concurrency", "8"));
+        int maxInFlight = Integer.parseInt(opts.getOrDefault("max-inflight", "512"));
+
+        for (boolean measure : new boolean[]{false, true}) {
+            long seconds = measure ? duration : warmup;
+            if (seconds == 0) {
+                continue;
+            }
+            test.stats.values().forEach(Stats::reset);
+            test.recording = measure;
+            System.out.println((measure ? "measuring" : "warming up") + " for " + seconds + "s ...");
+            if (rate > 0) {
+                test.openLoop(rate, maxInFlight, seconds);
+            } else {
+                test.closedLoop(concurrency, seconds);
+            }
+        }
+
+        JSONObject report = test.report(opts, duration);
+        JSONObject baseline = opts.containsKey("baseline")
+                ? new JSONObject(Files.readString(Paths.get(opts.get("baseline")), StandardCharsets.UTF_8))
+                : null;
+        print(report, baseline);
+        if (opts.containsKey("report")) {
+            Path out = Paths.get(opts.get("report"));
+            Files.writeString(out, report.toString(2), StandardCharsets.UTF_8);
+            System.out.println("report written to " + out.toAbsolutePath());
+        }
+        if (stub != null) {
+            System.out.println("stub served " + stub.embeddings.sum() + " embeddings, " + stub.chats.sum()
+                    + " chats, injected " + stub.injectedErrors.sum() + " errors");
+            stub.close();
+        }
+    }
+}
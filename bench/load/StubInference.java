@@ -0,0 +1,183 @@
+package load;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/*
+ * Local stand-ins for the two paid APIs, so load tests cost nothing:
+ *
+ *   POST /embed                 HuggingFace feature-extraction: {"inputs": "text" | ["text", ...]}
+ *                               -> one vector per input (deterministic per text)
+ *   POST /v1/chat/completions   OpenAI chat completions, whole reply or "stream": true SSE
+ *
+ * Every request waits latency +/- jitter ms first; with probability
+ * errorRate it then fails the way the real service does when overloaded
+ * (503 + Retry-After for embeddings, 429 + Retry-After for chat).
+ *
+ *   java -cp target/benchmarks.jar load.StubInference --port 9090 --latency-ms 40 --error-rate 0.01
+ */
+public class StubInference implements AutoCloseable {
+
+    private final HttpServer server;
+    private final long latencyMs;
+    private final long jitterMs;
+    private final double errorRate;
+    private final int dimensions;
+
+    final LongAdder embeddings = new LongAdder();
+    final LongAdder chats = new LongAdder();
+    final LongAdder injectedErrors = new LongAdder();
+
+    public StubInference(int port, long latencyMs, long jitterMs, double errorRate, int dimensions) throws IOException {
+        this.latencyMs = latencyMs;
+        this.jitterMs = jitterMs;
+        this.errorRate = errorRate;
+        this.dimensions = dimensions;
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.setExecutor(Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "stub-inference");
+            t.setDaemon(true);
+            return t;
+        }));
+        server.createContext("/embed", this::embed);
+        server.createContext("/v1/chat/completions", this::chat);
+        server.start();
+    }
+
+    public String embeddingsUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/embed";
+    }
+
+    public String chatUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1/chat/completions";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void embed(HttpExchange exchange) throws IOException {
+        JSONObject body = readJson(exchange);
+        if (body == null || !delay(exchange, 503)) {
+            return;
+        }
+        embeddings.increment();
+
+        Object inputs = body.opt("inputs");
+        JSONArray out = new JSONArray();
+        if (inputs instanceof JSONArray) {
+            JSONArray list = (JSONArray) inputs;
+            for (int i = 0; i < list.length(); i++) {
+                out.put(vector(list.optString(i)));
+            }
+        } else {
+            out.put(vector(String.valueOf(inputs)));
+        }
+        send(exchange, 200, "application/json", out.toString());
+    }
+
+    private void chat(HttpExchange exchange) throws IOException {
+        JSONObject body = readJson(exchange);
+        if (body == null || !delay(exchange, 429)) {
+            return;
+        }
+        chats.increment();
+
+        String reply = "Stub explanation for " + body.optJSONArray("messages").length() + " messages.";
+        if (!body.optBoolean("stream", false)) {
+            JSONObject message = new JSONObject().put("role", "assistant").put("content", reply);
+            send(exchange, 200, "application/json", new JSONObject()
+                    .put("choices", new JSONArray().put(new JSONObject().put("message", message)))
+                    .toString());
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream os = exchange.getResponseBody()) {
+            for (String word : reply.split("(?<= )")) {
+                JSONObject delta = new JSONObject().put("content", word);
+                JSONObject chunk = new JSONObject().put("choices", new JSONArray().put(new JSONObject().put("delta", delta)));
+                os.write(("data: " + chunk + "\n\n").getBytes(StandardCharsets.UTF_8));
+                os.flush();
+            }
+            os.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // false when the request was answered with an injected error
+    private boolean delay(HttpExchange exchange, int errorStatus) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long wait = latencyMs + (jitterMs > 0 ? random.nextLong(-jitterMs, jitterMs + 1) : 0);
+        if (wait > 0) {
+            try {
+                Thread.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (errorRate > 0 && random.nextDouble() < errorRate) {
+            injectedErrors.increment();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            send(exchange, errorStatus, "application/json", "{\"error\":\"stub overloaded\"}");
+            return false;
+        }
+        return true;
+    }
+
+    private JSONArray vector(String text) {
+        Random random = new Random(text.hashCode());
+        JSONArray v = new JSONArray();
+        for (int i = 0; i < dimensions; i++) {
+            v.put(random.nextGaussian());
+        }
+        return v;
+    }
+
+    private static JSONObject readJson(HttpExchange exchange) throws IOException {
+        try (InputStream is = exchange.getRequestBody()) {
+            return new JSONObject(new String(is.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            send(exchange, 400, "application/json", "{\"error\":\"bad json\"}");
+            return null;
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String type, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", type);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = LoadTest.options(args);
+        StubInference stub = new StubInference(
+                Integer.parseInt(opts.getOrDefault("port", "9090")),
+                Long.parseLong(opts.getOrDefault("latency-ms", "50")),
+                Long.parseLong(opts.getOrDefault("jitter-ms", "10")),
+                Double.parseDouble(opts.getOrDefault("error-rate", "0")),
+                Integer.parseInt(opts.getOrDefault("dim", "384")));
+        System.out.println("embeddings: " + stub.embeddingsUrl());
+        System.out.println("chat:       " + stub.chatUrl());
+        Thread.currentThread().join();
+    }
+}
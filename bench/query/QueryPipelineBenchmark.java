@@ -0,0 +1,125 @@
+package query;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import api.InferenceConfig;
+import scrape.DbClient;
+
+/*
+ * Latency distribution of each query stage, and of runEmbeddingQuery end to
+ * end, against an in-process Neo4j loaded with a SyntheticGraph. The
+ * embedding call is stubbed (SyntheticGraph.embed), so nothing leaves the
+ * machine and the numbers are the Cypher stack's alone.
+ *
+ *   mvn -Pbench package
+ *   java -jar target/benchmarks.jar QueryPipelineBenchmark
+ *
+ * SampleTime mode reports p50/p90/p99/p99.9 per stage. cache=cold clears
+ * the cluster cache before every call so getClusters always expands in
+ * Neo4j; warm measures the cached path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g"})
+public class QueryPipelineBenchmark {
+
+    private static final String QUESTION = "where is the retry policy for outgoing requests";
+
+    @Param({"1000", "10000"})
+    int methods;
+
+    @Param({"cold", "warm"})
+    String cache;
+
+    @Param({"10"})
+    int topK;
+
+    private Path home;
+    private Neo4j neo4j;
+    private double[] queryEmbedding;
+    private List<JSONObject> hits;
+    private List<JSONObject> clusters;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        home = Files.createTempDirectory("purple-neo4j-");
+        neo4j = Neo4jBuilders.newInProcessBuilder(home)
+                .withDisabledServer()
+                .build();
+        InferenceConfig.setNeo4jConfig(neo4j.boltURI().toString(), "neo4j", "unused");
+        DbClient.initNeo4jConnection();
+        SyntheticGraph.load(DbClient.getNeo4jDriver(), methods, 42L);
+
+        UserQuery.setQueryEmbedder(SyntheticGraph::embed);
+
+        queryEmbedding = SyntheticGraph.embed(QUESTION);
+        hits = UserQuery.findSimilarNodes(queryEmbedding, topK);
+        clusters = UserQuery.getClusters(hits, QueryPlan.defaults(topK));
+        if (hits.size() != topK || clusters.size() != topK) {
+            throw new IllegalStateException("synthetic graph returned " + hits.size() + " hits / " + clusters.size() + " clusters");
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void resetCaches() {
+        if ("cold".equals(cache)) {
+            ClusterCache.clear();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        UserQuery.setQueryEmbedder(null);
+        DbClient.closeNeo4jDriver();
+        neo4j.close();
+        try (var paths = Files.walk(home)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public List<JSONObject> findSimilarNodes() {
+        return UserQuery.findSimilarNodes(queryEmbedding, topK);
+    }
+
+    @Benchmark
+    public List<JSONObject> getClusters() {
+        return UserQuery.getClusters(hits, QueryPlan.defaults(topK));
+    }
+
+    @Benchmark
+    public JSONArray getChatData() {
+        return UserQuery.getChatData(clusters, false);
+    }
+
+    @Benchmark
+    public JSONObject runEmbeddingQuery() {
+        return UserQuery.runEmbeddingQuery(QUESTION, topK);
+    }
+}
@@ -0,0 +1,152 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.Session;
+
+import scrape.DbClient;
+import store.BlobStore;
+import store.Neo4jGraphStore;
+import store.Projects;
+
+/*
+ * Loads a code graph of known size and shape, the way ingestion + Embed.py
+ * would leave it: File -HAS_CLASS-> Class -HAS_METHOD-> Method, CALLS_METHOD
+ * edges between methods (mostly within the same class, some across), an
+ * embedding on every method and the project's vector index, all under the
+ * default project's label.
+ * Everything derives from the seed, so two loads with the same arguments
+ * are identical.
+ */
+final class SyntheticGraph {
+
+    static final int DIMENSIONS = 384;
+
+    private static final int METHODS_PER_CLASS = 10;
+    private static final int CLASSES_PER_FILE = 2;
+    private static final int CALLS_PER_METHOD = 3;
+    private static final int BATCH = 1000;
+
+    private SyntheticGraph() {
+    }
+
+    static void load(Driver driver, int methods, long seed) {
+        Neo4jGraphStore project = (Neo4jGraphStore) DbClient.store(Projects.DEFAULT);
+        String scope = ":`" + project.label() + "`";
+        Random random = new Random(seed);
+        int classes = Math.max(1, methods / METHODS_PER_CLASS);
+        int files = Math.max(1, classes / CLASSES_PER_FILE);
+
+        try (Session session = driver.session()) {
+            session.run("MATCH (n) DETACH DELETE n").consume();
+
+            List<Map<String, Object>> rows = new ArrayList<>();
+            for (int c = 0; c < classes; c++) {
+                rows.add(Map.of("file", "/bench/src/File" + (c / CLASSES_PER_FILE) + ".java", "name", "bench.Class" + c));
+            }
+            for (List<Map<String, Object>> batch : batches(rows)) {
+                session.run("""
+                    UNWIND $rows AS row
+                    MERGE (f:File%1$s {path: row.file, type: 'java'})
+                    CREATE (c:Class%1$s {name: row.name})
+                    CREATE (f)-[:HAS_CLASS]->(c)
+                    """.formatted(scope), Map.of("rows", batch)).consume();
+            }
+
+            rows.clear();
+            for (int m = 0; m < methods; m++) {
+                int owner = Math.min(m / METHODS_PER_CLASS, classes - 1);
+                rows.add(Map.of(
+                        "cls", "bench.Class" + owner,
+                        "name", "bench.Class" + owner + ".method" + m + "(int)",
+                        "simple", "method" + m + "()",
+                        "file", "/bench/src/File" + (owner / CLASSES_PER_FILE) + ".java",
+                        "code_hash", BlobStore.put(code(m, random)),
+                        "embedding", vector(random)));
+            }
+            for (List<Map<String, Object>> batch : batches(rows)) {
+                session.run("""
+                    UNWIND $rows AS row
+                    MATCH (c:Class%1$s {name: row.cls})
+                    CREATE (m:Method%1$s {name: row.name, simple_name: row.simple, file: row.file,
+                                      start_line: 1, end_line: 12, code_hash: row.code_hash, embedding: row.embedding})
+                    CREATE (c)-[:HAS_METHOD]->(m)
+                    """.formatted(scope), Map.of("rows", batch)).consume();
+            }
+
+            // mostly calls into the same class, the rest anywhere
+            rows.clear();
+            for (int m = 0; m < methods; m++) {
+                for (int k = 0; k < CALLS_PER_METHOD; k++) {
+                    int callee = random.nextInt(10) < 7
+                            ? (m / METHODS_PER_CLASS) * METHODS_PER_CLASS + random.nextInt(METHODS_PER_CLASS)
+                            : random.nextInt(methods);
+                    if (callee != m && callee < methods) {
+                        Map<String, Object> row = new HashMap<>();
+                        row.put("from", "bench.Class" + Math.min(m / METHODS_PER_CLASS, classes - 1) + ".method" + m + "(int)");
+                        row.put("to", "bench.Class" + Math.min(callee / METHODS_PER_CLASS, classes - 1) + ".method" + callee + "(int)");
+                        rows.add(row);
+                    }
+                }
+            }
+            session.run("CREATE INDEX bench_method_name IF NOT EXISTS FOR (m:Method) ON (m.name)").consume();
+            session.run("CALL db.awaitIndexes()").consume();
+            for (List<Map<String, Object>> batch : batches(rows)) {
+                session.run("""
+                    UNWIND $rows AS row
+                    MATCH (a:Method%1$s {name: row.from}), (b:Method%1$s {name: row.to})
+                    MERGE (a)-[:CALLS_METHOD]->(b)
+                    """.formatted(scope), Map.of("rows", batch)).consume();
+            }
+
+            session.run("DROP INDEX `%s` IF EXISTS".formatted(project.vectorIndex())).consume();
+            session.run("""
+                CREATE VECTOR INDEX `%s`
+                FOR (m%s) ON (m.embedding)
+                OPTIONS { indexConfig: { `vector.dimensions`: %d, `vector.similarity_function`: 'cosine' } }
+                """.formatted(project.vectorIndex(), scope, DIMENSIONS)).consume();
+            session.run("CALL db.awaitIndexes(300)").consume();
+        }
+    }
+
+    // deterministic stand-in for the embedding model: same text, same vector
+    static double[] embed(String text) {
+        return vector(new Random(text.hashCode()));
+    }
+
+    private static double[] vector(Random random) {
+        double[] v = new double[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < v.length; i++) {
+            v[i] = random.nextGaussian();
+            norm += v[i] * v[i];
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < v.length; i++) {
+            v[i] /= norm;
+        }
+        return v;
+    }
+
+    private static String code(int m, Random random) {
+        StringBuilder sb = new StringBuilder("public int method").append(m).append("(int x) {\n");
+        int lines = 4 + random.nextInt(8);
+        for (int i = 0; i < lines; i++) {
+            sb.append("    x = x * ").append(random.nextInt(97)).append(" + ").append(i).append(";\n");
+        }
+        return sb.append("    return x;\n}").toString();
+    }
+
+    private static List<List<Map<String, Object>>> batches(List<Map<String, Object>> rows) {
+        List<List<Map<String, Object>>> out = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i += BATCH) {
+            out.add(rows.subList(i, Math.min(rows.size(), i + BATCH)));
+        }
+        return out;
+    }
+}
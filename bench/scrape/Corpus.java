@@ -0,0 +1,195 @@
+package scrape;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Fixed Java sources to parse. Generated from code rather than checked in,
+ * but byte-for-byte the same on every run, so numbers stay comparable across
+ * JavaParser upgrades and visitor changes.
+ *
+ * SMALL       40 plain data classes: fields, a constructor, getters/setters
+ * MEDIUM      20 service classes, 25 methods each with loops, locals and arrays
+ * CALL_DENSE  20 classes whose methods each call 8 methods on the other classes
+ * UNRESOLVED  20 handler classes leaning on a logger and an HTTP client whose
+ *             libraries aren't on the type solver, between calls that resolve
+ * NESTED      20 classes with a static nested class, an anonymous class and
+ *             members after both, and a local name reused across blocks
+ */
+public enum Corpus {
+
+    SMALL {
+        @Override
+        String source(int index) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("package corpus.small;\n\n");
+            sb.append("public class Pojo").append(index).append(" {\n\n");
+            for (int f = 0; f < 4; f++) {
+                sb.append("    private ").append(FIELD_TYPES[f]).append(" field").append(f).append(";\n");
+            }
+            sb.append("\n    public Pojo").append(index).append("(int field0, String field1) {\n");
+            sb.append("        this.field0 = field0;\n        this.field1 = field1;\n    }\n");
+            for (int f = 0; f < 4; f++) {
+                String type = FIELD_TYPES[f];
+                sb.append("\n    public ").append(type).append(" getField").append(f).append("() {\n");
+                sb.append("        return field").append(f).append(";\n    }\n");
+                sb.append("\n    public void setField").append(f).append("(").append(type).append(" value) {\n");
+                sb.append("        this.field").append(f).append(" = value;\n    }\n");
+            }
+            return sb.append("}\n").toString();
+        }
+    },
+
+    MEDIUM {
+        @Override
+        String source(int index) {
+            // primitives and arrays only: the scraper's type solver has no JDK classes to resolve against
+            StringBuilder sb = new StringBuilder();
+            sb.append("package corpus.medium;\n\n");
+            sb.append("public class Service").append(index).append(" {\n\n");
+            sb.append("    private final int[] counts = new int[64];\n");
+            sb.append("    private long total;\n");
+            for (int m = 0; m < 25; m++) {
+                sb.append("\n    public long step").append(m).append("(int[] input, int limit) {\n");
+                sb.append("        int seen = 0;\n");
+                sb.append("        for (int i = 0; i < input.length; i++) {\n");
+                sb.append("            if (seen >= limit) {\n                break;\n            }\n");
+                sb.append("            int slot = (input[i] * ").append(m + 31).append(") & 63;\n");
+                sb.append("            counts[slot] += input[i] > 0 ? 1 : -1;\n");
+                sb.append("            seen++;\n        }\n");
+                sb.append("        total += (long) seen * ").append(m + 1).append(";\n");
+                sb.append("        return total;\n    }\n");
+            }
+            return sb.append("}\n").toString();
+        }
+    },
+
+    CALL_DENSE {
+        @Override
+        String source(int index) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("package corpus.dense;\n\n");
+            sb.append("public class Node").append(index).append(" {\n\n");
+            int next = (index + 1) % files();
+            int other = (index + 7) % files();
+            sb.append("    private final Node").append(next).append(" next;\n");
+            sb.append("    private final Node").append(other).append(" other;\n\n");
+            sb.append("    public Node").append(index).append("(Node").append(next).append(" next, Node")
+                    .append(other).append(" other) {\n");
+            sb.append("        this.next = next;\n        this.other = other;\n    }\n");
+            for (int m = 0; m < 12; m++) {
+                sb.append("\n    public int call").append(m).append("(int x) {\n");
+                sb.append("        int acc = x;\n");
+                for (int c = 0; c < 8; c++) {
+                    String target = c % 2 == 0 ? "next" : "other";
+                    sb.append("        acc += ").append(target).append(".call").append((m + c + 1) % 12).append("(acc);\n");
+                }
+                sb.append("        return acc;\n    }\n");
+            }
+            return sb.append("}\n").toString();
+        }
+    },
+
+    UNRESOLVED {
+        @Override
+        String source(int index) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("package corpus.unresolved;\n\n");
+            sb.append("import org.slf4j.Logger;\nimport org.slf4j.LoggerFactory;\n");
+            sb.append("import com.acme.http.HttpClient;\nimport com.acme.http.Response;\n\n");
+            sb.append("public class Handler").append(index).append(" {\n\n");
+            int next = (index + 1) % files();
+            sb.append("    private static final Logger log = LoggerFactory.getLogger(Handler").append(index).append(".class);\n");
+            sb.append("    private final HttpClient client;\n");
+            sb.append("    private final Handler").append(next).append(" next;\n\n");
+            sb.append("    public Handler").append(index).append("(HttpClient client, Handler").append(next).append(" next) {\n");
+            sb.append("        this.client = client;\n        this.next = next;\n    }\n");
+            for (int m = 0; m < 12; m++) {
+                sb.append("\n    public int handle").append(m).append("(int x) {\n");
+                sb.append("        log.debug(\"handle").append(m).append(" start\");\n");
+                sb.append("        Response response = client.get(x);\n");
+                sb.append("        log.info(\"status {}\", response.status());\n");
+                sb.append("        int acc = x;\n");
+                for (int c = 0; c < 4; c++) {
+                    sb.append("        acc += next.step").append((m + c) % 12).append("(acc);\n");
+                }
+                sb.append("        if (response.failed()) {\n");
+                sb.append("            log.warn(\"handle").append(m).append(" failed\");\n        }\n");
+                sb.append("        return acc + response.status();\n    }\n");
+                sb.append("\n    public int step").append(m).append("(int x) {\n");
+                sb.append("        return x * ").append(m + 3).append(";\n    }\n");
+            }
+            return sb.append("}\n").toString();
+        }
+    },
+
+    NESTED {
+        @Override
+        String source(int index) {
+            StringBuilder sb = new StringBuilder();
+            String next = "Outer" + (index + 1) % files();
+            sb.append("package corpus.nested;\n\n");
+            sb.append("import com.acme.http.Response;\n\n");
+            sb.append("public class Outer").append(index).append(" {\n\n");
+            sb.append("    private final ").append(next).append(" next;\n");
+            sb.append("    private final Response last;\n\n");
+            sb.append("    public Outer").append(index).append("(").append(next).append(" next, Response last) {\n");
+            sb.append("        this.next = next;\n        this.last = last;\n    }\n");
+            sb.append("\n    public int before(int x) {\n");
+            sb.append("        return next.work(x) + last.status();\n    }\n");
+            // same field names as the outer class, different types
+            sb.append("\n    public static class Inner {\n\n");
+            sb.append("        private final int next;\n        private final int last;\n\n");
+            sb.append("        public Inner(int next, int last) {\n");
+            sb.append("            this.next = next;\n            this.last = last;\n        }\n");
+            sb.append("\n        public int work(int x) {\n");
+            sb.append("            return x + next + last;\n        }\n    }\n");
+            sb.append("\n    public interface Task {\n        int run(int x);\n    }\n");
+            sb.append("\n    public int spawn(int x) {\n");
+            sb.append("        Task task = new Task() {\n");
+            sb.append("            public int run(int y) {\n");
+            sb.append("                return next.work(y) + last.status();\n            }\n        };\n");
+            sb.append("        return task.run(x) + next.work(x);\n    }\n");
+            sb.append("\n    public int work(int x) {\n");
+            sb.append("        return x + ").append(index + 1).append(";\n    }\n");
+            // r names a resolvable type in the first block and an unresolvable one in the second
+            sb.append("\n    public int after(int x) {\n");
+            sb.append("        int acc = next.work(x) + last.status();\n");
+            sb.append("        {\n            ").append(next).append(" r = next;\n");
+            sb.append("            acc += r.before(acc);\n        }\n");
+            sb.append("        {\n            Response r = last;\n");
+            sb.append("            acc += r.status();\n        }\n");
+            sb.append("        return acc;\n    }\n");
+            return sb.append("}\n").toString();
+        }
+    };
+
+    private static final String[] FIELD_TYPES = {"int", "String", "long", "boolean"};
+
+    abstract String source(int index);
+
+    int files() {
+        return this == SMALL ? 40 : 20;
+    }
+
+    // Writes the corpus under root/src/corpus/... (so the type solver finds it) and returns the files.
+    File[] writeTo(Path root) throws IOException {
+        String pkg = this == SMALL ? "small" : this == MEDIUM ? "medium" : this == CALL_DENSE ? "dense"
+                : this == UNRESOLVED ? "unresolved" : "nested";
+        String prefix = this == SMALL ? "Pojo" : this == MEDIUM ? "Service" : this == CALL_DENSE ? "Node"
+                : this == UNRESOLVED ? "Handler" : "Outer";
+        Path dir = Files.createDirectories(root.resolve("src").resolve("corpus").resolve(pkg));
+
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < files(); i++) {
+            Path file = dir.resolve(prefix + i + ".java");
+            Files.writeString(file, source(i));
+            files.add(file.toFile());
+        }
+        return files.toArray(new File[0]);
+    }
+}
@@ -0,0 +1,21 @@
+package scrape;
+
+import org.neo4j.driver.Value;
+
+// Stands in for Neo4j during benchmarks: counts what would have been written, writes nothing.
+class RecordingQueryRunner implements DbClient.QueryRunner {
+
+    long statements;
+    long methods;
+    long calls;
+
+    @Override
+    public void run(String query, Value parameters) {
+        statements++;
+        if (query.startsWith("MERGE (n:Method") && parameters.containsKey("props")) {
+            methods++;
+        } else if (query.contains(":CALLS_METHOD")) {
+            calls++;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package scrape;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * Parse + resolve + graph emission throughput of ScrapeJava.processJavaFile,
+ * one file per operation (so ops/s is files/s), with DbClient writing into a
+ * RecordingQueryRunner instead of Neo4j.
+ *
+ *   mvn -Pbench package
+ *   java -jar target/benchmarks.jar ScrapeJavaBenchmark -prof gc
+ *
+ * "methods" and "statements" in the output are per second; with -prof gc,
+ * gc.alloc.rate.norm is bytes allocated per file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScrapeJavaBenchmark {
+
+    @Param({"SMALL", "MEDIUM", "CALL_DENSE", "UNRESOLVED", "NESTED"})
+    Corpus corpus;
+
+    private Path root;
+    private File[] files;
+    private int next;
+    private RecordingQueryRunner recorder;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Emitted {
+
+        public long methods;
+        public long calls;
+        public long statements;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            methods = 0;
+            calls = 0;
+            statements = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("purple-bench-");
+        files = corpus.writeTo(root);
+        ScrapeJava.initializeTypeSolver(root.toFile());
+        recorder = new RecordingQueryRunner();
+        DbClient.setQueryRunner(recorder);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        DbClient.setQueryRunner(null);
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void processJavaFile(Emitted emitted) {
+        long methods = recorder.methods;
+        long calls = recorder.calls;
+        long statements = recorder.statements;
+
+        ScrapeJava.processJavaFile(files[next]);
+        next = (next + 1) % files.length;
+
+        emitted.methods += recorder.methods - methods;
+        emitted.calls += recorder.calls - calls;
+        emitted.statements += recorder.statements - statements;
+    }
+}
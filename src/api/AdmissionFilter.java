@@ -0,0 +1,82 @@
+package api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+/*
+ * Runs the wrapped handler only while its endpoint class has a free slot.
+ * Requests that find the class busy wait in a bounded queue for up to
+ * maxWaitMillis; once the queue is full (or the wait runs out) they are
+ * answered 429 with Retry-After straight away instead of piling up.
+ */
+public class AdmissionFilter implements HttpHandler {
+
+    private final EndpointClass endpointClass;
+    private final HttpHandler delegate;
+
+    public AdmissionFilter(EndpointClass endpointClass, HttpHandler delegate) {
+        this.endpointClass = endpointClass;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        // preflights are cheap and must not be refused
+        if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+            delegate.handle(exchange);
+            return;
+        }
+
+        if (!acquire()) {
+            endpointClass.rejected.increment();
+            reject(exchange);
+            return;
+        }
+
+        endpointClass.admitted.increment();
+        try {
+            delegate.handle(exchange);
+        } finally {
+            endpointClass.permits.release();
+        }
+    }
+
+    private boolean acquire() {
+        if (endpointClass.permits.tryAcquire()) {
+            return true;
+        }
+        if (endpointClass.queued.incrementAndGet() > endpointClass.queueLimit) {
+            endpointClass.queued.decrementAndGet();
+            return false;
+        }
+        try {
+            return endpointClass.permits.tryAcquire(endpointClass.maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            endpointClass.queued.decrementAndGet();
+        }
+    }
+
+    private void reject(HttpExchange exchange) throws IOException {
+        // rough guess: one max-wait from now the queue should have drained
+        long retryAfter = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(endpointClass.maxWaitMillis));
+
+        byte[] bytes = ("{\"error\":\"Too many " + endpointClass.label + " requests, retry later\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Expose-Headers", "Retry-After");
+        exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfter));
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(429, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
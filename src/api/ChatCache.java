@@ -0,0 +1,147 @@
+package api;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/*
+ * Disk-backed cache of LLM replies. The key is a SHA-256 over the model and a
+ * canonical form of the message list (object keys sorted, no whitespace), so
+ * the same cluster sent twice maps to the same file no matter how the client
+ * happened to serialize it; since the prompt carries each method's code, an
+ * edited method changes the key on its own. The server clears it when graph
+ * contents change (GraphGeneration.contentsChanged), not on a reconnect or a
+ * project switch, and entries older than the TTL are ignored.
+ */
+public class ChatCache {
+
+    private static final Path DIR = Paths.get(System.getProperty("purple.chatCache.dir", "purple-cache/chat"));
+    private static final long TTL_MILLIS = Long.getLong("purple.chatCache.ttlMillis", 7L * 24 * 60 * 60 * 1000);
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder writes = new LongAdder();
+
+    private ChatCache() {
+        /* Utility class; no public constructor. */ }
+
+    public static String key(String model, JSONArray messages) {
+        StringBuilder sb = new StringBuilder(model).append('\n');
+        canonical(messages, sb);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static String get(String key) {
+        Path file = DIR.resolve(key + ".json");
+        try {
+            if (!Files.exists(file)) {
+                misses.increment();
+                return null;
+            }
+            JSONObject entry = new JSONObject(Files.readString(file, StandardCharsets.UTF_8));
+            if (System.currentTimeMillis() - entry.getLong("createdAt") > TTL_MILLIS) {
+                Files.deleteIfExists(file);
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.getString("reply");
+        } catch (Exception e) {
+            System.err.println("[ChatCache] unreadable entry " + file + ": " + e.getMessage());
+            misses.increment();
+            return null;
+        }
+    }
+
+    public static void put(String key, String model, String reply) {
+        JSONObject entry = new JSONObject()
+                .put("model", model)
+                .put("createdAt", System.currentTimeMillis())
+                .put("reply", reply);
+        try {
+            Files.createDirectories(DIR);
+            // write-then-rename so a concurrent reader never sees half a file
+            Path tmp = Files.createTempFile(DIR, key, ".tmp");
+            Files.writeString(tmp, entry.toString(), StandardCharsets.UTF_8);
+            Files.move(tmp, DIR.resolve(key + ".json"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            writes.increment();
+        } catch (IOException e) {
+            System.err.println("[ChatCache] could not store reply: " + e.getMessage());
+        }
+    }
+
+    public static void clear() {
+        if (!Files.isDirectory(DIR)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(DIR, "*.json")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.err.println("[ChatCache] could not clear " + DIR + ": " + e.getMessage());
+        }
+    }
+
+    public static JSONObject stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        return new JSONObject()
+                .put("dir", DIR.toAbsolutePath().toString())
+                .put("ttlMillis", TTL_MILLIS)
+                .put("hits", h)
+                .put("misses", m)
+                .put("writes", writes.sum())
+                .put("hitRatio", (h + m) == 0 ? 0.0 : (double) h / (h + m));
+    }
+
+    private static void canonical(Object value, StringBuilder sb) {
+        if (value instanceof JSONObject) {
+            JSONObject obj = (JSONObject) value;
+            List<String> keys = new ArrayList<>(obj.keySet());
+            Collections.sort(keys);
+            sb.append('{');
+            for (int i = 0; i < keys.size(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(JSONObject.quote(keys.get(i))).append(':');
+                canonical(obj.get(keys.get(i)), sb);
+            }
+            sb.append('}');
+        } else if (value instanceof JSONArray) {
+            JSONArray arr = (JSONArray) value;
+            sb.append('[');
+            for (int i = 0; i < arr.length(); i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                canonical(arr.get(i), sb);
+            }
+            sb.append(']');
+        } else if (value instanceof String) {
+            sb.append(JSONObject.quote((String) value));
+        } else {
+            sb.append(JSONObject.valueToString(value));
+        }
+    }
+}
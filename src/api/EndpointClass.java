@@ -0,0 +1,68 @@
+package api;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+/*
+ * Groups of endpoints that share a concurrency limit and a bounded wait queue.
+ * Limits can be overridden with -Dpurple.<name>.concurrency / .queue / .maxWaitMillis.
+ */
+public enum EndpointClass {
+
+    QUERY("query", 16, 64, 10_000),
+    CHAT("chat", 8, 32, 30_000),
+    INGEST("ingest", 1, 2, 1_000),
+    ADMIN("admin", 16, 16, 5_000);
+
+    final String label;
+    final int concurrency;
+    final int queueLimit;
+    final long maxWaitMillis;
+
+    final Semaphore permits;
+    final AtomicInteger queued = new AtomicInteger();
+    final LongAdder admitted = new LongAdder();
+    final LongAdder rejected = new LongAdder();
+
+    EndpointClass(String label, int concurrency, int queueLimit, long maxWaitMillis) {
+        this.label = label;
+        this.concurrency = Integer.getInteger("purple." + label + ".concurrency", concurrency);
+        this.queueLimit = Integer.getInteger("purple." + label + ".queue", queueLimit);
+        this.maxWaitMillis = Long.getLong("purple." + label + ".maxWaitMillis", maxWaitMillis);
+        this.permits = new Semaphore(this.concurrency, true);
+    }
+
+    public int inFlight() {
+        return concurrency - permits.availablePermits();
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    public JSONObject stats() {
+        return new JSONObject()
+                .put("concurrency", concurrency)
+                .put("inFlight", inFlight())
+                .put("queued", queued())
+                .put("queueLimit", queueLimit)
+                .put("admitted", admitted.sum())
+                .put("rejected", rejected());
+    }
+
+    // threads that can be busy at once across every class: running plus waiting
+    static int totalSlots() {
+        int total = 0;
+        for (EndpointClass c : values()) {
+            total += c.concurrency + c.queueLimit;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,275 @@
+package api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import gen.ContextPacker;
+import gen.ExplainPrompt;
+import gen.LlmClient;
+import gen.RateLimiter;
+import query.GraphSnapshot;
+import query.QueryPlan;
+import query.UserQuery;
+
+/*
+ * POST /api/explainResults { prompt, topK?, maxClusterSize?, deadlineMs? }
+ *
+ * Runs the query, then asks the LLM to explain every cluster at once instead
+ * of one chat round trip per cluster. Explanations are sent as server-sent
+ * events in the order they finish:
+ *   event: results       data: {graph, chat, plan, graphVersion}
+ *   event: context       data: {cluster, tokens, full, elided, dropped}   (prompt packing, per cluster)
+ *   event: explanation   data: {cluster, reply, cached, elapsedMs}   (one per cluster)
+ *   event: error         data: {cluster, error}                      (instead, if it failed)
+ *   event: done          data: {explained, failed, cached, elapsedMs}
+ * LLM calls from all requests share one pool of purple.explain.concurrency
+ * workers and the provider's rate limiter.
+ */
+public class ExplainHandler implements HttpHandler {
+
+    private static final int CONCURRENCY = Integer.getInteger("purple.explain.concurrency", 4);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final ThreadPoolExecutor workers = createWorkers();
+
+    private static ThreadPoolExecutor createWorkers() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(CONCURRENCY, CONCURRENCY, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "explain-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "POST, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "*");
+
+        if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
+        JSONObject json;
+        try (InputStream is = exchange.getRequestBody()) {
+            json = new JSONObject(new String(is.readAllBytes(), StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            sendErrorResponse(exchange, 400, "Invalid JSON: " + e.getMessage());
+            return;
+        }
+
+        String prompt = json.optString("prompt", "").trim();
+        if (prompt.isEmpty()) {
+            sendErrorResponse(exchange, 400, "Missing or empty 'prompt'");
+            return;
+        }
+
+        String model = InferenceConfig.getLLMModel();
+        String apiKey = InferenceConfig.getLLMApiKey();
+        if (model == null || apiKey == null) {
+            sendErrorResponse(exchange, 500, "LLM is not configured");
+            return;
+        }
+
+        long start = System.nanoTime();
+        QueryPlan plan = new QueryPlan(
+                json.optInt("topK", QueryPlan.DEFAULT_TOP_K),
+                json.optInt("maxClusterSize", 0),
+                json.optLong("deadlineMs", 0));
+
+        JSONObject result;
+        try {
+            result = UserQuery.runEmbeddingQuery(prompt, plan);
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendErrorResponse(exchange, 500, "Internal server error: " + e.getMessage());
+            return;
+        }
+        if (result.isEmpty()) {
+            sendErrorResponse(exchange, 500, "Query failed, see server log");
+            return;
+        }
+
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        JSONArray chat = result.getJSONArray("chat");
+        JSONArray graph = result.getJSONArray("graph");
+        int budget = ExplainPrompt.methodBudget(InferenceConfig.getLLMTokensPerRequest(), prompt);
+
+        // every seed is a vector hit, so its score is known wherever it shows up
+        Map<Long, Double> similarity = new HashMap<>();
+        for (int i = 0; i < graph.length(); i++) {
+            JSONObject cluster = graph.getJSONObject(i);
+            similarity.merge(cluster.getLong("seed"), cluster.getDouble("similarity"), Math::max);
+        }
+        String bucket = RateLimiter.llm(InferenceConfig.getLLMProvider());
+        String url = InferenceConfig.getLLMUrl();
+
+        CompletionService<JSONObject> completions = new ExecutorCompletionService<>(workers);
+        List<Future<JSONObject>> pending = new ArrayList<>();
+        int explained = 0;
+        int failed = 0;
+        int cachedCount = 0;
+
+        try (OutputStream os = exchange.getResponseBody()) {
+            sendEvent(os, "results", result);
+
+            for (int i = 0; i < chat.length(); i++) {
+                ContextPacker.Packed packed = pack(chat.getJSONObject(i), graph.getJSONObject(i), similarity, budget);
+                JSONArray messages = ExplainPrompt.messages(packed.methodsJson, prompt);
+                sendEvent(os, "context", packed.toJson().put("cluster", i));
+                String cacheKey = ChatCache.key(model, messages);
+                String cached = ChatCache.get(cacheKey);
+                if (cached != null) {
+                    // no reason to queue behind the LLM calls for these
+                    sendEvent(os, "explanation", new JSONObject()
+                            .put("cluster", i).put("reply", cached).put("cached", true).put("elapsedMs", 0));
+                    explained++;
+                    cachedCount++;
+                    continue;
+                }
+                int cluster = i;
+                pending.add(completions.submit(() -> explain(cluster, bucket, url, model, apiKey, messages, cacheKey)));
+            }
+
+            for (int n = 0; n < pending.size(); n++) {
+                JSONObject outcome;
+                try {
+                    outcome = completions.take().get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    // explain() reports its own failures; this is a bug, not an LLM error
+                    e.printStackTrace();
+                    failed++;
+                    continue;
+                }
+                if (outcome.has("error")) {
+                    sendEvent(os, "error", outcome);
+                    failed++;
+                } else {
+                    sendEvent(os, "explanation", outcome);
+                    explained++;
+                }
+            }
+
+            sendEvent(os, "done", new JSONObject()
+                    .put("explained", explained)
+                    .put("failed", failed)
+                    .put("cached", cachedCount)
+                    .put("elapsedMs", (System.nanoTime() - start) / 1_000_000));
+        } finally {
+            // client gone or we bailed early: don't spend tokens nobody will read
+            for (Future<JSONObject> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    // hop distances come from the topology snapshot when it holds the seed; otherwise expansion order stands in
+    private static ContextPacker.Packed pack(JSONObject chatCluster, JSONObject graphCluster,
+            Map<Long, Double> similarity, int budget) {
+        JSONArray nodes = graphCluster.getJSONArray("nodes");
+        long[] order = new long[nodes.length()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = nodes.getJSONObject(i).getLong("id");
+        }
+
+        int[] hops = null;
+        GraphSnapshot snapshot = GraphSnapshot.current();
+        if (snapshot != null && order.length > 0 && snapshot.contains(order[0])) {
+            hops = snapshot.hopDistances(order[0], order, 3);
+        }
+        return ContextPacker.pack(chatCluster, order, hops, similarity, budget);
+    }
+
+    private static JSONObject explain(int cluster, String bucket, String url, String model, String apiKey,
+            JSONArray messages, String cacheKey) {
+        long start = System.nanoTime();
+        JSONObject outcome = new JSONObject().put("cluster", cluster);
+        for (int attempt = 1;; attempt++) {
+            try {
+                RateLimiter.acquire(bucket);
+                String reply = LlmClient.complete(url, model, apiKey, messages);
+                ChatCache.put(cacheKey, model, reply);
+                return outcome
+                        .put("reply", reply)
+                        .put("cached", false)
+                        .put("elapsedMs", (System.nanoTime() - start) / 1_000_000);
+            } catch (LlmClient.IncompleteReplyException e) {
+                return outcome
+                        .put("reply", e.getReply())
+                        .put("cached", false)
+                        .put("incomplete", e.getMessage())
+                        .put("elapsedMs", (System.nanoTime() - start) / 1_000_000);
+            } catch (LlmClient.RateLimitedException e) {
+                RateLimiter.pause(bucket, e.getRetryAfterMillis());
+                if (attempt == MAX_ATTEMPTS) {
+                    return outcome.put("error", e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return outcome.put("error", "cancelled");
+            } catch (Exception e) {
+                System.err.println("[ExplainHandler] cluster " + cluster + " failed: " + e.getMessage());
+                return outcome.put("error", String.valueOf(e.getMessage()));
+            }
+        }
+    }
+
+    public static JSONObject stats() {
+        return new JSONObject()
+                .put("concurrency", CONCURRENCY)
+                .put("active", workers.getActiveCount())
+                .put("queued", workers.getQueue().size())
+                .put("completed", workers.getCompletedTaskCount());
+    }
+
+    private static void sendEvent(OutputStream os, String event, JSONObject data) throws IOException {
+        String frame = "event: " + event + "\ndata: " + data + "\n\n";
+        os.write(frame.getBytes(StandardCharsets.UTF_8));
+        os.flush();
+    }
+
+    private void sendErrorResponse(HttpExchange exchange, int statusCode, String message) throws IOException {
+        byte[] responseBytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(statusCode, responseBytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(responseBytes);
+        }
+    }
+}
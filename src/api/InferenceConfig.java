@@ -13,6 +13,8 @@ public class InferenceConfig {
     public static String llmModel;
     public static String llmApiKey;
     public static String llmTokensPerRequest;
+    // OpenAI-compatible chat completions endpoint; point it at a local stand-in for testing
+    public static String llmUrl = System.getProperty("purple.llm.url", "https://api.openai.com/v1/chat/completions");
 
     // Neo4j
     public static String neo4jUrl;
@@ -34,6 +36,12 @@ public class InferenceConfig {
         llmTokensPerRequest = tpr;
     }
 
+    public static void setLLMUrl(String url) {
+        if (url != null && !url.isBlank()) {
+            llmUrl = url;
+        }
+    }
+
     public static void setNeo4jConfig(String url, String user, String password) {
         neo4jUrl = url;
         neo4jUser = user;
@@ -77,6 +85,10 @@ public class InferenceConfig {
         return llmTokensPerRequest;
     }
 
+    public static String getLLMUrl() {
+        return llmUrl;
+    }
+
     public static String getNeo4jUrl() {
         return neo4jUrl;
     }
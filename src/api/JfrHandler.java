@@ -0,0 +1,205 @@
+package api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import trace.CypherEvent;
+import trace.EmbeddingEvent;
+import trace.LlmCallEvent;
+import trace.QueryStageEvent;
+import trace.ScrapeFileEvent;
+
+/*
+ * Flight recording on demand: the purple.* events from the trace package on
+ * top of the JDK's own (GC, safepoints, sockets, allocation...).
+ *   GET  /api/jfr                    status
+ *   POST /api/jfr?action=start[&settings=default|profile][&maxAgeSeconds=600]
+ *   GET  /api/jfr?action=dump        the recording so far as a .jfr file; keeps recording
+ *   POST /api/jfr?action=stop
+ * Open a dump in JDK Mission Control, or: jfr print --events 'purple.*' dump.jfr
+ * With no recording running the events cost a begin()/end() pair each.
+ */
+public class JfrHandler implements HttpHandler {
+
+    private static final List<Class<? extends Event>> EVENTS = List.of(
+            ScrapeFileEvent.class, CypherEvent.class, EmbeddingEvent.class, QueryStageEvent.class, LlmCallEvent.class);
+
+    private static final long DEFAULT_MAX_AGE_SECONDS = 600;
+
+    // guarded by JfrHandler.class
+    private static Recording recording;
+    private static String recordingSettings;
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "*");
+        exchange.getResponseHeaders().add("Access-Control-Expose-Headers", "Content-Disposition");
+
+        String method = exchange.getRequestMethod();
+        if ("OPTIONS".equalsIgnoreCase(method)) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        String action = queryParam(exchange, "action");
+        boolean isGet = "GET".equalsIgnoreCase(method);
+        boolean isPost = "POST".equalsIgnoreCase(method);
+
+        try {
+            if (action == null && isGet) {
+                sendJson(exchange, 200, status());
+            } else if ("dump".equals(action) && isGet) {
+                dump(exchange);
+            } else if ("start".equals(action) && isPost) {
+                start(exchange);
+            } else if ("stop".equals(action) && isPost) {
+                stop(exchange);
+            } else if (action == null || "dump".equals(action) || "start".equals(action) || "stop".equals(action)) {
+                exchange.sendResponseHeaders(405, -1);
+            } else {
+                sendJson(exchange, 400, new JSONObject().put("error", "Unknown action: " + action));
+            }
+        } catch (Exception e) {
+            System.err.println("[JfrHandler] " + action + " failed: " + e.getMessage());
+            // a dump can fail mid-body, after its 200 went out; then all that's left is to cut it off
+            if (exchange.getResponseCode() == -1) {
+                sendJson(exchange, 500, new JSONObject().put("error", String.valueOf(e.getMessage())));
+            } else {
+                exchange.close();
+            }
+        }
+    }
+
+    private void start(HttpExchange exchange) throws IOException, ParseException {
+        String settings = queryParam(exchange, "settings");
+        settings = settings == null ? "default" : settings;
+        if (!settings.equals("default") && !settings.equals("profile")) {
+            sendJson(exchange, 400, new JSONObject().put("error", "settings must be default or profile"));
+            return;
+        }
+        long maxAge = DEFAULT_MAX_AGE_SECONDS;
+        String rawMaxAge = queryParam(exchange, "maxAgeSeconds");
+        if (rawMaxAge != null) {
+            try {
+                maxAge = Long.parseLong(rawMaxAge);
+            } catch (NumberFormatException e) {
+                sendJson(exchange, 400, new JSONObject().put("error", "maxAgeSeconds must be a number"));
+                return;
+            }
+            if (maxAge < 0) {
+                sendJson(exchange, 400, new JSONObject().put("error", "maxAgeSeconds can't be negative"));
+                return;
+            }
+        }
+
+        synchronized (JfrHandler.class) {
+            if (recording != null) {
+                sendJson(exchange, 409, status().put("error", "A recording is already running"));
+                return;
+            }
+            Recording r = new Recording(Configuration.getConfiguration(settings));
+            r.setName("purple");
+            r.setToDisk(true);
+            r.setMaxAge(Duration.ofSeconds(maxAge));
+            for (Class<? extends Event> event : EVENTS) {
+                r.enable(event);
+            }
+            r.start();
+            recording = r;
+            recordingSettings = settings;
+            System.out.println("[JfrHandler] recording started (" + settings + ", maxAge " + maxAge + "s)");
+        }
+        sendJson(exchange, 200, status());
+    }
+
+    private void dump(HttpExchange exchange) throws IOException {
+        Path file = Files.createTempFile("purple-", ".jfr");
+        try {
+            synchronized (JfrHandler.class) {
+                if (recording == null) {
+                    sendJson(exchange, 404, new JSONObject().put("error", "No recording running"));
+                    return;
+                }
+                recording.dump(file);
+            }
+
+            String name = "purple-" + Instant.now().toString().replace(':', '-') + ".jfr";
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            exchange.getResponseHeaders().add("Content-Disposition", "attachment; filename=\"" + name + "\"");
+            exchange.sendResponseHeaders(200, Files.size(file));
+            try (OutputStream os = exchange.getResponseBody()) {
+                Files.copy(file, os);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void stop(HttpExchange exchange) throws IOException {
+        synchronized (JfrHandler.class) {
+            if (recording == null) {
+                sendJson(exchange, 404, new JSONObject().put("error", "No recording running"));
+                return;
+            }
+            recording.stop();
+            recording.close();
+            recording = null;
+            recordingSettings = null;
+            System.out.println("[JfrHandler] recording stopped");
+        }
+        sendJson(exchange, 200, status());
+    }
+
+    private static synchronized JSONObject status() {
+        JSONObject json = new JSONObject().put("running", recording != null);
+        if (recording != null) {
+            json.put("settings", recordingSettings);
+            json.put("state", recording.getState() == RecordingState.RUNNING ? "running" : recording.getState().name().toLowerCase());
+            json.put("startedAt", String.valueOf(recording.getStartTime()));
+            json.put("maxAgeSeconds", recording.getMaxAge() == null ? 0 : recording.getMaxAge().getSeconds());
+            json.put("bytes", recording.getSize());
+        }
+        return json;
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    private static void sendJson(HttpExchange exchange, int statusCode, JSONObject json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package api;
+
+import java.io.IOException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import trace.Metrics;
+
+/*
+ * Outermost wrapper on every context: request count by status class and
+ * latency, per context path. Sits outside AdmissionFilter so the 429s it
+ * hands out are counted too. Streaming endpoints are timed to the end of
+ * the stream.
+ */
+public class MetricsFilter implements HttpHandler {
+
+    private final HttpHandler delegate;
+    private final Metrics.Histogram latency;
+    // index = status / 100 - 1, so 1xx..5xx
+    private final Metrics.Counter[] byStatus = new Metrics.Counter[5];
+
+    public MetricsFilter(String path, HttpHandler delegate) {
+        this.delegate = delegate;
+        this.latency = Metrics.histogram("purple_http_request_duration_seconds",
+                "Time from request to response completion, per context path", "path", path);
+        for (int i = 0; i < byStatus.length; i++) {
+            byStatus[i] = Metrics.counter("purple_http_requests_total",
+                    "Requests handled, per context path and status class", "path", path, "status", (i + 1) + "xx");
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            delegate.handle(exchange);
+        } finally {
+            latency.observeNanos(System.nanoTime() - start);
+            // -1 means the handler threw before answering; the server closes the exchange as a failure
+            int status = exchange.getResponseCode();
+            int index = status < 100 || status > 599 ? 4 : status / 100 - 1;
+            byStatus[index].inc();
+        }
+    }
+}
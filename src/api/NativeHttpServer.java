@@ -6,21 +6,37 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.RandomAccessFile;
 import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONObject;
-import org.neo4j.driver.Session;
 
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
+import gen.EmbeddingGateway;
+import gen.MethodEmbedder;
+import gen.RateLimiter;
+import query.ClusterCache;
+import query.GraphGeneration;
+import query.GraphSnapshot;
+import query.QueryResultCache;
 import scrape.DbClient;
+import scrape.Neo4jConnection;
+import store.BlobStore;
+import store.GraphStore;
+import store.Neo4jGraphStore;
+import store.Projects;
 import seek.FileWalker;
+import trace.Metrics;
 
 public class NativeHttpServer {
 
@@ -28,29 +44,121 @@ public class NativeHttpServer {
 
     private static final ExecutorService embedPool = Executors.newSingleThreadExecutor();
 
+    // null when handlers run on virtual threads
+    private static ThreadPoolExecutor platformPool;
+
     public NativeHttpServer(int port) throws IOException {
 
         server = HttpServer.create(new InetSocketAddress(port), 0);
-        server.setExecutor(Executors.newCachedThreadPool());
+        server.setExecutor(createExecutor());
+
+        context("/api/uploadDirectory", admit(EndpointClass.ADMIN, new UploadDirectoryHandler()));
+        context("/api/processUploads", admit(EndpointClass.INGEST, new ProcessUploadsHandler()));
+
+        context("/api/query", admit(EndpointClass.QUERY, new QueryHandler()));
+        context("/api/nodes", admit(EndpointClass.QUERY, new NodeDetailHandler()));
+
+        context("/api/connectToNeo4j", admit(EndpointClass.ADMIN, new ConnectNeo4jHandler()));
+        context("/api/isGraphEmpty", admit(EndpointClass.ADMIN, new IsGraphEmptyHandler()));
+        context("/api/resetGraph", admit(EndpointClass.ADMIN, new ResetGraphHandler()));
+        context("/api/snapshot", admit(EndpointClass.ADMIN, new SnapshotHandler()));
+        context("/api/projects", admit(EndpointClass.ADMIN, new ProjectsHandler()));
+
+        context("/api/getInferenceConfig", admit(EndpointClass.ADMIN, new GetInferenceConfigHandler()));
+        context("/api/setInferenceConfig", admit(EndpointClass.ADMIN, new SetInferenceConfigHandler()));
+
+        context("/api/logs", admit(EndpointClass.ADMIN, new LogsHandler()));
 
-        server.createContext("/api/uploadDirectory", new UploadDirectoryHandler());
-        server.createContext("/api/processUploads", new ProcessUploadsHandler());
+        context("/api/openaiChat", admit(EndpointClass.CHAT, new OpenaiChatHandler()));
+        context("/api/explainResults", admit(EndpointClass.CHAT, new ExplainHandler()));
 
-        server.createContext("/api/query", new QueryHandler());
+        context("/api/getNeo4jConnection", admit(EndpointClass.ADMIN, new GetNeo4jConnectionHandler()));
 
-        server.createContext("/api/connectToNeo4j", new ConnectNeo4jHandler());
-        server.createContext("/api/isGraphEmpty", new IsGraphEmptyHandler());
-        server.createContext("/api/resetGraph", new ResetGraphHandler());
+        context("/api/stats", admit(EndpointClass.ADMIN, new StatsHandler()));
+        context("/api/jfr", admit(EndpointClass.ADMIN, new JfrHandler()));
+        context("/api/metrics", admit(EndpointClass.ADMIN, new MetricsHandler()));
 
-        server.createContext("/api/getInferenceConfig", new GetInferenceConfigHandler());
-        server.createContext("/api/setInferenceConfig", new SetInferenceConfigHandler());
+        registerMetrics();
 
-        server.createContext("/api/logs", new LogsHandler());
+        // before any ingest can run, so none slips past with replies from the old graph cached
+        GraphGeneration.addContentListener(ChatCache::clear);
 
-        server.createContext("/api/openaiChat", new OpenaiChatHandler());
+        // legacy nodes adopted into the default project after it was first served
+        Projects.addListener(() -> {
+            GraphSnapshot.reload();
+            GraphGeneration.contentsChanged("legacy nodes adopted");
+        });
+    }
+
+    /*
+     * Numbers that already live in the caches, pools and gateways, exposed as
+     * metric functions; they're read when /api/metrics is scraped, never on
+     * the request path.
+     */
+    private static void registerMetrics() {
+        Metrics.counterFunction("purple_cache_hits_total", "Cache hits", () -> ClusterCache.stats().getLong("hits"), "cache", "cluster");
+        Metrics.counterFunction("purple_cache_misses_total", "Cache misses", () -> ClusterCache.stats().getLong("misses"), "cache", "cluster");
+        Metrics.counterFunction("purple_cache_hits_total", "Cache hits", () -> QueryResultCache.stats().getLong("hits"), "cache", "query");
+        Metrics.counterFunction("purple_cache_misses_total", "Cache misses", () -> QueryResultCache.stats().getLong("misses"), "cache", "query");
+        Metrics.counterFunction("purple_cache_hits_total", "Cache hits", () -> ChatCache.stats().getLong("hits"), "cache", "chat");
+        Metrics.counterFunction("purple_cache_misses_total", "Cache misses", () -> ChatCache.stats().getLong("misses"), "cache", "chat");
+
+        for (EndpointClass endpointClass : EndpointClass.values()) {
+            String label = endpointClass.label;
+            Metrics.gauge("purple_admission_in_flight", "Requests running, per endpoint class", endpointClass::inFlight, "class", label);
+            Metrics.gauge("purple_admission_queued", "Requests waiting for a slot, per endpoint class", endpointClass::queued, "class", label);
+            Metrics.counterFunction("purple_admission_rejected_total", "Requests answered 429 by admission control", endpointClass::rejected, "class", label);
+        }
+        Metrics.gauge("purple_executor_queue", "Tasks waiting for an HTTP handler thread (platform pool only)",
+                () -> platformPool == null ? 0 : platformPool.getQueue().size());
+        Metrics.gauge("purple_executor_active", "HTTP handler threads busy (platform pool only)",
+                () -> platformPool == null ? 0 : platformPool.getActiveCount());
+
+        Metrics.gauge("purple_explain_active", "Explain workers busy", () -> ExplainHandler.stats().getInt("active"));
+        Metrics.gauge("purple_explain_queued", "Explain jobs waiting for a worker", () -> ExplainHandler.stats().getInt("queued"));
+
+        Metrics.gauge("purple_embedding_concurrency_limit", "Adaptive in-flight limit of the embedding gateway",
+                () -> EmbeddingGateway.stats().getInt("limit"));
+        Metrics.gauge("purple_embedding_in_flight", "Embedding requests in flight", () -> EmbeddingGateway.stats().getInt("inFlight"));
+        Metrics.gauge("purple_embedding_waiting", "Embedding requests waiting for a slot",
+                () -> EmbeddingGateway.stats().getInt("waitingInteractive") + EmbeddingGateway.stats().getInt("waitingBatch"));
+        Metrics.counterFunction("purple_embedding_retries_total", "Embedding attempts retried",
+                () -> EmbeddingGateway.stats().getLong("retries"));
+        Metrics.counterFunction("purple_embedding_throttled_total", "Embedding attempts answered 429/503/504",
+                () -> EmbeddingGateway.stats().getLong("throttled"));
+
+        Metrics.gauge("purple_graph_generation", "Graph generation counter", GraphGeneration::current);
+        Metrics.gauge("purple_neo4j_up", "1 when the last Neo4j heartbeat succeeded", () -> Neo4jConnection.isAvailable() ? 1 : 0);
+    }
+
+    private void context(String path, HttpHandler handler) {
+        server.createContext(path, new MetricsFilter(path, handler));
+    }
 
-        server.createContext("/api/getNeo4jConnection", new GetNeo4jConnectionHandler());
+    private static HttpHandler admit(EndpointClass endpointClass, HttpHandler handler) {
+        return new AdmissionFilter(endpointClass, handler);
+    }
 
+    /*
+     * Virtual thread per request when the JVM has them (21+); the admission
+     * filters are what bound the work. On older JVMs, a fixed platform pool
+     * sized to every class's running + waiting slots, so nothing admitted can
+     * starve for a thread and anything beyond is turned away quickly.
+     */
+    private static ExecutorService createExecutor() {
+        try {
+            ExecutorService virtual = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            System.out.println("HTTP handlers run on virtual threads");
+            return virtual;
+        } catch (ReflectiveOperationException e) {
+            int threads = EndpointClass.totalSlots() + 4;
+            platformPool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            platformPool.allowCoreThreadTimeOut(true);
+            System.out.println("HTTP handlers run on a " + threads + "-thread pool");
+            return platformPool;
+        }
     }
 
     public void start() {
@@ -77,17 +185,17 @@ public class NativeHttpServer {
             }
 
             try {
-                // Make sure we've connected to Neo4j 
-                if (!DbClient.isNeo4jAvailable()) {
+                // Make sure we've connected to the graph
+                if (!DbClient.isGraphAvailable()) {
                     // Optionally do ScrapeJava.initNeo4jConnection() if you expect an auto-reconnect
                     exchange.sendResponseHeaders(500, -1);
                     return;
                 }
 
-                // Delete all nodes/relationships
-                try (Session session = DbClient.getNeo4jDriver().session()) {
-                    session.run("MATCH (n) DETACH DELETE n");
-                }
+                // The project starts over empty right away; its old nodes are deleted in the background
+                Projects.reset(DbClient.activeProject());
+                GraphSnapshot.reload();
+                GraphGeneration.contentsChanged("reset");
 
                 // Return success
                 String response = "Graph has been reset successfully.";
@@ -122,18 +230,11 @@ public class NativeHttpServer {
                 return;
             }
 
-            // Now query Neo4j to see if any nodes exist
+            // Now ask the graph store whether any nodes exist
             boolean isEmpty = false;
             try {
-                long count = 0;
-                try (Session session = DbClient.getNeo4jDriver().session()) {
-                    var result = session.run("MATCH (n) RETURN count(n) AS c");
-                    if (result.hasNext()) {
-                        count = result.next().get("c").asLong();
-                    }
-                    System.out.println("Node count: " + count);
-
-                }
+                long count = DbClient.store().nodeCount();
+                System.out.println("Node count: " + count);
                 isEmpty = (count == 0);
             } catch (Exception e) {
                 e.printStackTrace();
@@ -183,6 +284,7 @@ public class NativeHttpServer {
             llmObj.put("model", InferenceConfig.getLLMModel());
             llmObj.put("apiKey", InferenceConfig.getLLMApiKey());
             llmObj.put("tpr", InferenceConfig.getLLMTokensPerRequest());
+            llmObj.put("url", InferenceConfig.getLLMUrl());
             json.put("llm", llmObj);
 
             // Return 404 if your config is "unset"
@@ -253,6 +355,7 @@ public class NativeHttpServer {
                     String lTpr = llmObj.optString("tpr", null);
 
                     InferenceConfig.setLLMConfig(lProvider, lModel, lApiKey, lTpr);
+                    InferenceConfig.setLLMUrl(llmObj.optString("url", null));
                 }
 
                 sendJsonResponse(exchange, 200, "{\"status\":\"ok\"}");
@@ -400,8 +503,10 @@ public class NativeHttpServer {
                 InferenceConfig.setNeo4jConfig(url, user, pass);
                 // Re-initialize the driver with these creds
                 DbClient.initNeo4jConnection();
+                GraphSnapshot.reload();
+                GraphGeneration.bump("neo4j connection");
 
-                boolean isAvailable = DbClient.isNeo4jAvailable();
+                boolean isAvailable = DbClient.isGraphAvailable();
 
                 // Return success or failure
                 if (isAvailable) {
@@ -501,39 +606,36 @@ public class NativeHttpServer {
                     InferenceConfig.setLLMConfig(lProvider, lModel, lApiKey, lTpr);
                 }
 
+                // optional: which project to build; queries keep reading the active one meanwhile
+                String project = json.optString("project", DbClient.activeProject());
+                if (!Projects.isValidName(project)) {
+                    byte[] bytes = ("Invalid project name: " + project).getBytes();
+                    exchange.sendResponseHeaders(400, bytes.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(bytes);
+                    }
+                    return;
+                }
+
                 DbClient.initNeo4jConnection(); // we rely on the config set by connectToNeo4j
-                System.out.println("Processing 'uploads' with FileWalker...");
+                System.out.println("Processing 'uploads' into project " + project + " with FileWalker...");
                 String projectRoot = json.getString("projectRoot");
-                FileWalker.processProjectFiles(projectRoot);
+                GraphStore store = DbClient.ingestInto(project);
+                try {
+                    FileWalker.processProjectFiles(projectRoot);
+                } finally {
+                    DbClient.ingestInto(null);
+                }
+                // snapshot first, so nothing gets cached under the new generation from the old topology
+                GraphSnapshot.refresh();
+                GraphGeneration.contentsChanged("ingest");
 
-                // run embeddings Python script 
-                embedPool.submit(() -> {
-                    try {
-                        Path pythonBin = Paths.get("venv", "bin", "python");
-                        Path script = Paths.get("src/gen/embed.py");
-
-                        ProcessBuilder pb = new ProcessBuilder(
-                                pythonBin.toAbsolutePath().toString(),
-                                script.toAbsolutePath().toString(),
-                                "--hf-url", InferenceConfig.getEmbeddingsUrl(),
-                                "--hf-token", InferenceConfig.getEmbeddingsToken(),
-                                "--hf-dim", InferenceConfig.getEmbeddingsDim(),
-                                "--hf-tpe", InferenceConfig.getEmbeddingsTokensPerEmb(),
-                                "--neo4j-uri", InferenceConfig.getNeo4jUrl(),
-                                "--neo4j-user", InferenceConfig.getNeo4jUser(),
-                                "--neo4j-pass", InferenceConfig.getNeo4jPassword()
-                        );
-
-                        // redirect all output into loading.log 
-                        File logFile = Paths.get(projectRoot, "loading.log").toFile();
-                        pb.redirectOutput(logFile);
-                        pb.redirectErrorStream(true);
-
-                        pb.start();
-                    } catch (Exception ex) {
-                        ex.printStackTrace();
-                    }
-                });
+                // Embed.py can't reach the in-memory graph, so that one is embedded from here
+                if (store instanceof Neo4jGraphStore neo4jStore && !MethodEmbedder.IN_PROCESS) {
+                    embedPool.submit(() -> runEmbedScript(projectRoot, neo4jStore));
+                } else {
+                    embedPool.submit(() -> embedInProcess(store));
+                }
 
                 String resp = "Embedding started in background.";
                 byte[] bytes = resp.getBytes();
@@ -548,6 +650,145 @@ public class NativeHttpServer {
         }
     }
 
+    // wait so cached results built on the old vectors get dropped once it's done
+    private static void runEmbedScript(String projectRoot, Neo4jGraphStore store) {
+        try {
+            Path pythonBin = Paths.get("venv", "bin", "python");
+            Path script = Paths.get("src/gen/embed.py");
+
+            ProcessBuilder pb = new ProcessBuilder(
+                    pythonBin.toAbsolutePath().toString(),
+                    script.toAbsolutePath().toString(),
+                    "--hf-url", InferenceConfig.getEmbeddingsUrl(),
+                    "--hf-token", InferenceConfig.getEmbeddingsToken(),
+                    "--hf-dim", InferenceConfig.getEmbeddingsDim(),
+                    "--hf-tpe", InferenceConfig.getEmbeddingsTokensPerEmb(),
+                    "--neo4j-uri", DbClient.boltUrl(),
+                    "--neo4j-user", InferenceConfig.getNeo4jUser(),
+                    "--neo4j-pass", InferenceConfig.getNeo4jPassword(),
+                    "--neo4j-label", store.label(),
+                    "--index-name", store.vectorIndex(),
+                    "--blob-dir", BlobStore.dir().toAbsolutePath().toString()
+            );
+
+            // redirect all output into loading.log 
+            File logFile = Paths.get(projectRoot, "loading.log").toFile();
+            pb.redirectOutput(logFile);
+            pb.redirectErrorStream(true);
+
+            Process process = pb.start();
+            process.waitFor();
+            GraphGeneration.contentsChanged("re-embed");
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    private static void embedInProcess(GraphStore store) {
+        try {
+            int embedded = MethodEmbedder.embedAll(store,
+                    InferenceConfig.getEmbeddingsUrl(),
+                    InferenceConfig.getEmbeddingsToken(),
+                    Integer.parseInt(InferenceConfig.getEmbeddingsDim()),
+                    Integer.parseInt(InferenceConfig.getEmbeddingsTokensPerEmb()));
+            System.out.println("[MethodEmbedder] " + embedded + " methods embedded");
+            GraphGeneration.contentsChanged("re-embed");
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    static class StatsHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+            exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, OPTIONS");
+            exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "*");
+
+            if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            JSONObject json = new JSONObject();
+            json.put("graphGeneration", GraphGeneration.current());
+            json.put("clusterCache", ClusterCache.stats());
+            json.put("queryCache", QueryResultCache.stats());
+            json.put("chatCache", ChatCache.stats());
+            json.put("explain", ExplainHandler.stats());
+            json.put("embeddings", EmbeddingGateway.stats());
+            json.put("rateLimits", RateLimiter.stats());
+            try {
+                GraphStore store = DbClient.store();
+                json.put("graphStore", store.stats().put("kind", store.kind()));
+            } catch (IllegalStateException e) {
+                json.put("graphStore", new JSONObject().put("error", e.getMessage()));
+            }
+            json.put("projects", Projects.stats().put("active", DbClient.activeProject()));
+            json.put("blobs", BlobStore.stats());
+
+            GraphSnapshot snapshot = GraphSnapshot.current();
+            JSONObject snapObj = new JSONObject();
+            snapObj.put("enabled", GraphSnapshot.ENABLED);
+            snapObj.put("loaded", snapshot != null);
+            if (snapshot != null) {
+                snapObj.put("nodes", snapshot.nodeCount());
+                snapObj.put("rels", snapshot.edgeCount());
+            }
+            json.put("graphSnapshot", snapObj);
+
+            JSONObject admission = new JSONObject();
+            for (EndpointClass endpointClass : EndpointClass.values()) {
+                admission.put(endpointClass.name().toLowerCase(), endpointClass.stats());
+            }
+            if (platformPool != null) {
+                admission.put("executorQueue", platformPool.getQueue().size());
+                admission.put("executorActive", platformPool.getActiveCount());
+            }
+            json.put("admission", admission);
+
+            byte[] bytes = json.toString().getBytes();
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
+    static class MetricsHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+            exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, OPTIONS");
+            exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "*");
+
+            if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                return;
+            }
+
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            byte[] bytes = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(bytes);
+            }
+        }
+    }
+
     /*  Inside NativeHttpServer.java  (outside the other handler classes) */
     static class LogsHandler implements HttpHandler {
 
@@ -566,6 +807,7 @@ public class NativeHttpServer {
             try (OutputStream out = exchange.getResponseBody(); RandomAccessFile raf = new RandomAccessFile(LOG_FILE.toFile(), "r")) {
                 // start at end of file so we only send new lines
                 long position = raf.length();
+                long lastWrite = System.currentTimeMillis();
                 while (true) {
                     long len = raf.length();
                     if (len < position) {
@@ -578,6 +820,14 @@ public class NativeHttpServer {
                             out.flush();           // push immediately
                         }
                         position = raf.getFilePointer();
+                        lastWrite = System.currentTimeMillis();
+                    }
+
+                    // SSE comment as a heartbeat, so a closed tab is noticed and its admin slot freed
+                    if (System.currentTimeMillis() - lastWrite > 15_000) {
+                        out.write(": ping\n\n".getBytes());
+                        out.flush();
+                        lastWrite = System.currentTimeMillis();
                     }
 
                     // poll every 300 ms so we don’t spin‑cpu 
@@ -0,0 +1,155 @@
+package api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.TreeSet;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import query.GraphGeneration;
+import query.UserQuery;
+import scrape.DbClient;
+
+/*
+ * Full node properties (code included) by id, for clients using lean query responses.
+ *   GET  /api/nodes?ids=12,40,41[&v=<graphVersion>]
+ *   POST /api/nodes  { "ids": [12, 40, 41] }
+ * Ids outside the active project are not found. Responses carry a strong ETag
+ * derived from the graph version, the project and the id set, so a
+ * revalidation is answered with 304 without touching Neo4j. When the
+ * request pins the current graph version (v=…, as returned by /api/query) the
+ * response is cacheable for good, because that URL can never change meaning.
+ */
+public class NodeDetailHandler implements HttpHandler {
+
+    private static final int MAX_IDS = 500;
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, If-None-Match");
+        exchange.getResponseHeaders().add("Access-Control-Expose-Headers", "ETag");
+
+        if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        boolean isGet = "GET".equalsIgnoreCase(exchange.getRequestMethod());
+        if (!isGet && !"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            return;
+        }
+
+        try {
+            // sorted + de-duplicated so the same set always yields the same ETag
+            TreeSet<Long> ids = new TreeSet<>();
+            if (isGet) {
+                String raw = queryParam(exchange, "ids");
+                if (raw != null) {
+                    for (String part : raw.split(",")) {
+                        if (!part.isBlank()) {
+                            ids.add(Long.parseLong(part.trim()));
+                        }
+                    }
+                }
+            } else {
+                try (InputStream is = exchange.getRequestBody()) {
+                    JSONArray arr = new JSONObject(new String(is.readAllBytes(), StandardCharsets.UTF_8)).getJSONArray("ids");
+                    for (int i = 0; i < arr.length(); i++) {
+                        ids.add(arr.getLong(i));
+                    }
+                }
+            }
+
+            if (ids.isEmpty() || ids.size() > MAX_IDS) {
+                sendErrorResponse(exchange, 400, "Expected between 1 and " + MAX_IDS + " node ids");
+                return;
+            }
+
+            String version = GraphGeneration.tag();
+            String etag = "\"" + version + "-" + DbClient.activeProject() + "-" + digest(ids) + "\"";
+            String cacheControl = version.equals(queryParam(exchange, "v"))
+                    ? "private, max-age=31536000, immutable"
+                    : "private, no-cache";
+
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+                exchange.getResponseHeaders().add("ETag", etag);
+                exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+                exchange.sendResponseHeaders(304, -1);
+                return;
+            }
+
+            JSONArray nodes = UserQuery.getNodeDetails(new ArrayList<>(ids));
+            if (nodes.isEmpty()) {
+                // unknown ids or Neo4j trouble; either way nothing a browser should keep
+                sendErrorResponse(exchange, 404, "No nodes found for the given ids");
+                return;
+            }
+            if (!version.equals(GraphGeneration.tag())) {
+                // graph changed under us; the body may already be newer than the tag says
+                cacheControl = "no-store";
+            }
+            JSONObject json = new JSONObject()
+                    .put("graphVersion", version)
+                    .put("nodes", nodes);
+
+            exchange.getResponseHeaders().add("ETag", etag);
+            exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+            byte[] respBytes = json.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, respBytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(respBytes);
+            }
+
+        } catch (NumberFormatException | JSONException e) {
+            sendErrorResponse(exchange, 400, "Invalid ids: " + e.getMessage());
+        } catch (Exception e) {
+            e.printStackTrace();
+            sendErrorResponse(exchange, 500, "Internal server error: " + e.getMessage());
+        }
+    }
+
+    private static String digest(TreeSet<Long> ids) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        for (Long id : ids) {
+            md.update((id + ",").getBytes(StandardCharsets.US_ASCII));
+        }
+        return HexFormat.of().formatHex(md.digest(), 0, 12);
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    private void sendErrorResponse(HttpExchange exchange, int statusCode, String message) throws IOException {
+        byte[] responseBytes = message.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(statusCode, responseBytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(responseBytes);
+        }
+    }
+}
@@ -3,8 +3,6 @@ package api;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 
 import org.json.JSONArray;
@@ -13,8 +11,13 @@ import org.json.JSONObject;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
+import gen.LlmClient;
+
 public class OpenaiChatHandler implements HttpHandler {
 
+    // "bypass" on the request skips the cache lookup; the response says HIT, MISS or BYPASS
+    private static final String CACHE_HEADER = "X-Purple-Cache";
+
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
@@ -44,7 +47,7 @@ public class OpenaiChatHandler implements HttpHandler {
             return;
         }
 
-        // Expecting { "messages": [ { role, content }, ... ] }
+        // Expecting { "messages": [ { role, content }, ... ], "stream"?: true }
         JSONArray messages = reqJson.optJSONArray("messages");
         if (messages == null) {
             exchange.sendResponseHeaders(400, -1);
@@ -59,48 +62,33 @@ public class OpenaiChatHandler implements HttpHandler {
             return;
         }
 
-        JSONObject payload = new JSONObject()
-                .put("model", model)
-                .put("messages", messages);
+        boolean bypass = "bypass".equalsIgnoreCase(exchange.getRequestHeaders().getFirst(CACHE_HEADER));
+        String cacheKey = ChatCache.key(model, messages);
+        String cached = bypass ? null : ChatCache.get(cacheKey);
+        exchange.getResponseHeaders().set(CACHE_HEADER, bypass ? "BYPASS" : cached != null ? "HIT" : "MISS");
+
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (reqJson.optBoolean("stream", false) || (accept != null && accept.contains("text/event-stream"))) {
+            streamReply(exchange, model, apiKey, messages, cacheKey, cached);
+            return;
+        }
 
         // System.out.println("~~~~~~~~~~~~~~~~~~~~~payload sent to open ai~~~~~~~~~~~~~~~~~~~");
-        // System.out.println(payload.toString(2));
+        // System.out.println(messages.toString(2));
         // Call OpenAI
-        String aiResponse;
-        try {
-            URL url = new URL("https://api.openai.com/v1/chat/completions");
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("POST");
-            conn.setDoOutput(true);
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setRequestProperty("Authorization", "Bearer " + apiKey);
-
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(payload.toString().getBytes(StandardCharsets.UTF_8));
+        String aiResponse = cached;
+        if (aiResponse == null) {
+            try {
+                aiResponse = LlmClient.complete(InferenceConfig.getLLMUrl(), model, apiKey, messages);
+                ChatCache.put(cacheKey, model, aiResponse);
+            } catch (LlmClient.IncompleteReplyException e) {
+                // worth showing, not worth keeping
+                aiResponse = e.getReply();
+            } catch (Exception e) {
+                e.printStackTrace();
+                exchange.sendResponseHeaders(502, -1);
+                return;
             }
-
-            int status = conn.getResponseCode();
-            InputStream respStream = (status < 300)
-                    ? conn.getInputStream()
-                    : conn.getErrorStream();
-
-            String respBody = new String(respStream.readAllBytes(), StandardCharsets.UTF_8);
-            if (status >= 300) {
-                throw new IOException("OpenAI returned HTTP " + status + ": " + respBody);
-            }
-
-            JSONObject respJson = new JSONObject(respBody);
-            // choices[0].message.content
-            aiResponse = respJson
-                    .getJSONArray("choices")
-                    .getJSONObject(0)
-                    .getJSONObject("message")
-                    .getString("content");
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            exchange.sendResponseHeaders(502, -1);
-            return;
         }
 
         // Return { "reply": aiResponse }
@@ -112,4 +100,54 @@ public class OpenaiChatHandler implements HttpHandler {
             os.write(outBytes);
         }
     }
+
+    /*
+     * Relays the upstream token stream as server-sent events:
+     *   data: {"delta": "..."}          (repeated)
+     *   event: done   data: {"reply": "<full text>"}
+     *                 plus "incomplete": "<finish_reason>" or "cut off" if it stopped early (not cached)
+     *   event: error  data: {"error": "..."}   if the upstream fails midway
+     * A cached reply is sent as a single delta followed by done.
+     */
+    private void streamReply(HttpExchange exchange, String model, String apiKey, JSONArray messages,
+            String cacheKey, String cached) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        try (OutputStream os = exchange.getResponseBody()) {
+            if (cached != null) {
+                sendEvent(os, null, new JSONObject().put("delta", cached));
+                sendEvent(os, "done", new JSONObject().put("reply", cached));
+                return;
+            }
+            try {
+                String reply = LlmClient.stream(InferenceConfig.getLLMUrl(), model, apiKey, messages, delta -> {
+                    sendEvent(os, null, new JSONObject().put("delta", delta));
+                });
+                // only finished replies get here; a stream cut short or stopped early throws instead
+                ChatCache.put(cacheKey, model, reply);
+                sendEvent(os, "done", new JSONObject().put("reply", reply));
+            } catch (LlmClient.IncompleteReplyException e) {
+                // the deltas already went out; say it ended early and keep it out of the cache
+                sendEvent(os, "done", new JSONObject()
+                        .put("reply", e.getReply())
+                        .put("incomplete", e.getFinishReason() == null ? "cut off" : e.getFinishReason()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (IOException clientOrUpstreamGone) {
+                // if it was the browser that left, this write fails too and we're done
+                sendEvent(os, "error", new JSONObject().put("error", String.valueOf(clientOrUpstreamGone.getMessage())));
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendEvent(os, "error", new JSONObject().put("error", String.valueOf(e.getMessage())));
+            }
+        }
+    }
+
+    private static void sendEvent(OutputStream os, String event, JSONObject data) throws IOException {
+        String frame = (event == null ? "" : "event: " + event + "\n") + "data: " + data + "\n\n";
+        os.write(frame.getBytes(StandardCharsets.UTF_8));
+        os.flush();
+    }
 }
@@ -0,0 +1,106 @@
+package api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import query.GraphGeneration;
+import query.GraphSnapshot;
+import scrape.DbClient;
+import store.Projects;
+
+/*
+ * Named search spaces living side by side. Queries, node details, reset and
+ * snapshots act on the active project; processUploads takes a "project" to
+ * build another one meanwhile.
+ *   GET  /api/projects                        projects with node counts, the active one
+ *   POST /api/projects?action=use&name=X      make X the active project
+ *   POST /api/projects?action=delete&name=X   delete X in the background
+ */
+public class ProjectsHandler implements HttpHandler {
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "*");
+
+        String method = exchange.getRequestMethod();
+        if ("OPTIONS".equalsIgnoreCase(method)) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        String action = queryParam(exchange, "action");
+        boolean isGet = "GET".equalsIgnoreCase(method);
+        boolean isPost = "POST".equalsIgnoreCase(method);
+
+        try {
+            if (action == null && isGet) {
+                sendJson(exchange, 200, status());
+            } else if (("use".equals(action) || "delete".equals(action)) && isPost) {
+                String name = queryParam(exchange, "name");
+                if (!Projects.isValidName(name)) {
+                    sendJson(exchange, 400, new JSONObject().put("error", "name must be 1-48 letters, digits, '_' or '-'"));
+                    return;
+                }
+                if (!DbClient.isGraphAvailable()) {
+                    sendJson(exchange, 503, new JSONObject().put("error", "Graph store is not available"));
+                    return;
+                }
+                if ("use".equals(action)) {
+                    DbClient.useProject(name);
+                    GraphSnapshot.reload();
+                    GraphGeneration.bump("project " + name);
+                } else {
+                    Projects.delete(name);
+                    if (name.equals(DbClient.activeProject())) {
+                        DbClient.useProject(Projects.DEFAULT);
+                    }
+                    GraphSnapshot.reload();
+                    GraphGeneration.bump("delete project " + name);
+                }
+                sendJson(exchange, 200, status());
+            } else if (action == null || "use".equals(action) || "delete".equals(action)) {
+                exchange.sendResponseHeaders(405, -1);
+            } else {
+                sendJson(exchange, 400, new JSONObject().put("error", "Unknown action: " + action));
+            }
+        } catch (Exception e) {
+            System.err.println("[ProjectsHandler] " + action + " failed: " + e);
+            sendJson(exchange, 500, new JSONObject().put("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    private static JSONObject status() {
+        return Projects.stats().put("active", DbClient.activeProject());
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    private static void sendJson(HttpExchange exchange, int statusCode, JSONObject json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -11,15 +12,26 @@ import org.json.JSONObject;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
+import query.GraphGeneration;
+import query.QueryListener;
+import query.QueryPlan;
+import query.QueryResultCache;
 import query.UserQuery;
 
 public class QueryHandler implements HttpHandler {
 
+    // send "X-Purple-Cache: bypass" to force a fresh run (response still refreshes the cache)
+    private static final String CACHE_HEADER = "X-Purple-Cache";
+
+    // latency budget applied when the client doesn't send one (0 = none)
+    private static final long DEFAULT_DEADLINE_MS = Long.getLong("purple.query.deadlineMillis", 0L);
+
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
         exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "POST, OPTIONS");
-        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "Content-Type, " + CACHE_HEADER);
+        exchange.getResponseHeaders().add("Access-Control-Expose-Headers", CACHE_HEADER);
 
         if ("OPTIONS".equalsIgnoreCase(exchange.getRequestMethod())) {
             exchange.sendResponseHeaders(200, -1);
@@ -43,11 +55,41 @@ public class QueryHandler implements HttpHandler {
                 return;
             }
 
-            // Top K is manual right now
-            JSONObject obj = UserQuery.runEmbeddingQuery(prompt, 10);
+            // optional: { topK, maxClusterSize, deadlineMs, lean }
+            QueryPlan plan = new QueryPlan(
+                    json.optInt("topK", QueryPlan.DEFAULT_TOP_K),
+                    json.optInt("maxClusterSize", 0),
+                    json.optLong("deadlineMs", DEFAULT_DEADLINE_MS))
+                    .setLean(json.optBoolean("lean", false));
+
+            // { "stream": "ndjson" | "sse" } (or ?stream=…) sends results as they are ready
+            String stream = json.optString("stream", queryParam(exchange, "stream"));
+            if ("ndjson".equalsIgnoreCase(stream) || "sse".equalsIgnoreCase(stream)) {
+                streamQuery(exchange, prompt, plan, "sse".equalsIgnoreCase(stream));
+                return;
+            }
+
+            boolean bypass = "bypass".equalsIgnoreCase(exchange.getRequestHeaders().getFirst(CACHE_HEADER));
+            long generation = GraphGeneration.current();
+            String cacheKey = QueryResultCache.key(prompt, plan, InferenceConfig.getEmbeddingsUrl(), generation);
+
+            byte[] respBytes = bypass ? null : QueryResultCache.get(cacheKey);
+            if (respBytes != null) {
+                exchange.getResponseHeaders().add(CACHE_HEADER, "HIT");
+            } else {
+                JSONObject obj = UserQuery.runEmbeddingQuery(prompt, plan);
+
+                // System.out.println(obj.toString());
+                respBytes = obj.toString().getBytes(StandardCharsets.UTF_8);
+
+                // an empty object means the query failed somewhere, and a deadline-trimmed
+                // answer is only good for this request; don't pin either
+                if (!obj.isEmpty() && !plan.isDegraded()) {
+                    QueryResultCache.put(cacheKey, generation, respBytes);
+                }
+                exchange.getResponseHeaders().add(CACHE_HEADER, bypass ? "BYPASS" : "MISS");
+            }
 
-            // System.out.println(obj.toString());
-            byte[] respBytes = obj.toString().getBytes(StandardCharsets.UTF_8);
             exchange.getResponseHeaders().add("Content-Type", "application/json");
             exchange.sendResponseHeaders(200, respBytes.length);
 
@@ -64,6 +106,107 @@ public class QueryHandler implements HttpHandler {
         }
     }
 
+    /*
+     * Chunked response, one event per line (NDJSON) or per SSE message:
+     *   {"type":"hits", "hits":[…]}
+     *   {"type":"cluster", "index":i, "graph":{…}, "chat":{…}}   (one per hit)
+     *   {"type":"done", "plan":{…}}
+     * The query cache is not consulted; the cluster cache still is.
+     */
+    private void streamQuery(HttpExchange exchange, String prompt, QueryPlan plan, boolean sse) throws IOException {
+        QueryStreamWriter writer = new QueryStreamWriter(exchange, sse);
+        try {
+            boolean ok = UserQuery.streamEmbeddingQuery(prompt, plan, writer);
+            if (!ok) {
+                sendErrorResponse(exchange, 500, "Query failed, see server log");
+                return;
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            if (!writer.started) {
+                sendErrorResponse(exchange, 500, "Internal server error: " + e.getMessage());
+                return;
+            }
+            try {
+                writer.write("error", new JSONObject().put("type", "error").put("message", String.valueOf(e.getMessage())));
+            } catch (IOException clientGone) {
+                // nothing left to tell
+            }
+        }
+        writer.close();
+    }
+
+    private static class QueryStreamWriter implements QueryListener {
+
+        private final HttpExchange exchange;
+        private final boolean sse;
+        private OutputStream out;
+        boolean started = false;
+
+        QueryStreamWriter(HttpExchange exchange, boolean sse) {
+            this.exchange = exchange;
+            this.sse = sse;
+        }
+
+        @Override
+        public void onHits(List<JSONObject> hits) throws IOException {
+            write("hits", new JSONObject().put("type", "hits").put("hits", hits));
+        }
+
+        @Override
+        public void onCluster(int index, JSONObject graph, JSONObject chat) throws IOException {
+            write("cluster", new JSONObject()
+                    .put("type", "cluster")
+                    .put("index", index)
+                    .put("graph", graph)
+                    .put("chat", chat));
+        }
+
+        @Override
+        public void onDone(JSONObject plan) throws IOException {
+            write("done", new JSONObject()
+                    .put("type", "done")
+                    .put("plan", plan)
+                    .put("graphVersion", GraphGeneration.tag()));
+        }
+
+        void write(String event, JSONObject payload) throws IOException {
+            if (!started) {
+                // headers go out with the first event, so failures before it can still get a status code
+                exchange.getResponseHeaders().add("Content-Type", sse ? "text/event-stream" : "application/x-ndjson");
+                exchange.getResponseHeaders().add("Cache-Control", "no-cache");
+                exchange.sendResponseHeaders(200, 0); // 0 -> chunked
+                out = exchange.getResponseBody();
+                started = true;
+            }
+            String line = sse
+                    ? "event: " + event + "\ndata: " + payload + "\n\n"
+                    : payload + "\n";
+            out.write(line.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        void close() throws IOException {
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
     private void sendErrorResponse(HttpExchange exchange, int statusCode, String message) throws IOException {
         byte[] responseBytes = message.getBytes(StandardCharsets.UTF_8);
         exchange.sendResponseHeaders(statusCode, responseBytes.length);
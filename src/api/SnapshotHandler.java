@@ -0,0 +1,191 @@
+package api;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import query.GraphGeneration;
+import query.GraphSnapshot;
+import scrape.DbClient;
+import store.GraphImage;
+import store.GraphStore;
+import store.Projects;
+import store.SnapshotFile;
+
+/*
+ * Save and restore a whole search space (graph, properties, code, vectors)
+ * instead of re-ingesting and re-embedding it.
+ *   GET  /api/snapshot                           the snapshots on disk
+ *   POST /api/snapshot?action=save&name=X        current graph -> X.psnap
+ *   POST /api/snapshot?action=restore&name=X     X.psnap replaces the current graph
+ * Both take &project=P to act on a project other than the active one.
+ * Snapshots live in -Dpurple.snapshot.dir (default purple-data/snapshots). A
+ * snapshot restores into whichever store is connected, not only the kind it
+ * was taken from.
+ */
+public class SnapshotHandler implements HttpHandler {
+
+    private static final Path DIR = Path.of(System.getProperty("purple.snapshot.dir", "purple-data/snapshots"));
+    private static final String SUFFIX = ".psnap";
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9._-]{1,100}");
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().add("Access-Control-Allow-Origin", "*");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        exchange.getResponseHeaders().add("Access-Control-Allow-Headers", "*");
+
+        String method = exchange.getRequestMethod();
+        if ("OPTIONS".equalsIgnoreCase(method)) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        String action = queryParam(exchange, "action");
+        boolean isGet = "GET".equalsIgnoreCase(method);
+        boolean isPost = "POST".equalsIgnoreCase(method);
+
+        try {
+            if (action == null && isGet) {
+                sendJson(exchange, 200, new JSONObject().put("snapshots", list()));
+            } else if (("save".equals(action) || "restore".equals(action)) && isPost) {
+                String name = queryParam(exchange, "name");
+                if (name == null || !NAME.matcher(name).matches()) {
+                    sendJson(exchange, 400, new JSONObject().put("error", "name must be letters, digits, '.', '_' or '-'"));
+                    return;
+                }
+                String project = queryParam(exchange, "project");
+                project = project == null ? DbClient.activeProject() : project;
+                if (!Projects.isValidName(project)) {
+                    sendJson(exchange, 400, new JSONObject().put("error", "Invalid project name"));
+                    return;
+                }
+                if (!DbClient.isGraphAvailable()) {
+                    sendJson(exchange, 503, new JSONObject().put("error", "Graph store is not available"));
+                    return;
+                }
+                Path file = DIR.resolve(name + SUFFIX);
+                if ("save".equals(action)) {
+                    sendJson(exchange, 200, save(name, file, project));
+                } else if (!Files.exists(file)) {
+                    sendJson(exchange, 404, new JSONObject().put("error", "No snapshot " + name));
+                } else {
+                    sendJson(exchange, 200, restore(name, file, project));
+                }
+            } else if (action == null || "save".equals(action) || "restore".equals(action)) {
+                exchange.sendResponseHeaders(405, -1);
+            } else {
+                sendJson(exchange, 400, new JSONObject().put("error", "Unknown action: " + action));
+            }
+        } catch (Exception e) {
+            System.err.println("[SnapshotHandler] " + action + " failed: " + e);
+            sendJson(exchange, 500, new JSONObject().put("error", String.valueOf(e.getMessage())));
+        }
+    }
+
+    private static synchronized JSONObject save(String name, Path file, String project) throws IOException {
+        long start = System.nanoTime();
+        GraphStore store = DbClient.store(project);
+        GraphImage image = store.image();
+        long exported = System.nanoTime();
+        Files.createDirectories(DIR);
+        long bytes = SnapshotFile.write(image, new JSONObject().put("source", store.kind()).put("project", project), file);
+        long end = System.nanoTime();
+        System.out.println("[SnapshotHandler] saved " + name + ": " + image.nodeCount() + " nodes, "
+                + image.edgeCount() + " edges, " + image.vectorCount() + " vectors, " + bytes + " bytes in "
+                + (end - start) / 1_000_000 + " ms");
+        return counts(name, image)
+                .put("project", project)
+                .put("bytes", bytes)
+                .put("exportMillis", (exported - start) / 1_000_000)
+                .put("writeMillis", (end - exported) / 1_000_000);
+    }
+
+    // into an emptied project; what it held before is deleted in the background
+    private static synchronized JSONObject restore(String name, Path file, String project) throws IOException {
+        long start = System.nanoTime();
+        GraphImage image = SnapshotFile.read(file);
+        long read = System.nanoTime();
+        GraphStore store = Projects.reset(project);
+        store.load(image);
+        long end = System.nanoTime();
+        GraphSnapshot.reload();
+        GraphGeneration.contentsChanged("restore");
+        System.out.println("[SnapshotHandler] restored " + name + " into " + store.kind() + " project " + project
+                + " in " + (end - start) / 1_000_000 + " ms");
+        return counts(name, image)
+                .put("project", project)
+                .put("readMillis", (read - start) / 1_000_000)
+                .put("loadMillis", (end - read) / 1_000_000);
+    }
+
+    private static JSONObject counts(String name, GraphImage image) {
+        return new JSONObject()
+                .put("name", name)
+                .put("nodes", image.nodeCount())
+                .put("edges", image.edgeCount())
+                .put("vectors", image.vectorCount());
+    }
+
+    private static JSONArray list() throws IOException {
+        JSONArray snapshots = new JSONArray();
+        if (!Files.isDirectory(DIR)) {
+            return snapshots;
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(DIR)) {
+            files = paths.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).sorted().toList();
+        }
+        for (Path file : files) {
+            String fileName = file.getFileName().toString();
+            JSONObject entry = new JSONObject()
+                    .put("name", fileName.substring(0, fileName.length() - SUFFIX.length()))
+                    .put("bytes", Files.size(file));
+            try {
+                JSONObject meta = SnapshotFile.describe(file);
+                for (String key : List.of("version", "createdAt", "nodes", "edges", "vectors", "dimensions")) {
+                    entry.put(key, meta.get(key));
+                }
+                entry.put("source", meta.getJSONObject("info").optString("source"));
+            } catch (IOException e) {
+                entry.put("error", e.getMessage());
+            }
+            snapshots.put(entry);
+        }
+        return snapshots;
+    }
+
+    private static String queryParam(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0 && pair.substring(0, eq).equals(name)) {
+                return pair.substring(eq + 1);
+            }
+        }
+        return null;
+    }
+
+    private static void sendJson(HttpExchange exchange, int statusCode, JSONObject json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
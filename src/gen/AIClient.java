@@ -9,27 +9,81 @@ import java.net.http.HttpResponse;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import trace.EmbeddingEvent;
+import trace.Metrics;
+
 public class AIClient {
 
     private static final HttpClient httpClient = HttpClient.newHttpClient();
 
+    private static final Metrics.Histogram interactiveLatency = latencyHistogram(EmbeddingGateway.Priority.INTERACTIVE);
+    private static final Metrics.Histogram batchLatency = latencyHistogram(EmbeddingGateway.Priority.BATCH);
+    private static final Metrics.Counter errors = Metrics.counter("purple_embedding_errors_total",
+            "Embedding calls that gave up without a vector");
+
     private AIClient() {
         /* Utility class; no public constructor. */ }
 
+    // Non-2xx from the embedding endpoint, with its Retry-After if it sent one (-1 otherwise).
+    static class StatusException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+        final long retryAfterMillis;
+
+        StatusException(int status, long retryAfterMillis, String body) {
+            super("HuggingFace embedding error " + status + ": " + body);
+            this.status = status;
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+
+    // Query-time embedding; goes to the front of the gateway's queue.
     public static double[] generateEmbedding(String text, String url, String token) {
+        return generateEmbedding(text, url, token, EmbeddingGateway.Priority.INTERACTIVE);
+    }
+
+    public static double[] generateEmbedding(String text, String url, String token, EmbeddingGateway.Priority priority) {
         if (text == null || url == null || token == null) {
             System.err.println("Missing required parameter for embedding.");
             return new double[0];
         }
+        EmbeddingEvent event = new EmbeddingEvent();
+        long start = System.nanoTime();
+        event.begin();
+        double[] embedding = new double[0];
         try {
-            return callHuggingFaceEmbedding(text, url, token);
+            embedding = EmbeddingGateway.embed(text, url, token, priority);
+            return embedding;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return embedding;
         } catch (Exception e) {
             System.err.println("Error while requesting embedding: " + e.getMessage());
-            return new double[0];
+            return embedding;
+        } finally {
+            (priority == EmbeddingGateway.Priority.BATCH ? batchLatency : interactiveLatency).observeSince(start);
+            if (embedding.length == 0) {
+                errors.inc();
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.priority = priority.name();
+                event.textLength = text.length();
+                event.dimensions = embedding.length;
+                event.succeeded = embedding.length > 0;
+                event.commit();
+            }
         }
     }
 
-    private static double[] callHuggingFaceEmbedding(String text, String url, String token) throws IOException, InterruptedException {
+    private static Metrics.Histogram latencyHistogram(EmbeddingGateway.Priority priority) {
+        return Metrics.histogram("purple_embedding_request_seconds",
+                "Embedding calls including gateway queueing and retries", "priority", priority.name().toLowerCase());
+    }
+
+    static double[] callHuggingFaceEmbedding(String text, String url, String token) throws IOException, InterruptedException {
 
         JSONObject bodyJson = new JSONObject();
         bodyJson.put("inputs", text);
@@ -44,8 +98,10 @@ public class AIClient {
         HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
 
         if (response.statusCode() != 200) {
-            throw new RuntimeException("HuggingFace embedding error "
-                    + response.statusCode() + ": " + response.body());
+            long retryAfter = response.headers().firstValue("Retry-After")
+                    .map(AIClient::parseRetryAfter)
+                    .orElse(-1L);
+            throw new StatusException(response.statusCode(), retryAfter, response.body());
         }
 
         JSONArray embArray = new JSONArray(response.body());
@@ -67,4 +123,12 @@ public class AIClient {
         }
         return embedding;
     }
+
+    private static long parseRetryAfter(String header) {
+        try {
+            return (long) (Double.parseDouble(header.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            return -1L; // HTTP-date form
+        }
+    }
 }
@@ -0,0 +1,188 @@
+package gen;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/*
+ * Fits a cluster's methods into an LLM token budget. Methods are ranked
+ * seed first, then by hop distance from the seed, then by vector similarity
+ * to the question, then by expansion order; they are taken in that order
+ * with their full code while it fits, then with the body elided to the
+ * signature, and dropped once even that doesn't fit.
+ *
+ * Tokens are estimated locally: every run of word characters costs one token
+ * per four characters, every other visible character one token, whitespace
+ * nothing. Close enough to BPE on source code to budget with.
+ */
+public class ContextPacker {
+
+    // hop distance assumed for members the snapshot couldn't place
+    private static final int UNKNOWN_HOPS = Integer.MAX_VALUE;
+
+    private ContextPacker() {
+        /* Utility class; no public constructor. */ }
+
+    public static final class Packed {
+
+        public final String methodsJson;
+        public final int tokens;
+        public final int full;
+        public final int elided;
+        public final int dropped;
+
+        Packed(String methodsJson, int tokens, int full, int elided, int dropped) {
+            this.methodsJson = methodsJson;
+            this.tokens = tokens;
+            this.full = full;
+            this.elided = elided;
+            this.dropped = dropped;
+        }
+
+        public JSONObject toJson() {
+            return new JSONObject()
+                    .put("tokens", tokens)
+                    .put("full", full)
+                    .put("elided", elided)
+                    .put("dropped", dropped);
+        }
+    }
+
+    private static final class Candidate {
+
+        final String name;
+        final String file;
+        final String code;
+        final boolean seed;
+        final int hops;
+        final double similarity;
+        final int position;
+
+        Candidate(String name, String file, String code, boolean seed, int hops, double similarity, int position) {
+            this.name = name;
+            this.file = file;
+            this.code = code;
+            this.seed = seed;
+            this.hops = hops;
+            this.similarity = similarity;
+            this.position = position;
+        }
+    }
+
+    public static int estimateTokens(String text) {
+        int tokens = 0;
+        int word = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                word++;
+                continue;
+            }
+            tokens += (word + 3) / 4;
+            word = 0;
+            if (!Character.isWhitespace(c)) {
+                tokens++;
+            }
+        }
+        return tokens + (word + 3) / 4;
+    }
+
+    /*
+     * cluster: one entry of UserQuery's "chat" array.
+     * order:   the cluster's node ids as expanded (seed first).
+     * hops:    hop distance per entry of order, -1 where unknown; null if none known.
+     * similarity: vector score for nodes that were hits themselves.
+     */
+    public static Packed pack(JSONObject cluster, long[] order, int[] hops, Map<Long, Double> similarity, int tokenBudget) {
+        Map<Long, Integer> position = new HashMap<>();
+        for (int i = 0; i < order.length; i++) {
+            position.put(order[i], i);
+        }
+
+        List<Candidate> candidates = new ArrayList<>();
+        JSONArray nodes = cluster.optJSONArray("nodes");
+        for (int i = 0; nodes != null && i < nodes.length(); i++) {
+            JSONObject node = nodes.getJSONObject(i);
+            JSONObject props = node.optJSONObject("properties");
+            if (props == null || !node.getJSONArray("labels").toList().contains("Method")) {
+                continue;
+            }
+            long id = node.getLong("id");
+            int pos = position.getOrDefault(id, Integer.MAX_VALUE);
+            int hop = hops != null && pos != Integer.MAX_VALUE && hops[pos] >= 0 ? hops[pos] : UNKNOWN_HOPS;
+            candidates.add(new Candidate(props.optString("name"), props.optString("file"),
+                    normalize(props.optString("code")), pos == 0, hop, similarity.getOrDefault(id, 0.0), pos));
+        }
+
+        candidates.sort(Comparator
+                .comparing((Candidate c) -> !c.seed)
+                .thenComparingInt(c -> c.hops)
+                .thenComparing(Comparator.comparingDouble((Candidate c) -> c.similarity).reversed())
+                .thenComparingInt(c -> c.position));
+
+        StringBuilder out = new StringBuilder("{\"methods\":[");
+        int used = estimateTokens(out.toString()) + 2;
+        int full = 0;
+        int elided = 0;
+        int dropped = 0;
+        for (Candidate c : candidates) {
+            String entry = entry(c, c.code);
+            int cost = estimateTokens(entry) + 1;
+            if (used + cost > tokenBudget) {
+                entry = entry(c, elide(c.code));
+                cost = estimateTokens(entry) + 1;
+                if (used + cost > tokenBudget) {
+                    // keep going, a later method may be small enough
+                    dropped++;
+                    continue;
+                }
+                elided++;
+            } else {
+                full++;
+            }
+            if (full + elided > 1) {
+                out.append(',');
+            }
+            out.append(entry);
+            used += cost;
+        }
+        out.append("]}");
+        return new Packed(out.toString(), used, full, elided, dropped);
+    }
+
+    private static String entry(Candidate c, String code) {
+        return "{\"name\":" + JSONObject.quote(c.name)
+                + ",\"file\":" + JSONObject.quote(c.file)
+                + ",\"code\":" + JSONObject.quote(code) + "}";
+    }
+
+    // indentation and blank lines cost tokens and tell the model nothing
+    private static String normalize(String code) {
+        StringBuilder sb = new StringBuilder(code.length());
+        for (String line : code.split("\n")) {
+            String trimmed = line.strip();
+            if (!trimmed.isEmpty()) {
+                if (sb.length() > 0) {
+                    sb.append('\n');
+                }
+                sb.append(trimmed);
+            }
+        }
+        return sb.toString();
+    }
+
+    // signature only: everything up to the opening brace of the body
+    private static String elide(String code) {
+        int brace = code.indexOf('{');
+        if (brace < 0) {
+            return code.length() <= 200 ? code : code.substring(0, 200) + " ...";
+        }
+        int lines = code.length() - code.replace("\n", "").length();
+        return code.substring(0, brace).strip() + " { /* " + lines + " lines elided */ }";
+    }
+}
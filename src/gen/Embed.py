@@ -1,5 +1,9 @@
 import argparse
 import logging
+import mmap
+import os
+import re
+import struct
 import time
 import requests
 from requests.adapters import HTTPAdapter
@@ -20,6 +24,9 @@ parser.add_argument("--hf-tpe",       required=True,  help="HuggingFace Embeddin
 parser.add_argument("--neo4j-uri",    required=True,  help="Neo4j bolt URI")
 parser.add_argument("--neo4j-user",   required=True,  help="Neo4j username")
 parser.add_argument("--neo4j-pass",   required=True,  help="Neo4j password")
+parser.add_argument("--neo4j-label",  default=None,   help="Project label on every node of the project to embed")
+parser.add_argument("--index-name",   default="methodEmbeddings", help="Vector index to (re)create")
+parser.add_argument("--blob-dir",     default="purple-data/blobs", help="Blob store holding the method code")
 args = parser.parse_args()
 
 API_URL   = args.hf_url
@@ -36,8 +43,14 @@ TOKENIZER = AutoTokenizer.from_pretrained(
     use_fast=True
 )
 
+PROJECT_LABEL = args.neo4j_label
+
 BATCH_SIZE = 30
-INDEX_NAME = "methodEmbeddings"
+INDEX_NAME = args.index_name
+# with a project label, its methods are the only nodes of the label with an embedding
+INDEX_LABEL = f"`{PROJECT_LABEL}`" if PROJECT_LABEL else "Method"
+METHOD_PATTERN = f"m:Method:`{PROJECT_LABEL}`" if PROJECT_LABEL else "m:Method"
+HAS_CODE = "(m.code_hash IS NOT NULL OR m.code IS NOT NULL)"
 
 HEADERS = {
     "Accept": "application/json",
@@ -74,13 +87,48 @@ def truncate_code(code: str) -> str:
     print(f"    ...truncated a method")
     return TOKENIZER.decode(toks[:MAX_TOKENS], clean_up_tokenization_spaces=False)
 
+# ——— Blob store (see store/BlobStore.java) ———
+# pack-N.blob: (sha256:32 bytes, length:int little-endian, content)*
+BLOB_HEADER = 36
+
+def open_blobs(blob_dir):
+    packs, index = [], {}
+    if not os.path.isdir(blob_dir):
+        return packs, index
+    names = [n for n in os.listdir(blob_dir) if re.fullmatch(r"pack-\d+\.blob", n)]
+    for name in sorted(names, key=lambda n: int(n[5:-5])):
+        with open(os.path.join(blob_dir, name), "rb") as f:
+            size = os.fstat(f.fileno()).st_size
+            if size == 0:
+                continue
+            data = mmap.mmap(f.fileno(), 0, access=mmap.ACCESS_READ)
+        offset = 0
+        while offset + BLOB_HEADER <= size:
+            (length,) = struct.unpack_from("<i", data, offset + 32)
+            if length < 0 or offset + BLOB_HEADER + length > size:
+                break
+            index.setdefault(data[offset:offset + 32].hex(), (len(packs), offset + BLOB_HEADER, length))
+            offset += BLOB_HEADER + length
+        packs.append(data)
+    return packs, index
+
+BLOB_PACKS, BLOB_INDEX = open_blobs(args.blob_dir)
+
+def read_code(row):
+    where = BLOB_INDEX.get(row["hash"]) if row["hash"] else None
+    if where is None:
+        # graphs from before the blob store carry the code inline
+        return row["code"] or ""
+    pack, start, length = where
+    return BLOB_PACKS[pack][start:start + length].decode("utf-8", errors="replace")
+
 def load_graph():
     return Graph(NEO4J_URI, auth=(NEO4J_USER, NEO4J_PASSWORD))
 
 def create_index(graph):
 
     drop = f"""
-    DROP INDEX {INDEX_NAME} IF EXISTS
+    DROP INDEX `{INDEX_NAME}` IF EXISTS
     """
     try:
         graph.run(drop)
@@ -89,8 +137,8 @@ def create_index(graph):
 
     
     create = f"""
-    CREATE VECTOR INDEX {INDEX_NAME} 
-    FOR (m:Method) ON (m.embedding)
+    CREATE VECTOR INDEX `{INDEX_NAME}` 
+    FOR (m:{INDEX_LABEL}) ON (m.embedding)
     OPTIONS {{
         indexConfig: {{
             `vector.dimensions`: {EMBEDDING_DIM},
@@ -133,16 +181,16 @@ def query_huggingface(text_list, max_attempts=2):
         return resp.json()
 
 def embed_methods(graph):
-    total_count = graph.evaluate("MATCH (m:Method) WHERE m.code IS NOT NULL RETURN count(m)")
+    total_count = graph.evaluate(f"MATCH ({METHOD_PATTERN}) WHERE {HAS_CODE} RETURN count(m)")
     print(f"Total methods to embed: {total_count}")
 
     for skip in range(0, total_count, BATCH_SIZE):
         print(f"Embedding methods {skip} to {skip + BATCH_SIZE} of {total_count}")
 
         query = f"""
-        MATCH (m:Method)
-        WHERE m.code IS NOT NULL
-        RETURN id(m) as id, m.code as code
+        MATCH ({METHOD_PATTERN})
+        WHERE {HAS_CODE}
+        RETURN id(m) as id, m.code_hash as hash, m.code as code
         SKIP {skip}
         LIMIT {BATCH_SIZE}
         """
@@ -150,8 +198,11 @@ def embed_methods(graph):
         if not methods:
             break
 
+        methods = [row for row in methods if read_code(row)]
+        if not methods:
+            continue
         ids = [row["id"] for row in methods]
-        codes = [row["code"] for row in methods]
+        codes = [read_code(row) for row in methods]
         embeddings = query_huggingface(codes)
 
         if not embeddings or len(embeddings) != len(ids):
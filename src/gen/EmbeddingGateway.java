@@ -0,0 +1,207 @@
+package gen;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.json.JSONObject;
+
+/*
+ * Every embedding request goes through here. Three things happen:
+ *
+ * Concurrency is adaptive (AIMD): each success at full occupancy raises the
+ * in-flight limit by 1/limit, so roughly one extra slot per round of
+ * successful calls; a 429,
+ * 503 or 504 halves it, at most once per second so a burst of throttles
+ * counts as one signal.
+ *
+ * Requests also pass the "embeddings" token bucket in RateLimiter
+ * (purple.embeddings.requestsPerMinute / .burst).
+ *
+ * Retryable failures (429, 502, 503, 504, I/O errors) are retried with
+ * full-jitter exponential backoff, or the upstream's Retry-After if it is
+ * longer.
+ *
+ * INTERACTIVE callers (a user waiting on a query) are let in ahead of BATCH
+ * ones, and batch traffic never takes the last slot.
+ */
+public class EmbeddingGateway {
+
+    public enum Priority {
+        INTERACTIVE, BATCH
+    }
+
+    private static final String BUCKET = "embeddings";
+
+    private static final int MAX_LIMIT = Integer.getInteger("purple.embed.maxConcurrency", 32);
+    private static final int MAX_ATTEMPTS = Integer.getInteger("purple.embed.maxAttempts", 4);
+    private static final long BASE_BACKOFF_MS = 200;
+    private static final long MAX_BACKOFF_MS = 10_000;
+    private static final long DECREASE_COOLDOWN_MS = 1000;
+
+    private static final ReentrantLock lock = new ReentrantLock();
+    private static final Condition interactiveTurn = lock.newCondition();
+    private static final Condition batchTurn = lock.newCondition();
+
+    // guarded by lock
+    private static double limit = Math.min(MAX_LIMIT, Integer.getInteger("purple.embed.initialConcurrency", 4));
+    private static int inFlight = 0;
+    private static int waitingInteractive = 0;
+    private static int waitingBatch = 0;
+    private static long lastDecrease = 0;
+
+    private static final LongAdder successes = new LongAdder();
+    private static final LongAdder retries = new LongAdder();
+    private static final LongAdder throttled = new LongAdder();
+    private static final LongAdder failures = new LongAdder();
+
+    private EmbeddingGateway() {
+        /* Utility class; no public constructor. */ }
+
+    public static double[] embed(String text, String url, String token, Priority priority)
+            throws IOException, InterruptedException {
+        for (int attempt = 1;; attempt++) {
+            long retryAfter = -1;
+            IOException failure;
+
+            enter(priority);
+            try {
+                RateLimiter.acquire(BUCKET, 600, 8);
+                double[] embedding = AIClient.callHuggingFaceEmbedding(text, url, token);
+                onSuccess();
+                return embedding;
+            } catch (AIClient.StatusException e) {
+                if (!retryable(e.status)) {
+                    failures.increment();
+                    throw e;
+                }
+                if (e.status != 502) {
+                    onOverload(e.retryAfterMillis);
+                }
+                retryAfter = e.retryAfterMillis;
+                failure = e;
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                exit();
+            }
+
+            if (attempt >= MAX_ATTEMPTS) {
+                failures.increment();
+                throw failure;
+            }
+            retries.increment();
+            Thread.sleep(Math.max(retryAfter, backoff(attempt)));
+        }
+    }
+
+    private static boolean retryable(int status) {
+        return status == 429 || status == 502 || status == 503 || status == 504;
+    }
+
+    // full jitter: uniform in [0, min(cap, base * 2^attempt))
+    private static long backoff(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, BASE_BACKOFF_MS << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(ceiling);
+    }
+
+    private static void enter(Priority priority) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            if (priority == Priority.INTERACTIVE) {
+                waitingInteractive++;
+                try {
+                    while (inFlight >= (int) limit) {
+                        interactiveTurn.await(100, TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    waitingInteractive--;
+                }
+            } else {
+                waitingBatch++;
+                try {
+                    // keep one slot free for queries whenever there's more than one
+                    while (waitingInteractive > 0 || inFlight >= batchLimit()) {
+                        batchTurn.await(100, TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    waitingBatch--;
+                }
+            }
+            inFlight++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int batchLimit() {
+        int l = (int) limit;
+        return l > 1 ? l - 1 : 1;
+    }
+
+    private static void exit() {
+        lock.lock();
+        try {
+            inFlight--;
+            if (waitingInteractive > 0) {
+                interactiveTurn.signal();
+            } else {
+                batchTurn.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void onSuccess() {
+        successes.increment();
+        lock.lock();
+        try {
+            // only grow when the current limit is actually being used
+            if (inFlight >= (int) limit) {
+                limit = Math.min(MAX_LIMIT, limit + 1.0 / limit);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void onOverload(long retryAfterMillis) {
+        throttled.increment();
+        if (retryAfterMillis > 0) {
+            RateLimiter.pause(BUCKET, retryAfterMillis);
+        }
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            if (now - lastDecrease >= DECREASE_COOLDOWN_MS) {
+                limit = Math.max(1, limit / 2);
+                lastDecrease = now;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public static JSONObject stats() {
+        JSONObject json = new JSONObject();
+        lock.lock();
+        try {
+            json.put("limit", (int) limit);
+            json.put("inFlight", inFlight);
+            json.put("waitingInteractive", waitingInteractive);
+            json.put("waitingBatch", waitingBatch);
+        } finally {
+            lock.unlock();
+        }
+        json.put("maxLimit", MAX_LIMIT);
+        json.put("successes", successes.sum());
+        json.put("retries", retries.sum());
+        json.put("throttled", throttled.sum());
+        json.put("failures", failures.sum());
+        return json;
+    }
+}
@@ -0,0 +1,54 @@
+package gen;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/*
+ * Server-side copy of the "Kevin" prompt the second screen builds for each
+ * cluster: the cluster's methods as {name, file, code} JSON, packed into the
+ * tokens-per-request budget by ContextPacker, plus the user's question.
+ */
+public class ExplainPrompt {
+
+    private static final String SYSTEM = """
+        You are kevin, a software engineer. You are a real code-wiz: few programmers are as talented as you at understanding codebases. Your users have the following problems:
+        1. They do not know how something works inside a codebase.
+        2. They do not know where something is inside a codebase.
+        Users will ask you a question. Your job is to understand which problem the user has, based on their question, and answer it using whatever context you are provided.
+        You will be provided with an intelligently selected subsection of code from a larger codebase. Use the code you are provided as context to answer the user's question.
+        When answering a user's question follow these rules:
+        1. Always use the provided code context to answer the user's question to the best of your abilities.
+        2. Always refference the name of the method when refferencing specific bits of code in your answer.
+        3. Always attempt to answer the question.""";
+
+    // what the UI falls back to (40000 characters) when no tokens-per-request value is configured
+    private static final int DEFAULT_TOKENS_PER_REQUEST = 10000;
+
+    private ExplainPrompt() {
+        /* Utility class; no public constructor. */ }
+
+    // Tokens left for the methods once the system prompt and question are paid for.
+    public static int methodBudget(String tokensPerRequest, String question) {
+        int tpr;
+        try {
+            tpr = Integer.parseInt(tokensPerRequest.trim());
+        } catch (NullPointerException | NumberFormatException e) {
+            tpr = DEFAULT_TOKENS_PER_REQUEST;
+        }
+        if (tpr <= 0) {
+            tpr = DEFAULT_TOKENS_PER_REQUEST;
+        }
+        return tpr - ContextPacker.estimateTokens(SYSTEM) - ContextPacker.estimateTokens(userContent("", question));
+    }
+
+    // methodsJson is the {"methods":[...]} block from ContextPacker
+    public static JSONArray messages(String methodsJson, String question) {
+        return new JSONArray()
+                .put(new JSONObject().put("role", "system").put("content", SYSTEM))
+                .put(new JSONObject().put("role", "user").put("content", userContent(methodsJson, question)));
+    }
+
+    private static String userContent(String methodsJson, String question) {
+        return "Selected methods:\n" + methodsJson + "\n\nUser question: \"" + question + "\"";
+    }
+}
@@ -0,0 +1,264 @@
+package gen;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import trace.LlmCallEvent;
+import trace.Metrics;
+
+public class LlmClient {
+
+    // One client for every chat call: keeps connections alive and multiplexes
+    // over HTTP/2 when the upstream offers it (falls back to 1.1 otherwise).
+    private static final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(Long.getLong("purple.llm.timeoutSeconds", 120L));
+
+    private static final Metrics.Histogram completeLatency = Metrics.histogram("purple_llm_request_seconds",
+            "Upstream chat completions, to the last byte", "streamed", "false");
+    private static final Metrics.Histogram streamLatency = Metrics.histogram("purple_llm_request_seconds",
+            "Upstream chat completions, to the last byte", "streamed", "true");
+    private static final Metrics.Histogram firstTokenLatency = Metrics.histogram("purple_llm_first_token_seconds",
+            "Time to the first content delta of a streamed completion");
+    private static final Metrics.Counter rateLimited = Metrics.counter("purple_llm_errors_total",
+            "Failed upstream chat completions", "reason", "rate_limited");
+    private static final Metrics.Counter httpErrors = Metrics.counter("purple_llm_errors_total",
+            "Failed upstream chat completions", "reason", "http");
+    private static final Metrics.Counter ioErrors = Metrics.counter("purple_llm_errors_total",
+            "Failed upstream chat completions", "reason", "io");
+
+    private LlmClient() {
+        /* Utility class; no public constructor. */ }
+
+    public interface DeltaListener {
+
+        void onDelta(String text) throws IOException;
+    }
+
+    // HTTP 429 from the provider, with how long it asked us to back off.
+    public static class RateLimitedException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long retryAfterMillis;
+
+        RateLimitedException(String message, long retryAfterMillis) {
+            super(message);
+            this.retryAfterMillis = retryAfterMillis;
+        }
+
+        public long getRetryAfterMillis() {
+            return retryAfterMillis;
+        }
+    }
+
+    /*
+     * The provider stopped before finishing the reply: out of tokens, filtered,
+     * or the stream closed without a finish_reason or [DONE]. Carries what did
+     * arrive, which is fine to show but not to cache as the answer.
+     */
+    public static class IncompleteReplyException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String reply;
+        private final String finishReason;
+
+        IncompleteReplyException(String reply, String finishReason) {
+            super(finishReason == null
+                    ? "LLM stream ended without finishing, after " + reply.length() + " chars"
+                    : "LLM reply stopped early: " + finishReason);
+            this.reply = reply;
+            this.finishReason = finishReason;
+        }
+
+        public String getReply() {
+            return reply;
+        }
+
+        // null if the stream was cut off
+        public String getFinishReason() {
+            return finishReason;
+        }
+    }
+
+    // OpenAI-compatible chat completion, whole reply at once.
+    public static String complete(String url, String model, String apiKey, JSONArray messages)
+            throws IOException, InterruptedException {
+
+        String payload = new JSONObject()
+                .put("model", model)
+                .put("messages", messages)
+                .toString();
+
+        LlmCallEvent event = new LlmCallEvent();
+        long start = System.nanoTime();
+        event.begin();
+        int status = 0;
+        String reply = "";
+        try {
+            HttpResponse<String> response = httpClient.send(request(url, apiKey, payload), HttpResponse.BodyHandlers.ofString());
+            status = response.statusCode();
+            if (status == 429) {
+                throw new RateLimitedException("LLM returned HTTP 429: " + response.body(), retryAfterMillis(response));
+            }
+            if (status >= 300) {
+                throw new IOException("LLM returned HTTP " + status + ": " + response.body());
+            }
+
+            JSONObject respJson = new JSONObject(response.body());
+            // choices[0].message.content
+            JSONObject choice = respJson.getJSONArray("choices").getJSONObject(0);
+            reply = choice.getJSONObject("message").getString("content");
+            String finishReason = finishReason(choice);
+            if (finishReason != null && !finishReason.equals("stop")) {
+                throw new IncompleteReplyException(reply, finishReason);
+            }
+            return reply;
+        } finally {
+            finish(event, start, model, false, messages, payload, status, reply.length());
+        }
+    }
+
+    /*
+     * Same call with "stream": true. Each content delta is handed to the
+     * listener as soon as its server-sent event arrives; the assembled reply
+     * is returned at the end. It only returns for a finished reply
+     * (finish_reason "stop", or [DONE] from a server that sends no reason);
+     * anything else throws IncompleteReplyException with the partial text.
+     */
+    public static String stream(String url, String model, String apiKey, JSONArray messages, DeltaListener listener)
+            throws IOException, InterruptedException {
+
+        String payload = new JSONObject()
+                .put("model", model)
+                .put("messages", messages)
+                .put("stream", true)
+                .toString();
+
+        LlmCallEvent event = new LlmCallEvent();
+        event.begin();
+        long start = System.nanoTime();
+        int status = 0;
+        StringBuilder reply = new StringBuilder();
+        boolean done = false;
+        String finishReason = null;
+
+        try {
+            HttpResponse<Stream<String>> response = httpClient.send(request(url, apiKey, payload), HttpResponse.BodyHandlers.ofLines());
+            status = response.statusCode();
+
+            try (Stream<String> lines = response.body()) {
+                if (status >= 300) {
+                    StringBuilder err = new StringBuilder();
+                    lines.forEach(err::append);
+                    throw new IOException("LLM returned HTTP " + status + ": " + err);
+                }
+
+                Iterator<String> it = lines.iterator();
+                while (it.hasNext()) {
+                    String line = it.next();
+                    if (!line.startsWith("data:")) {
+                        continue; // blank separators, comments, event names
+                    }
+                    String data = line.substring(5).trim();
+                    if (data.equals("[DONE]")) {
+                        done = true;
+                        break;
+                    }
+
+                    JSONArray choices = new JSONObject(data).optJSONArray("choices");
+                    if (choices == null || choices.isEmpty()) {
+                        continue;
+                    }
+                    JSONObject choice = choices.getJSONObject(0);
+                    if (finishReason(choice) != null) {
+                        finishReason = finishReason(choice);
+                    }
+                    JSONObject delta = choice.optJSONObject("delta");
+                    String text = delta == null ? "" : delta.optString("content", "");
+                    if (!text.isEmpty()) {
+                        if (reply.length() == 0) {
+                            event.firstTokenNanos = System.nanoTime() - start;
+                            firstTokenLatency.observeNanos(event.firstTokenNanos);
+                        }
+                        reply.append(text);
+                        listener.onDelta(text);
+                    }
+                }
+            }
+        } finally {
+            finish(event, start, model, true, messages, payload, status, reply.length());
+        }
+        boolean complete = finishReason == null ? done : finishReason.equals("stop");
+        if (!complete) {
+            throw new IncompleteReplyException(reply.toString(), finishReason);
+        }
+        return reply.toString();
+    }
+
+    // null while the choice is still going (streamed chunks send an explicit null)
+    private static String finishReason(JSONObject choice) {
+        Object reason = choice.opt("finish_reason");
+        return reason instanceof String ? (String) reason : null;
+    }
+
+    // Metrics plus JFR bookkeeping; event fields are only filled in when a recording wants them.
+    // status 0 means no response arrived at all.
+    private static void finish(LlmCallEvent event, long start, String model, boolean streamed, JSONArray messages,
+            String payload, int status, int replyChars) {
+        (streamed ? streamLatency : completeLatency).observeSince(start);
+        if (status == 429) {
+            rateLimited.inc();
+        } else if (status >= 300) {
+            httpErrors.inc();
+        } else if (status == 0) {
+            ioErrors.inc();
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.model = model;
+            event.streamed = streamed;
+            event.messages = messages.length();
+            event.requestBytes = payload.length();
+            event.status = status;
+            event.replyChars = replyChars;
+            event.commit();
+        }
+    }
+
+    // Retry-After is whole seconds per RFC 9110; default to one second when it's missing or a date
+    private static long retryAfterMillis(HttpResponse<?> response) {
+        String header = response.headers().firstValue("Retry-After").orElse(null);
+        if (header != null) {
+            try {
+                return (long) (Double.parseDouble(header.trim()) * 1000);
+            } catch (NumberFormatException e) {
+                // HTTP-date form, not worth parsing
+            }
+        }
+        return 1000;
+    }
+
+    private static HttpRequest request(String url, String apiKey, String payload) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + apiKey)
+                .POST(HttpRequest.BodyPublishers.ofString(payload))
+                .build();
+    }
+}
@@ -0,0 +1,112 @@
+package gen;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.json.JSONObject;
+
+import store.GraphStore;
+
+/*
+ * Embed.py's job done in-process: page through the methods with code and
+ * write a vector per method back through the GraphStore. Needed for
+ * MemoryGraphStore, which Embed.py can't reach; any store can use it with
+ * -Dpurple.embed.inProcess=true.
+ *
+ * Calls go through EmbeddingGateway as BATCH, so they share its adaptive
+ * concurrency and rate limit and a user's query still goes first. Code is
+ * cut to roughly tokensPerEmbedding tokens (4 chars a token) up front rather
+ * than on a 400, since there's no tokenizer here. Progress goes to
+ * loading.log, like Embed.py's.
+ */
+public class MethodEmbedder {
+
+    public static final boolean IN_PROCESS = Boolean.getBoolean("purple.embed.inProcess");
+
+    private static final int PAGE_SIZE = 64;
+    private static final int PARALLELISM = Integer.getInteger("purple.embed.batchParallelism", 8);
+    private static final int CHARS_PER_TOKEN = 4;
+
+    private MethodEmbedder() {
+        /* Utility class; no public constructor. */ }
+
+    // Returns how many methods got a vector.
+    public static int embedAll(GraphStore store, String url, String token, int dimensions, int tokensPerEmbedding)
+            throws IOException, InterruptedException {
+        int maxChars = tokensPerEmbedding * CHARS_PER_TOKEN;
+        AtomicInteger embedded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(PARALLELISM, r -> {
+            Thread t = new Thread(r, "method-embedder");
+            t.setDaemon(true);
+            return t;
+        });
+        try (PrintStream log = new PrintStream(new FileOutputStream("loading.log", true), true)) {
+            log.println("Embedding your code.");
+            store.prepareVectors(dimensions);
+
+            long after = -1;
+            int seen = 0;
+            while (true) {
+                List<JSONObject> page = store.codeToEmbed(after, PAGE_SIZE);
+                if (page.isEmpty()) {
+                    break;
+                }
+                log.println("Embedding methods " + seen + " to " + (seen + page.size()));
+
+                // one page in flight at a time keeps memory flat; the gateway decides the real concurrency
+                List<Future<?>> pending = new ArrayList<>(page.size());
+                for (JSONObject method : page) {
+                    long id = method.getLong("id");
+                    String code = method.getString("code");
+                    if (code.isEmpty()) {
+                        failed.incrementAndGet();
+                        continue;
+                    }
+                    String text = code.length() > maxChars ? code.substring(0, maxChars) : code;
+                    pending.add(pool.submit(() -> {
+                        double[] vector = AIClient.generateEmbedding(text, url, token, EmbeddingGateway.Priority.BATCH);
+                        if (vector.length == 0) {
+                            failed.incrementAndGet();
+                            return;
+                        }
+                        try {
+                            store.setVector(id, vector);
+                            embedded.incrementAndGet();
+                        } catch (IllegalArgumentException e) {
+                            failed.incrementAndGet();
+                            System.err.println("[MethodEmbedder] " + id + ": " + e.getMessage());
+                        }
+                    }));
+                }
+                for (Future<?> future : pending) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        failed.incrementAndGet();
+                        System.err.println("[MethodEmbedder] " + e.getCause());
+                    }
+                }
+                seen += page.size();
+                after = page.get(page.size() - 1).getLong("id");
+            }
+
+            if (failed.get() > 0) {
+                log.println("Warning: " + failed.get() + " methods could not be embedded.");
+            }
+            log.println("\nReady to search.");
+        } finally {
+            pool.shutdownNow();
+        }
+        return embedded.get();
+    }
+}
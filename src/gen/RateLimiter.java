@@ -0,0 +1,110 @@
+package gen;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.json.JSONObject;
+
+/*
+ * Named token buckets for upstream APIs ("llm.<provider>", "embeddings").
+ * Each bucket gets purple.<name>.requestsPerMinute with a burst of
+ * purple.<name>.burst, defaulting to 60/4 unless the caller passes its own
+ * defaults; a 429 from the upstream pauses its bucket for the Retry-After it
+ * sent, so every caller backs off together instead of each one finding out
+ * separately.
+ */
+public class RateLimiter {
+
+    private static final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+
+    private RateLimiter() {
+        /* Utility class; no public constructor. */ }
+
+    private static final class Bucket {
+
+        final double perMilli;
+        final double burst;
+        double tokens;
+        long refilledAt = System.currentTimeMillis();
+        long pausedUntil = 0;
+        long waits = 0;
+        long pauses = 0;
+
+        Bucket(String name, int defaultPerMinute, int defaultBurst) {
+            this.perMilli = Integer.getInteger("purple." + name + ".requestsPerMinute", defaultPerMinute) / 60_000.0;
+            this.burst = Integer.getInteger("purple." + name + ".burst", defaultBurst);
+            this.tokens = burst;
+        }
+
+        // ms until a token is available, taking it if that's now
+        synchronized long tryTake() {
+            long now = System.currentTimeMillis();
+            if (now < pausedUntil) {
+                return pausedUntil - now;
+            }
+            tokens = Math.min(burst, tokens + (now - refilledAt) * perMilli);
+            refilledAt = now;
+            if (tokens >= 1) {
+                tokens -= 1;
+                return 0;
+            }
+            return (long) Math.ceil((1 - tokens) / perMilli);
+        }
+
+        synchronized void pause(long millis) {
+            pausedUntil = Math.max(pausedUntil, System.currentTimeMillis() + millis);
+            tokens = 0;
+            pauses++;
+        }
+    }
+
+    private static Bucket bucket(String name, int defaultPerMinute, int defaultBurst) {
+        return buckets.computeIfAbsent(name, n -> new Bucket(n, defaultPerMinute, defaultBurst));
+    }
+
+    // Bucket name for an LLM provider as configured in the UI ("llm.openai").
+    public static String llm(String provider) {
+        return "llm." + (provider == null || provider.isBlank() ? "default" : provider.toLowerCase(Locale.ROOT));
+    }
+
+    // Blocks until the named bucket lets one more request through.
+    public static void acquire(String name) throws InterruptedException {
+        acquire(name, 60, 4);
+    }
+
+    // defaults apply only when this call creates the bucket
+    public static void acquire(String name, int defaultPerMinute, int defaultBurst) throws InterruptedException {
+        Bucket bucket = bucket(name, defaultPerMinute, defaultBurst);
+        long wait;
+        while ((wait = bucket.tryTake()) > 0) {
+            synchronized (bucket) {
+                bucket.waits++;
+            }
+            Thread.sleep(wait);
+        }
+    }
+
+    public static void pause(String name, long millis) {
+        Bucket bucket = buckets.get(name);
+        if (bucket != null) {
+            bucket.pause(millis);
+        }
+    }
+
+    public static JSONObject stats() {
+        JSONObject json = new JSONObject();
+        buckets.forEach((name, bucket) -> {
+            synchronized (bucket) {
+                json.put(name, new JSONObject()
+                        .put("requestsPerMinute", bucket.perMilli * 60_000)
+                        .put("burst", bucket.burst)
+                        .put("tokens", bucket.tokens)
+                        .put("waits", bucket.waits)
+                        .put("pauses", bucket.pauses)
+                        .put("pausedForMs", Math.max(0, bucket.pausedUntil - System.currentTimeMillis())));
+            }
+        });
+        return json;
+    }
+}
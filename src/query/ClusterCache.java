@@ -0,0 +1,119 @@
+package query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+public class ClusterCache {
+
+    // Budget is counted in ids held (nodes + rels), not entries, so a few huge
+    // neighbourhoods can't crowd out everything else.
+    private static final long MAX_WEIGHT = Long.getLong("purple.clusterCache.maxWeight", 250_000L);
+
+    // access-ordered map -> iteration order is least recently used first
+    private static final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private static long weight = 0;
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder stale = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    static {
+        GraphGeneration.addListener(ClusterCache::clear);
+    }
+
+    private ClusterCache() {
+        /* Utility class; no public constructor. */ }
+
+    public static final class Entry {
+
+        final long generation;
+        final long[] nodeIds;
+        final long[] relIds;
+
+        Entry(long generation, long[] nodeIds, long[] relIds) {
+            this.generation = generation;
+            this.nodeIds = nodeIds;
+            this.relIds = relIds;
+        }
+
+        long weight() {
+            return 1L + nodeIds.length + relIds.length;
+        }
+    }
+
+    public static Entry get(long seedId) {
+        long generation = GraphGeneration.current();
+        synchronized (entries) {
+            Entry entry = entries.get(seedId);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (entry.generation != generation) {
+                entries.remove(seedId);
+                weight -= entry.weight();
+                stale.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry;
+        }
+    }
+
+    // generation must be the one read *before* the cluster was computed, so a
+    // cluster built while an ingest was running never lands in the cache.
+    public static void put(long seedId, long generation, long[] nodeIds, long[] relIds) {
+        if (generation != GraphGeneration.current()) {
+            return;
+        }
+        Entry entry = new Entry(generation, nodeIds, relIds);
+        if (entry.weight() > MAX_WEIGHT) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(seedId, entry);
+            if (previous != null) {
+                weight -= previous.weight();
+            }
+            weight += entry.weight();
+
+            Iterator<Map.Entry<Long, Entry>> it = entries.entrySet().iterator();
+            while (weight > MAX_WEIGHT && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                weight -= eldest.weight();
+                evictions.increment();
+            }
+        }
+    }
+
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    public static JSONObject stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        JSONObject json = new JSONObject();
+        synchronized (entries) {
+            json.put("entries", entries.size());
+            json.put("weight", weight);
+        }
+        json.put("maxWeight", MAX_WEIGHT);
+        json.put("hits", h);
+        json.put("misses", m);
+        json.put("stale", stale.sum());
+        json.put("evictions", evictions.sum());
+        json.put("hitRatio", (h + m) == 0 ? 0.0 : (double) h / (h + m));
+        return json;
+    }
+}
@@ -0,0 +1,44 @@
+package query;
+
+import store.GraphStore.Traversal;
+import trace.Metrics;
+
+// The rules a seed is grown into a cluster with. The seed itself is known
+// from the vector hit, so it never needs a round trip.
+enum ExpansionTier {
+
+    // methods along calls_method edges up to 3 hops away undirected
+    CALLS("calls", Integer.MAX_VALUE, 20, new Traversal("CALLS_METHOD", 3, null)),
+
+    // nodes 2 hop walks in any direction (LIM 30)
+    NEIGHBOURS("neighbours", 30, 20, new Traversal(null, 2, null)),
+
+    // closest methods within 3 hops in any direction (LIM 10)
+    NEAREST_METHODS("methods", 10, 60, new Traversal(null, 3, "Method"));
+
+    final String label;
+    final int defaultLimit;
+    final Traversal traversal;
+    final Metrics.Histogram latency;
+
+    // moving average of how long this tier has been taking per seed
+    private volatile long estimateNanos;
+
+    ExpansionTier(String label, int defaultLimit, long initialEstimateMillis, Traversal traversal) {
+        this.label = label;
+        this.defaultLimit = defaultLimit;
+        this.traversal = traversal;
+        this.estimateNanos = initialEstimateMillis * 1_000_000L;
+        this.latency = Metrics.histogram("purple_neo4j_expansion_seconds", "Graph store round trip per cluster expansion tier", "tier", label);
+    }
+
+    long estimateNanos() {
+        return estimateNanos;
+    }
+
+    void observe(long nanos) {
+        latency.observeNanos(nanos);
+        // racy on purpose, a lost update just means a slightly older average
+        estimateNanos = (estimateNanos * 4 + nanos) / 5;
+    }
+}
@@ -0,0 +1,62 @@
+package query;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class GraphGeneration {
+
+    // Bumped whenever what queries see changes (ingest, reset, re-embed, new connection, project switch).
+    // Anything cached from the graph remembers the generation it was built against.
+    private static final AtomicLong generation = new AtomicLong();
+    private static final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    // only for bumps that rewrote graph contents, not for ones that just look at another graph
+    private static final List<Runnable> contentListeners = new CopyOnWriteArrayList<>();
+
+    // distinguishes generation N of this run from generation N of a previous one
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    private GraphGeneration() {
+        /* Utility class; no public constructor. */ }
+
+    public static long current() {
+        return generation.get();
+    }
+
+    // Opaque version string for HTTP validators; changes on every bump and every restart.
+    public static String tag() {
+        return EPOCH + "." + generation.get();
+    }
+
+    public static long bump(String reason) {
+        long next = generation.incrementAndGet();
+        System.out.println("[GraphGeneration] now " + next + " (" + reason + ")");
+        notify(listeners);
+        return next;
+    }
+
+    // a bump for ingest, reset, restore, re-embed: the contents themselves are new
+    public static long contentsChanged(String reason) {
+        long next = bump(reason);
+        notify(contentListeners);
+        return next;
+    }
+
+    public static void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    public static void addContentListener(Runnable listener) {
+        contentListeners.add(listener);
+    }
+
+    private static void notify(List<Runnable> toRun) {
+        for (Runnable listener : toRun) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                System.err.println("[GraphGeneration] listener failed: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.neo4j.driver.Session;
+import org.neo4j.driver.Values;
+
+import scrape.DbClient;
+import store.Neo4jGraphStore;
+
+/*
+ * Read-only copy of the graph topology held in primitive arrays, so cluster
+ * expansion can run in-process instead of as variable-length Cypher over Bolt.
+ *
+ * Nodes are addressed by a dense index (position in the sorted nodeIds array).
+ * Adjacency is compressed sparse row: the neighbours of node i live in
+ * targets[offsets[i] .. offsets[i + 1]), with the edge type in the parallel
+ * types array. Every relationship is stored in both rows because all the
+ * expansion rules walk edges undirected.
+ *
+ * Only the active project's nodes are held (its P_<epoch>_<project> label),
+ * so other projects' ingests, adoption and background deletes don't disturb
+ * the counts an incremental refresh is checked against. A different active
+ * label means a full load.
+ *
+ * Enable with -Dpurple.graphSnapshot=true.
+ */
+public class GraphSnapshot {
+
+    public static final boolean ENABLED = Boolean.getBoolean("purple.graphSnapshot");
+
+    private static volatile GraphSnapshot current;
+
+    // the project label the nodes were matched on
+    private final String projectLabel;
+
+    // dictionaries
+    private final String[] labelNames;
+    private final String[] typeNames;
+
+    // nodes (sorted by neo4j id, so new ids from an ingest append in order)
+    private final long[] nodeIds;
+    private final int[] nodeLabels; // bitmask over labelNames
+    private final int nodeCount;
+
+    // directed edge list, kept so an incremental refresh can append and rebuild
+    private final int[] edgeSrc;
+    private final int[] edgeDst;
+    private final byte[] edgeType;
+    private final int edgeCount;
+    private final long maxRelId;
+
+    // undirected CSR
+    private final int[] offsets;
+    private final int[] targets;
+    private final byte[] types;
+
+    private GraphSnapshot(String projectLabel, String[] labelNames, String[] typeNames,
+            long[] nodeIds, int[] nodeLabels, int nodeCount,
+            int[] edgeSrc, int[] edgeDst, byte[] edgeType, int edgeCount, long maxRelId) {
+        this.projectLabel = projectLabel;
+        this.labelNames = labelNames;
+        this.typeNames = typeNames;
+        this.nodeIds = nodeIds;
+        this.nodeLabels = nodeLabels;
+        this.nodeCount = nodeCount;
+        this.edgeSrc = edgeSrc;
+        this.edgeDst = edgeDst;
+        this.edgeType = edgeType;
+        this.edgeCount = edgeCount;
+        this.maxRelId = maxRelId;
+
+        // counting sort of both edge directions into rows
+        offsets = new int[nodeCount + 1];
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[edgeSrc[e] + 1]++;
+            offsets[edgeDst[e] + 1]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        targets = new int[edgeCount * 2];
+        types = new byte[edgeCount * 2];
+        int[] fill = Arrays.copyOf(offsets, nodeCount);
+        for (int e = 0; e < edgeCount; e++) {
+            int a = edgeSrc[e];
+            int b = edgeDst[e];
+            targets[fill[a]] = b;
+            types[fill[a]++] = edgeType[e];
+            targets[fill[b]] = a;
+            types[fill[b]++] = edgeType[e];
+        }
+    }
+
+    // ---------------------------------------------------------------
+    //                          lifecycle
+    // ---------------------------------------------------------------
+    public static GraphSnapshot current() {
+        return current;
+    }
+
+    public static synchronized void clear() {
+        current = null;
+    }
+
+    // Full load from Neo4j. Used on connect and after a reset.
+    public static synchronized void reload() {
+        if (!ENABLED) {
+            return;
+        }
+        current = null;
+        current = load(null);
+    }
+
+    // Pulls only nodes/rels newer than what we hold. Falls back to a full
+    // load if there is no snapshot yet or the counts no longer line up.
+    public static synchronized void refresh() {
+        if (!ENABLED) {
+            return;
+        }
+        GraphSnapshot base = current;
+        current = load(base);
+    }
+
+    private static GraphSnapshot load(GraphSnapshot base) {
+        if (!DbClient.isGraphAvailable()) {
+            System.err.println("[GraphSnapshot] Neo4j not available. Snapshot disabled until next load.");
+            return null;
+        }
+        if (!(DbClient.store() instanceof Neo4jGraphStore store)) {
+            return null; // MemoryGraphStore already expands in-process
+        }
+        if (base != null && !base.projectLabel.equals(store.label())) {
+            base = null; // another project, or the project was reset
+        }
+        long start = System.currentTimeMillis();
+        try (Session session = DbClient.readSession()) {
+            GraphSnapshot snap = (base == null) ? loadFull(session, store.label()) : loadDelta(session, base);
+            if (snap != null && base != null && !snap.matchesCounts(session)) {
+                System.out.println("[GraphSnapshot] delta did not line up with the graph, doing a full load");
+                snap = loadFull(session, store.label());
+            }
+            if (snap != null) {
+                System.out.println("[GraphSnapshot] " + snap.nodeCount + " nodes, " + snap.edgeCount
+                        + " rels loaded in " + (System.currentTimeMillis() - start) + " ms");
+            }
+            return snap;
+        } catch (Exception e) {
+            System.err.println("[GraphSnapshot] load failed: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static GraphSnapshot loadFull(Session session, String projectLabel) {
+        return loadDelta(session, new GraphSnapshot(projectLabel, new String[0], new String[0],
+                new long[0], new int[0], 0, new int[0], new int[0], new byte[0], 0, -1));
+    }
+
+    private static GraphSnapshot loadDelta(Session session, GraphSnapshot base) {
+        List<String> labels = new ArrayList<>(Arrays.asList(base.labelNames));
+        List<String> relTypes = new ArrayList<>(Arrays.asList(base.typeNames));
+
+        long[] ids = base.nodeIds;
+        int[] nodeLabels = base.nodeLabels;
+        int n = base.nodeCount;
+        long maxNodeId = n == 0 ? -1 : ids[n - 1];
+
+        var nodes = session.run(
+                "MATCH (n:`" + base.projectLabel + "`) WHERE id(n) > $after RETURN id(n) AS id, labels(n) AS labels ORDER BY id",
+                Values.parameters("after", maxNodeId));
+        while (nodes.hasNext()) {
+            var rec = nodes.next();
+            if (n == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(16, n * 2));
+                nodeLabels = Arrays.copyOf(nodeLabels, ids.length);
+            }
+            int mask = 0;
+            for (var label : rec.get("labels").values()) {
+                if (Neo4jGraphStore.isProjectLabel(label.asString())) {
+                    continue; // the same on every node here
+                }
+                int bit = indexOf(labels, label.asString());
+                if (bit >= 32) {
+                    throw new IllegalStateException("more than 32 distinct labels");
+                }
+                mask |= 1 << bit;
+            }
+            ids[n] = rec.get("id").asLong();
+            nodeLabels[n] = mask;
+            n++;
+        }
+
+        int[] src = base.edgeSrc;
+        int[] dst = base.edgeDst;
+        byte[] relType = base.edgeType;
+        int e = base.edgeCount;
+        long maxRelId = base.maxRelId;
+
+        var rels = session.run(
+                "MATCH (a:`" + base.projectLabel + "`)-[r]->(b) WHERE id(r) > $after "
+                + "RETURN id(r) AS id, type(r) AS type, id(a) AS a, id(b) AS b",
+                Values.parameters("after", base.maxRelId));
+        while (rels.hasNext()) {
+            var rec = rels.next();
+            int a = Arrays.binarySearch(ids, 0, n, rec.get("a").asLong());
+            int b = Arrays.binarySearch(ids, 0, n, rec.get("b").asLong());
+            if (a < 0 || b < 0) {
+                continue; // endpoint created after the node pass
+            }
+            if (e == src.length) {
+                src = Arrays.copyOf(src, Math.max(16, e * 2));
+                dst = Arrays.copyOf(dst, src.length);
+                relType = Arrays.copyOf(relType, src.length);
+            }
+            int t = indexOf(relTypes, rec.get("type").asString());
+            if (t > Byte.MAX_VALUE) {
+                throw new IllegalStateException("more than 128 distinct relationship types");
+            }
+            src[e] = a;
+            dst[e] = b;
+            relType[e] = (byte) t;
+            e++;
+            maxRelId = Math.max(maxRelId, rec.get("id").asLong());
+        }
+
+        return new GraphSnapshot(base.projectLabel, labels.toArray(new String[0]), relTypes.toArray(new String[0]),
+                ids, nodeLabels, n, src, dst, relType, e, maxRelId);
+    }
+
+    private boolean matchesCounts(Session session) {
+        // both counts are answered from the count store, no scan; a project's edges never leave it
+        long nodes = session.run("MATCH (n:`" + projectLabel + "`) RETURN count(n) AS c").single().get("c").asLong();
+        long rels = session.run("MATCH (:`" + projectLabel + "`)-[r]->() RETURN count(r) AS c").single().get("c").asLong();
+        return nodes == nodeCount && rels == edgeCount;
+    }
+
+    private static int indexOf(List<String> dict, String name) {
+        int i = dict.indexOf(name);
+        if (i < 0) {
+            dict.add(name);
+            i = dict.size() - 1;
+        }
+        return i;
+    }
+
+    // ---------------------------------------------------------------
+    //                          traversal
+    // ---------------------------------------------------------------
+    public boolean contains(long nodeId) {
+        return Arrays.binarySearch(nodeIds, 0, nodeCount, nodeId) >= 0;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    public int labelBit(String label) {
+        for (int i = 0; i < labelNames.length; i++) {
+            if (labelNames[i].equals(label)) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    public int relType(String type) {
+        for (int i = 0; i < typeNames.length; i++) {
+            if (typeNames[i].equals(type)) {
+                return i;
+            }
+        }
+        return -2; // matches nothing; -1 means "any type"
+    }
+
+    // Same rules as ExpansionTier, returning neo4j node ids (seed first).
+    public long[] expandCluster(long seedId) {
+        int seed = Arrays.binarySearch(nodeIds, 0, nodeCount, seedId);
+        if (seed < 0) {
+            return new long[]{seedId};
+        }
+        Scratch s = Scratch.get(nodeCount);
+        s.beginCluster();
+
+        // start node
+        s.addMember(seed, seedId);
+
+        // methods along calls_method edges up to 3 hops away undirected
+        int found = bfs(seed, relType("CALLS_METHOD"), 3, 0, Integer.MAX_VALUE, s);
+        addMembers(s, found);
+
+        // nodes 2 hop walks in any direction (LIM 30)
+        found = bfs(seed, -1, 2, 0, 30, s);
+        addMembers(s, found);
+
+        // closest 10 methods within 3 hops
+        int method = labelBit("Method");
+        if (method != 0) {
+            found = bfs(seed, -1, 3, method, 10, s);
+            addMembers(s, found);
+        }
+
+        return Arrays.copyOf(s.out, s.outCount);
+    }
+
+    /*
+     * Undirected hop count from seed to each of ids over any edge type, -1 for
+     * anything further than maxHops (or not in the snapshot).
+     */
+    public int[] hopDistances(long seedId, long[] ids, int maxHops) {
+        int[] hops = new int[ids.length];
+        Arrays.fill(hops, -1);
+        int seed = Arrays.binarySearch(nodeIds, 0, nodeCount, seedId);
+        if (seed < 0) {
+            return hops;
+        }
+        Scratch s = Scratch.get(nodeCount);
+        bfs(seed, -1, maxHops, 0, Integer.MAX_VALUE, s);
+        int visit = s.stamp;
+        for (int i = 0; i < ids.length; i++) {
+            int node = Arrays.binarySearch(nodeIds, 0, nodeCount, ids[i]);
+            if (node >= 0 && s.seen[node] == visit) {
+                hops[i] = s.depth[node];
+            }
+        }
+        return hops;
+    }
+
+    private void addMembers(Scratch s, int found) {
+        for (int i = 0; i < found; i++) {
+            int node = s.queue[i];
+            s.addMember(node, nodeIds[node]);
+        }
+    }
+
+    /*
+     * Breadth-first walk from seed (excluded from the result) up to maxDepth hops.
+     * relType -1 follows every edge type; labelMask 0 accepts every node.
+     * Accepted node indexes are compacted to the front of s.queue in BFS
+     * order (closest first) and their count is returned.
+     */
+    private int bfs(int seed, int relType, int maxDepth, int labelMask, int limit, Scratch s) {
+        int visit = s.nextStamp();
+        int[] queue = s.queue;
+        int[] depth = s.depth;
+        int[] seen = s.seen;
+
+        seen[seed] = visit;
+        depth[seed] = 0;
+        queue[0] = seed;
+        int head = 0;
+        int tail = 1;
+        int accepted = 0;
+
+        while (head < tail && accepted < limit) {
+            int node = queue[head++];
+            int d = depth[node];
+            if (node != seed && (labelMask == 0 || (nodeLabels[node] & labelMask) != 0)) {
+                // head has already passed this slot, so it can be reused for output
+                queue[accepted++] = node;
+                if (accepted == limit) {
+                    break;
+                }
+            }
+            if (d == maxDepth) {
+                continue;
+            }
+            for (int p = offsets[node], end = offsets[node + 1]; p < end; p++) {
+                if (relType != -1 && types[p] != relType) {
+                    continue;
+                }
+                int next = targets[p];
+                if (seen[next] != visit) {
+                    seen[next] = visit;
+                    depth[next] = d + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+        return accepted;
+    }
+
+    // Per-thread work arrays. Stamps avoid clearing them between walks.
+    private static final class Scratch {
+
+        private static final ThreadLocal<Scratch> LOCAL = new ThreadLocal<>();
+
+        int[] queue;
+        int[] depth;
+        int[] seen;
+        int[] member;
+        int stamp;
+        int cluster;
+
+        long[] out = new long[64];
+        int outCount;
+
+        static Scratch get(int nodeCount) {
+            Scratch s = LOCAL.get();
+            if (s == null || s.queue.length < nodeCount) {
+                s = new Scratch();
+                s.queue = new int[nodeCount];
+                s.depth = new int[nodeCount];
+                s.seen = new int[nodeCount];
+                s.member = new int[nodeCount];
+                LOCAL.set(s);
+            }
+            return s;
+        }
+
+        void beginCluster() {
+            cluster = nextStamp();
+            outCount = 0;
+        }
+
+        void addMember(int node, long nodeId) {
+            if (member[node] == cluster) {
+                return;
+            }
+            member[node] = cluster;
+            if (outCount == out.length) {
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            out[outCount++] = nodeId;
+        }
+
+        int nextStamp() {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                Arrays.fill(member, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+}
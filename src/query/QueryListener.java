@@ -0,0 +1,18 @@
+package query;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.json.JSONObject;
+
+// Receives a query's results piece by piece, as UserQuery.streamEmbeddingQuery produces them.
+public interface QueryListener {
+
+    // vector matches, [{ id, similarity }, …] best first
+    void onHits(List<JSONObject> hits) throws IOException;
+
+    // one expanded cluster (same shapes as the "graph" and "chat" entries of runEmbeddingQuery)
+    void onCluster(int index, JSONObject graph, JSONObject chat) throws IOException;
+
+    void onDone(JSONObject plan) throws IOException;
+}
@@ -0,0 +1,169 @@
+package query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/*
+ * Per-request knobs (topK, cluster size cap, latency deadline) plus the
+ * bookkeeping of which expansion tiers actually ran. Expansion tiers are
+ * tried cheapest-first; once the deadline gets close the expensive ones
+ * are truncated and then skipped so the request still answers on time.
+ */
+public class QueryPlan {
+
+    public static final int DEFAULT_TOP_K = 10;
+    public static final int MAX_TOP_K = 100;
+
+    private final int topK;
+    private final int maxClusterSize;
+    private final long deadlineMillis;
+    private final long startNanos;
+    private final long deadlineNanos;
+
+    private final Map<ExpansionTier, int[]> outcomes = new EnumMap<>(ExpansionTier.class);
+    private boolean degraded = false;
+    private boolean lean = false;
+
+    // index into the int[] kept per tier in outcomes
+    private static final int RAN = 0;
+    private static final int TRUNCATED = 1;
+    private static final int SKIPPED = 2;
+    private static final int CAPPED = 3;
+    private static final int CACHED = 4;
+
+    // what an otherwise unbounded tier is cut to when time is short
+    private static final int TRUNCATED_UNBOUNDED_LIMIT = 20;
+
+    public QueryPlan(int topK, int maxClusterSize, long deadlineMillis) {
+        this.topK = Math.max(1, Math.min(topK, MAX_TOP_K));
+        this.maxClusterSize = maxClusterSize <= 0 ? Integer.MAX_VALUE : maxClusterSize;
+        this.deadlineMillis = Math.max(0, deadlineMillis);
+        this.startNanos = System.nanoTime();
+        this.deadlineNanos = this.deadlineMillis == 0 ? 0 : startNanos + this.deadlineMillis * 1_000_000L;
+        for (ExpansionTier tier : ExpansionTier.values()) {
+            outcomes.put(tier, new int[5]);
+        }
+    }
+
+    public static QueryPlan defaults(int topK) {
+        return new QueryPlan(topK, 0, 0);
+    }
+
+    public int topK() {
+        return topK;
+    }
+
+    public int maxClusterSize() {
+        return maxClusterSize;
+    }
+
+    // lean responses carry ids/labels/names/edges only; code comes from /api/nodes
+    public boolean isLean() {
+        return lean;
+    }
+
+    public QueryPlan setLean(boolean lean) {
+        this.lean = lean;
+        return this;
+    }
+
+    public boolean hasDeadline() {
+        return deadlineNanos != 0;
+    }
+
+    public long remainingNanos() {
+        return hasDeadline() ? deadlineNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    // true when the deadline cut any cluster short (the size cap alone doesn't count)
+    public boolean isDegraded() {
+        return degraded;
+    }
+
+    List<ExpansionTier> orderedTiers() {
+        List<ExpansionTier> tiers = new ArrayList<>(Arrays.asList(ExpansionTier.values()));
+        tiers.sort(Comparator.comparingLong(ExpansionTier::estimateNanos));
+        return tiers;
+    }
+
+    /*
+     * How many nodes the tier may return for a cluster that already holds
+     * clusterSize nodes; 0 means skip it.
+     */
+    int limitFor(ExpansionTier tier, int clusterSize) {
+        int room = maxClusterSize - clusterSize;
+        if (room <= 0) {
+            // cluster already at the size the client asked for
+            outcomes.get(tier)[CAPPED]++;
+            return 0;
+        }
+        int limit = Math.min(tier.defaultLimit, room);
+
+        long remaining = remainingNanos();
+        long estimate = tier.estimateNanos();
+        if (remaining < estimate) {
+            skipped(tier);
+            return 0;
+        }
+        if (remaining < 2 * estimate) {
+            outcomes.get(tier)[TRUNCATED]++;
+            degraded = true;
+            limit = tier.defaultLimit == Integer.MAX_VALUE
+                    ? Math.min(limit, TRUNCATED_UNBOUNDED_LIMIT)
+                    : Math.max(1, limit / 2);
+        }
+        return limit;
+    }
+
+    void ran(ExpansionTier tier) {
+        outcomes.get(tier)[RAN]++;
+    }
+
+    // ran, in that its result is in the cluster, but answered by the cluster cache
+    void cached(ExpansionTier tier) {
+        outcomes.get(tier)[RAN]++;
+        outcomes.get(tier)[CACHED]++;
+    }
+
+    void skipped(ExpansionTier tier) {
+        outcomes.get(tier)[SKIPPED]++;
+        degraded = true;
+    }
+
+    void markDegraded() {
+        degraded = true;
+    }
+
+    public JSONObject toJson() {
+        JSONObject tiers = new JSONObject();
+        JSONArray order = new JSONArray();
+        for (ExpansionTier tier : orderedTiers()) {
+            int[] o = outcomes.get(tier);
+            order.put(tier.label);
+            tiers.put(tier.label, new JSONObject()
+                    .put("ran", o[RAN])
+                    .put("truncated", o[TRUNCATED])
+                    .put("skipped", o[SKIPPED])
+                    .put("capped", o[CAPPED])
+                    .put("cached", o[CACHED])
+                    .put("estimateMs", tier.estimateNanos() / 1_000_000.0));
+        }
+
+        return new JSONObject()
+                .put("topK", topK)
+                .put("maxClusterSize", maxClusterSize == Integer.MAX_VALUE ? 0 : maxClusterSize)
+                .put("deadlineMs", deadlineMillis)
+                .put("lean", lean)
+                .put("elapsedMs", (System.nanoTime() - startNanos) / 1_000_000)
+                .put("degraded", degraded)
+                .put("order", order)
+                .put("tiers", tiers);
+    }
+}
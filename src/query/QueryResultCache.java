@@ -0,0 +1,116 @@
+package query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.json.JSONObject;
+
+public class QueryResultCache {
+
+    private static final long MAX_BYTES = Long.getLong("purple.queryCache.maxBytes", 64L * 1024 * 1024);
+    private static final long TTL_MILLIS = Long.getLong("purple.queryCache.ttlMillis", 10L * 60 * 1000);
+
+    // access-ordered map -> iteration order is least recently used first
+    private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private static long bytes = 0;
+
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+    private static final LongAdder expired = new LongAdder();
+    private static final LongAdder evictions = new LongAdder();
+
+    static {
+        GraphGeneration.addListener(QueryResultCache::clear);
+    }
+
+    private QueryResultCache() {
+        /* Utility class; no public constructor. */ }
+
+    private static final class Entry {
+
+        final byte[] body;
+        final long expiresAt;
+
+        Entry(byte[] body, long expiresAt) {
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // Same question typed with different spacing or casing should land on the same entry.
+    public static String key(String prompt, QueryPlan plan, String embeddingModel, long generation) {
+        String normalized = prompt.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        return generation + "|" + plan.topK() + "|" + plan.maxClusterSize() + "|" + (plan.isLean() ? "lean" : "full")
+                + "|" + embeddingModel + "|" + normalized;
+    }
+
+    public static byte[] get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (entry.expiresAt < now) {
+                entries.remove(key);
+                bytes -= entry.body.length;
+                expired.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.body;
+        }
+    }
+
+    public static void put(String key, long generation, byte[] body) {
+        if (generation != GraphGeneration.current() || body.length > MAX_BYTES) {
+            return;
+        }
+        Entry entry = new Entry(body, System.currentTimeMillis() + TTL_MILLIS);
+        synchronized (entries) {
+            Entry previous = entries.put(key, entry);
+            if (previous != null) {
+                bytes -= previous.body.length;
+            }
+            bytes += body.length;
+
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (bytes > MAX_BYTES && it.hasNext()) {
+                Entry eldest = it.next().getValue();
+                it.remove();
+                bytes -= eldest.body.length;
+                evictions.increment();
+            }
+        }
+    }
+
+    public static void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    public static JSONObject stats() {
+        long h = hits.sum();
+        long m = misses.sum();
+        JSONObject json = new JSONObject();
+        synchronized (entries) {
+            json.put("entries", entries.size());
+            json.put("bytes", bytes);
+        }
+        json.put("maxBytes", MAX_BYTES);
+        json.put("ttlMillis", TTL_MILLIS);
+        json.put("hits", h);
+        json.put("misses", m);
+        json.put("expired", expired.sum());
+        json.put("evictions", evictions.sum());
+        json.put("hitRatio", (h + m) == 0 ? 0.0 : (double) h / (h + m));
+        return json;
+    }
+}
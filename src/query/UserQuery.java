@@ -1,50 +1,70 @@
 package query;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet; // We'll rely on ScrapeJava’s driver & isNeo4jAvailable()
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.neo4j.driver.Session;
-import org.neo4j.driver.Values;
-import org.neo4j.driver.types.Node;
+import org.neo4j.driver.exceptions.Neo4jException;
 
 import api.InferenceConfig;
 import gen.AIClient;
 import scrape.DbClient;
+import store.GraphStore;
+import trace.Metrics;
+import trace.QueryStageEvent;
 
 public class UserQuery {
 
-    public static JSONObject runEmbeddingQuery(String query, int topN) {
-        // Verify that Neo4j is available (via ScrapeJava).
-        if (!DbClient.isNeo4jAvailable()) {
-            System.err.println("[UserQuery] Neo4j not available. Aborting query.");
-            // Return empty results
-            return new JSONObject();
-        }
+    // Turns the question into a vector. The configured HuggingFace endpoint unless a benchmark stubs it.
+    interface QueryEmbedder {
 
-        String embUrl = InferenceConfig.embeddingsUrl;
-        String embToken = InferenceConfig.embeddingsToken;
+        double[] embed(String query);
+    }
 
-        if (embUrl == null || embToken == null) {
-            System.err.println("[UserQuery] ERROR: Missing or invalid embeddings config. Cannot proceed.");
-            return new JSONObject();
-        }
+    private static volatile QueryEmbedder queryEmbedder = UserQuery::embedWithConfiguredModel;
 
-        // Generate an embedding for the user’s query text
-        double[] queryEmbedding = AIClient.generateEmbedding(query, embUrl, embToken);
-        if (queryEmbedding == null || queryEmbedding.length == 0) {
-            System.err.println("[UserQuery] ERROR: Embedding generation returned empty/failed. Query: " + query);
+    private static final Map<String, Metrics.Histogram> STAGE_LATENCY = Map.of(
+            "embed", stageHistogram("embed"),
+            "vector", stageHistogram("vector"),
+            "expand", stageHistogram("expand"),
+            "detail", stageHistogram("detail"));
+
+    private static Metrics.Histogram stageHistogram(String stage) {
+        return Metrics.histogram("purple_query_stage_seconds", "Time spent per search stage (expand/detail are per cluster when streaming)", "stage", stage);
+    }
+
+    // null puts the configured endpoint back
+    static void setQueryEmbedder(QueryEmbedder embedder) {
+        queryEmbedder = embedder == null ? UserQuery::embedWithConfiguredModel : embedder;
+    }
+
+    public static JSONObject runEmbeddingQuery(String query, int topN) {
+        return runEmbeddingQuery(query, QueryPlan.defaults(topN));
+    }
+
+    public static JSONObject runEmbeddingQuery(String query, QueryPlan plan) {
+        QueryStageEvent stage = stageStarted();
+        double[] queryEmbedding = embedQuery(query);
+        stageDone(stage, "embed", queryEmbedding == null ? 0 : queryEmbedding.length, plan);
+        if (queryEmbedding == null) {
+            // Return empty results
             return new JSONObject();
         }
 
         // turn into clusters here
-        List<JSONObject> codeMatches = findSimilarNodes(queryEmbedding, topN);
-        List<JSONObject> clusters = getClusters(codeMatches);
+        stage = stageStarted();
+        List<JSONObject> codeMatches = findSimilarNodes(queryEmbedding, plan.topK());
+        stageDone(stage, "vector", codeMatches.size(), plan);
+
+        stage = stageStarted();
+        List<JSONObject> clusters = getClusters(codeMatches, plan);
+        stageDone(stage, "expand", clusters.size(), plan);
 
         JSONArray graphData = new JSONArray();
         for (JSONObject cluster : clusters) {
@@ -52,254 +72,367 @@ public class UserQuery {
         }
 
         // llm digest info
-        JSONArray chatData = getChatData(clusters);
+        stage = stageStarted();
+        JSONArray chatData = getChatData(clusters, plan.isLean());
+        stageDone(stage, "detail", chatData.length(), plan);
 
         JSONObject result = new JSONObject();
         result.put("graph", graphData);
         result.put("chat", chatData);
+        result.put("plan", plan.toJson());
+        result.put("graphVersion", GraphGeneration.tag());
         return result;
     }
 
-    private static List<JSONObject> findSimilarNodes(double[] queryEmbedding, int limit) {
-        List<JSONObject> resultNodes = new ArrayList<>();
-
-        if (!DbClient.isNeo4jAvailable() || queryEmbedding == null) {
-            System.err.println("[UserQuery] Cannot query: driver not available or queryEmbedding is null.");
-            return resultNodes;
+    /*
+     * Same pipeline as runEmbeddingQuery, but hands each piece to the listener
+     * as soon as it exists: the vector hits first, then every cluster once it
+     * is expanded and its details fetched. Nothing is accumulated here.
+     * Returns false if the query failed before anything was emitted.
+     */
+    public static boolean streamEmbeddingQuery(String query, QueryPlan plan, QueryListener listener) throws IOException {
+        QueryStageEvent stage = stageStarted();
+        double[] queryEmbedding = embedQuery(query);
+        stageDone(stage, "embed", queryEmbedding == null ? 0 : queryEmbedding.length, plan);
+        if (queryEmbedding == null) {
+            return false;
         }
 
-        String indexName = "methodEmbeddings";
-
-        String cypher = String.format("""
-            CALL db.index.vector.queryNodes('%s', %d, $queryEmbedding)
-              YIELD node, score
-            RETURN
-              id(node)       AS id,
-              score          AS similarity
-            ORDER BY similarity DESC
-            """, indexName, limit);
-
-        try (Session session = DbClient.getNeo4jDriver().session()) {
-            var rs = session.run(cypher,
-                    Values.parameters("queryEmbedding", queryEmbedding));
-            while (rs.hasNext()) {
-                var record = rs.next();
-                JSONObject json = new JSONObject();
-                json.put("id", record.get("id").asLong());
-                json.put("similarity", record.get("similarity").asDouble());
-                resultNodes.add(json);
+        stage = stageStarted();
+        List<JSONObject> codeMatches = findSimilarNodes(queryEmbedding, plan.topK());
+        stageDone(stage, "vector", codeMatches.size(), plan);
+        listener.onHits(codeMatches);
+
+        try (GraphStore.Reader reader = DbClient.store().reader()) {
+            int index = 0;
+            for (JSONObject match : codeMatches) {
+                long nodeId = match.getLong("id");
+
+                stage = stageStarted();
+                JSONObject cluster = expandFromMemory(nodeId, plan);
+                if (cluster == null) {
+                    cluster = expandFromStore(reader, nodeId, plan);
+                }
+                cluster.put("seed", String.valueOf(nodeId)).put("similarity", match.getDouble("similarity"));
+                stageDone(stage, "expand", 1, plan);
+
+                stage = stageStarted();
+                JSONObject chat = plan.isLean()
+                        ? getClusterOutline(reader, cluster)
+                        : getClusterDetail(reader, cluster);
+                stageDone(stage, "detail", 1, plan);
+                listener.onCluster(index++, cluster, chat);
             }
-        } catch (Exception e) {
-            System.err.println("Error querying Neo4j for initial matches: " + e.getMessage());
         }
 
-        return resultNodes;
+        listener.onDone(plan.toJson());
+        return true;
     }
 
-    private static List<String> getCypherStack() {
-
-        List<String> stack = new ArrayList<>();
-
-        // methods along calls_method edges up to 3 hops away undirected
-        String cypher1 = """
-        MATCH (start)
-        WHERE id(start) = $id
-
-        MATCH (start)-[:CALLS_METHOD*1..3]-(n)
-        RETURN collect(DISTINCT n) AS nodes, [] AS rels
-        """;
-
-        stack.add(cypher1);
+    // JFR bookkeeping for the stages above; costs a begin()/end() pair when no recording wants the event.
+    private static QueryStageEvent stageStarted() {
+        QueryStageEvent event = new QueryStageEvent();
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
 
-        // nodes 2 hop walks in any direction (LIM 30)
-        String cypher2 = """
-        MATCH (start)
-        WHERE id(start) = $id
+    private static void stageDone(QueryStageEvent event, String stage, int items, QueryPlan plan) {
+        STAGE_LATENCY.get(stage).observeSince(event.startNanos);
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = stage;
+            event.items = items;
+            event.topK = plan.topK();
+            event.commit();
+        }
+    }
 
-        MATCH (start)-[*..2]-(n)
-        WITH DISTINCT n
-        LIMIT 30
-        RETURN collect(n) AS nodes, [] AS rels
-        """;
+    // Availability/config checks plus the embedding call; null if any of them fail.
+    private static double[] embedQuery(String query) {
+        // Verify that the graph is available (via DbClient).
+        if (!DbClient.isGraphAvailable()) {
+            System.err.println("[UserQuery] Graph store not available. Aborting query.");
+            return null;
+        }
 
-        stack.add(cypher2);
+        double[] queryEmbedding = queryEmbedder.embed(query);
+        if (queryEmbedding == null || queryEmbedding.length == 0) {
+            System.err.println("[UserQuery] ERROR: Embedding generation returned empty/failed. Query: " + query);
+            return null;
+        }
+        return queryEmbedding;
+    }
 
-        // nodes 2 hop walks in any direction (LIM 30)
-        String cypher3 = """
-        MATCH (start)
-        WHERE id(start) = $id
+    private static double[] embedWithConfiguredModel(String query) {
+        String embUrl = InferenceConfig.embeddingsUrl;
+        String embToken = InferenceConfig.embeddingsToken;
 
-        MATCH path = (start)-[*..3]-(m:Method)
-        WHERE id(m) <> id(start)
-        WITH m, length(path) AS depth
-        ORDER BY depth ASC
-        LIMIT 10
+        if (embUrl == null || embToken == null) {
+            System.err.println("[UserQuery] ERROR: Missing or invalid embeddings config. Cannot proceed.");
+            return null;
+        }
 
-        RETURN collect(m) AS nodes, [] AS rels
-        """;
+        // Generate an embedding for the user’s query text
+        return AIClient.generateEmbedding(query, embUrl, embToken);
+    }
 
-        stack.add(cypher3);
+    static List<JSONObject> findSimilarNodes(double[] queryEmbedding, int limit) {
+        List<JSONObject> resultNodes = new ArrayList<>();
 
-        // start node only
-        String cypher4 = """
-        MATCH (start)
-        WHERE id(start) = $id
-        RETURN [start] AS nodes, [] AS rels
-        """;
+        if (!DbClient.isGraphAvailable() || queryEmbedding == null) {
+            System.err.println("[UserQuery] Cannot query: graph not available or queryEmbedding is null.");
+            return resultNodes;
+        }
 
-        stack.add(cypher4);
+        try (GraphStore.Reader reader = DbClient.store().reader()) {
+            resultNodes = reader.vectorSearch(queryEmbedding, limit);
+        } catch (Exception e) {
+            System.err.println("Error querying the graph for initial matches: " + e.getMessage());
+        }
 
-        return stack;
+        return resultNodes;
     }
 
-    private static List<JSONObject> getClusters(List<JSONObject> methodIds) {
+    static List<JSONObject> getClusters(List<JSONObject> methodIds, QueryPlan plan) {
 
         List<JSONObject> clusters = new ArrayList<>();
 
-        if (!DbClient.isNeo4jAvailable()) {
-            System.err.println("[getClusters] Neo4j not available. Returning empty clusters.");
+        if (!DbClient.isGraphAvailable()) {
+            System.err.println("[getClusters] Graph not available. Returning empty clusters.");
             return clusters;
         }
 
-        try (Session session = DbClient.getNeo4jDriver().session()) {
+        // a Neo4j reader only opens its session once a seed misses the cache
+        try (GraphStore.Reader reader = DbClient.store().reader()) {
 
             for (JSONObject match : methodIds) {
                 long nodeId = match.getLong("id");
 
-                Set<Long> nodeIds = new HashSet<>();
-                Set<Long> relIds = new HashSet<>();
+                JSONObject cluster = expandFromMemory(nodeId, plan);
+                if (cluster == null) {
+                    cluster = expandFromStore(reader, nodeId, plan);
+                }
+                clusters.add(cluster
+                        .put("seed", String.valueOf(nodeId))
+                        .put("similarity", match.getDouble("similarity")));
+            }
 
-                List<String> cyphers = getCypherStack();
+        } catch (Exception e) {
+            System.err.println("[getClusters] Error fetching clusters: " + e.getMessage());
+        }
 
-                for (String cypher : cyphers) {
+        return clusters;
+    }
 
-                    var result = session.run(cypher, Values.parameters("id", nodeId));
+    // Cluster cache first, then the topology snapshot; null when the seed has to go to the store.
+    private static JSONObject expandFromMemory(long nodeId, QueryPlan plan) {
+        ClusterCache.Entry cached = ClusterCache.get(nodeId);
+        if (cached != null) {
+            for (ExpansionTier tier : ExpansionTier.values()) {
+                plan.cached(tier);
+            }
+            return toClusterJson(cap(cached.nodeIds, plan), cached.relIds, allTiers());
+        }
 
-                    while (result.hasNext()) {
-                        var rec = result.next();
+        // in-process expansion when the topology snapshot is loaded
+        GraphSnapshot snapshot = GraphSnapshot.current();
+        if (snapshot != null && snapshot.contains(nodeId)) {
+            long generation = GraphGeneration.current();
+            long[] nodeArr = snapshot.expandCluster(nodeId);
+            ClusterCache.put(nodeId, generation, nodeArr, new long[0]);
+            for (ExpansionTier tier : ExpansionTier.values()) {
+                plan.ran(tier);
+            }
+            return toClusterJson(cap(nodeArr, plan), new long[0], allTiers());
+        }
+        return null;
+    }
 
-                        if (rec.containsKey("nodes")) {
-                            for (var value : rec.get("nodes").values()) {
-                                nodeIds.add(value.asNode().id());
-                            }
-                        }
+    private static JSONObject expandFromStore(GraphStore.Reader reader, long nodeId, QueryPlan plan) {
+        long generation = GraphGeneration.current();
+        List<String> tiersRun = new ArrayList<>();
+        Set<Long> nodeIds = new LinkedHashSet<>();
+        boolean complete = expandWithTiers(reader, nodeId, plan, tiersRun, nodeIds);
+        long[] nodeArr = toArray(nodeIds);
 
-                        if (rec.containsKey("rels")) {
-                            for (var value : rec.get("rels").values()) {
-                                relIds.add(value.asRelationship().id());
-                            }
-                        }
-                    }
-                }
+        // only full expansions are reusable by other queries
+        if (complete) {
+            ClusterCache.put(nodeId, generation, nodeArr, new long[0]);
+        }
+        return toClusterJson(cap(nodeArr, plan), new long[0], tiersRun);
+    }
+
+    /*
+     * Runs the expansion tiers for one seed in the order the plan picks,
+     * collecting node ids into nodeIds (seed first). Returns true when every
+     * tier ran in full, i.e. the result equals an unbounded expansion.
+     */
+    private static boolean expandWithTiers(GraphStore.Reader reader, long nodeId, QueryPlan plan,
+            List<String> tiersRun, Set<Long> nodeIds) {
+
+        // start node: we already know it from the vector hit
+        nodeIds.add(nodeId);
+        tiersRun.add("seed");
+        boolean complete = true;
+
+        for (ExpansionTier tier : plan.orderedTiers()) {
+            int limit = plan.limitFor(tier, nodeIds.size());
+            if (limit == 0) {
+                complete = false;
+                continue;
+            }
 
-                // Build nodes list: [{ id: 3735 }, { id: 3729 }, …]
-                List<JSONObject> simpleNodes = new ArrayList<>();
-                for (Long id : nodeIds) {
-                    simpleNodes.add(new JSONObject().put("id", String.valueOf(id)));
+            long start = System.nanoTime();
+            try {
+                long[] ids = reader.expand(nodeId, tier.traversal, limit, timeoutMillis(plan));
+                int returned = ids.length;
+                for (long id : ids) {
+                    nodeIds.add(id);
                 }
+                tier.observe(System.nanoTime() - start);
+                plan.ran(tier);
+                tiersRun.add(tier.label);
 
-                // Build rels list: [{ id: 1152… }, { id: 1157… }, …]
-                List<JSONObject> simpleRels = new ArrayList<>();
-                for (Long id : relIds) {
-                    simpleRels.add(new JSONObject().put("id", String.valueOf(id)));
+                // a limit below the tier's own that was actually hit cut the result short
+                if (limit < tier.defaultLimit && returned >= limit) {
+                    complete = false;
                 }
+            } catch (Neo4jException e) {
+                // most likely the deadline-derived transaction timeout
+                tier.observe(System.nanoTime() - start);
+                plan.skipped(tier);
+                complete = false;
+                System.err.println("[getClusters] tier '" + tier.label + "' gave up on " + nodeId + ": " + e.getMessage());
+            }
+        }
+        return complete;
+    }
 
-                JSONObject simpleCluster = new JSONObject()
-                        .put("nodes", simpleNodes)
-                        .put("rels", simpleRels);
+    // 0 for no deadline
+    private static long timeoutMillis(QueryPlan plan) {
+        if (!plan.hasDeadline()) {
+            return 0;
+        }
+        return Math.max(1, plan.remainingNanos() / 1_000_000);
+    }
 
-                clusters.add(simpleCluster);
-            }
+    private static long[] cap(long[] nodeIds, QueryPlan plan) {
+        return nodeIds.length <= plan.maxClusterSize() ? nodeIds : Arrays.copyOf(nodeIds, plan.maxClusterSize());
+    }
 
-        } catch (Exception e) {
-            System.err.println("[getClusters] Error fetching clusters: " + e.getMessage());
+    private static List<String> allTiers() {
+        List<String> tiers = new ArrayList<>();
+        tiers.add("seed");
+        for (ExpansionTier tier : ExpansionTier.values()) {
+            tiers.add(tier.label);
         }
+        return tiers;
+    }
 
-        return clusters;
+    private static long[] toArray(Set<Long> ids) {
+        long[] arr = new long[ids.size()];
+        int i = 0;
+        for (Long id : ids) {
+            arr[i++] = id;
+        }
+        return arr;
     }
 
-    private static JSONArray getChatData(List<JSONObject> clusters) {
+    private static JSONObject toClusterJson(long[] nodeIds, long[] relIds, List<String> tiers) {
+        // Build nodes list: [{ id: 3735 }, { id: 3729 }, …]
+        List<JSONObject> simpleNodes = new ArrayList<>();
+        for (long id : nodeIds) {
+            simpleNodes.add(new JSONObject().put("id", String.valueOf(id)));
+        }
+
+        // Build rels list: [{ id: 1152… }, { id: 1157… }, …]
+        List<JSONObject> simpleRels = new ArrayList<>();
+        for (long id : relIds) {
+            simpleRels.add(new JSONObject().put("id", String.valueOf(id)));
+        }
+
+        return new JSONObject()
+                .put("nodes", simpleNodes)
+                .put("rels", simpleRels)
+                .put("tiers", tiers);
+    }
+
+    static JSONArray getChatData(List<JSONObject> clusters, boolean lean) {
         JSONArray data = new JSONArray();
 
-        if (!DbClient.isNeo4jAvailable()) {
-            System.err.println("[getSecondScreenData] Neo4j not available. Returning empty data.");
+        if (!DbClient.isGraphAvailable()) {
+            System.err.println("[getSecondScreenData] Graph not available. Returning empty data.");
             return data;
         }
 
-        try (Session session = DbClient.getNeo4jDriver().session()) {
+        try (GraphStore.Reader reader = DbClient.store().reader()) {
             for (JSONObject clusterSummary : clusters) {
+                data.put(lean
+                        ? getClusterOutline(reader, clusterSummary)
+                        : getClusterDetail(reader, clusterSummary));
+            }
+        } catch (Exception e) {
+            System.err.println("[getSecondScreenData] caught exception:");
+            e.printStackTrace();
+        }
 
-                // Extract the raw ID lists
-                JSONArray nodeArray = clusterSummary.getJSONArray("nodes");
-                JSONArray relArray = clusterSummary.getJSONArray("rels");
+        return data;
+    }
 
-                List<Long> nodeIds = new ArrayList<>();
-                for (int i = 0; i < nodeArray.length(); i++) {
-                    nodeIds.add(nodeArray.getJSONObject(i).getLong("id"));
-                }
-                List<Long> relIds = new ArrayList<>();
-                for (int i = 0; i < relArray.length(); i++) {
-                    relIds.add(relArray.getJSONObject(i).getLong("id"));
-                }
+    private static JSONObject getClusterDetail(GraphStore.Reader reader, JSONObject clusterSummary) {
+        // Extract the raw ID lists
+        List<Long> nodeIds = ids(clusterSummary.getJSONArray("nodes"));
+        List<Long> relIds = ids(clusterSummary.getJSONArray("rels"));
 
-                // Fetch full node details
-                List<JSONObject> nodesDetail = new ArrayList<>();
-                String nodeQuery
-                        = "MATCH (n) WHERE id(n) IN $ids "
-                        + "RETURN id(n) AS id, labels(n) AS labels, n AS node";
-                var nodeResult = session.run(nodeQuery, Values.parameters("ids", nodeIds));
-                while (nodeResult.hasNext()) {
-                    var rec = nodeResult.next();
-                    long id = rec.get("id").asLong();
-                    List<String> labels = rec.get("labels").asList(v -> v.asString());
-                    Node n = rec.get("node").asNode();
-
-                    Map<String, Object> props = new HashMap<>(n.asMap());
-                    props.remove("embedding");
-                    props.remove("start_line");
-                    props.remove("end_line");
-
-                    JSONObject no = new JSONObject()
-                            .put("id", id)
-                            .put("labels", labels)
-                            .put("properties", new JSONObject(props));
-                    nodesDetail.add(no);
-                }
+        // Fetch full node details
+        List<JSONObject> nodesDetail = reader.nodeDetails(nodeIds);
 
-                // Fetch full relationship details
-                List<JSONObject> relsDetail = new ArrayList<>();
-                String relQuery
-                        = "MATCH ()-[r]-() WHERE id(r) IN $ids "
-                        + "RETURN id(r) AS id, type(r) AS type, "
-                        + "id(startNode(r)) AS start, id(endNode(r)) AS end, "
-                        + "properties(r) AS props";
-                var relResult = session.run(relQuery, Values.parameters("ids", relIds));
-                while (relResult.hasNext()) {
-                    var rec = relResult.next();
-                    String type = rec.get("type").asString();
-                    long start = rec.get("start").asLong();
-                    long end = rec.get("end").asLong();
-
-                    JSONObject ro = new JSONObject()
-                            .put("type", type)
-                            .put("start", start)
-                            .put("end", end);
-                    relsDetail.add(ro);
-                }
+        // Fetch full relationship details (the expansion tiers return none today, so skip the round trip)
+        List<JSONObject> relsDetail = relIds.isEmpty() ? new ArrayList<>() : reader.edges(relIds);
 
-                // Package into one cluster‐object
-                JSONObject clusterData = new JSONObject()
-                        .put("nodes", nodesDetail)
-                        .put("relationships", relsDetail);
+        // Package into one cluster‐object
+        JSONObject clusterData = new JSONObject()
+                .put("nodes", nodesDetail)
+                .put("relationships", relsDetail);
 
-                data.put(clusterData);
-            }
+        return clusterData;
+    }
+
+    /*
+     * Lean variant of getClusterDetail: ids, labels, a display name and the
+     * edges between cluster members, all in one round trip. Code and the
+     * other properties are left to getNodeDetails.
+     */
+    private static JSONObject getClusterOutline(GraphStore.Reader reader, JSONObject clusterSummary) {
+        return reader.outline(ids(clusterSummary.getJSONArray("nodes")));
+    }
+
+    private static List<Long> ids(JSONArray refs) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < refs.length(); i++) {
+            ids.add(refs.getJSONObject(i).getLong("id"));
+        }
+        return ids;
+    }
+
+    // Full properties (including code) for the given node ids, for the node-detail endpoint.
+    public static JSONArray getNodeDetails(List<Long> nodeIds) {
+        JSONArray data = new JSONArray();
+
+        if (!DbClient.isGraphAvailable()) {
+            System.err.println("[getNodeDetails] Graph not available. Returning empty data.");
+            return data;
+        }
 
+        try (GraphStore.Reader reader = DbClient.store().reader()) {
+            for (JSONObject node : reader.nodeDetails(nodeIds)) {
+                data.put(node);
+            }
         } catch (Exception e) {
-            System.err.println("[getSecondScreenData] caught exception:");
+            System.err.println("[getNodeDetails] caught exception:");
             e.printStackTrace();
         }
-
         return data;
     }
 }
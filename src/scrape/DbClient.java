@@ -1,228 +1,294 @@
 package scrape;
 
-import org.neo4j.driver.AuthTokens;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.neo4j.driver.AccessMode;
 import org.neo4j.driver.Driver;
-import org.neo4j.driver.GraphDatabase;
 import org.neo4j.driver.Session;
 import org.neo4j.driver.Value;
 import org.neo4j.driver.Values;
 
 import api.InferenceConfig;
+import store.BlobStore;
+import store.GraphStore;
+import store.GraphStore.NodeKey;
+import store.Projects;
+import trace.CypherEvent;
+import trace.Metrics;
 
 public class DbClient {
 
-    private static Driver neo4jDriver;
+    // Where the graph writes below end up. Neo4j unless a benchmark or tool swaps in its own.
+    public interface QueryRunner {
+
+        void run(String query, Value parameters);
+    }
 
-    public static void initNeo4jConnection() {
-        closeNeo4jDriver();
+    // a url of memory: keeps the graph in this JVM, no database at all
+    public static final String MEMORY_URL = "memory:";
+
+    // the project reads go to; an ingest can write elsewhere meanwhile (see ingestInto)
+    private static volatile String activeProject = Projects.DEFAULT;
+    private static volatile GraphStore ingestTarget;
+    private static volatile QueryRunner queryRunner = DbClient::runOnNeo4j;
+
+    private static final Metrics.Histogram writeLatency = Metrics.histogram("purple_neo4j_write_seconds",
+            "Graph writes issued through runQuery, one round trip each");
+    private static final Metrics.Counter methodsWritten = Metrics.counter("purple_ingest_methods_total",
+            "Methods and constructors written with their code");
+
+    /*
+     * Cheap to call per request: reuses the driver unless the config changed (see Neo4jConnection).
+     * An embedded:<dir> url starts Neo4j in this JVM instead; ingestion writes then bypass Bolt.
+     * memory: drops Neo4j altogether for MemoryGraphStore.
+     */
+    public static synchronized void initNeo4jConnection() {
         String url = InferenceConfig.neo4jUrl;
-        String user = InferenceConfig.neo4jUser;
-        String pass = InferenceConfig.neo4jPassword;
+        if (MEMORY_URL.equals(url)) {
+            Projects.useMemory();
+            stopNeo4j();
+            return;
+        }
+        Driver before = Neo4jConnection.driver();
+        if (EmbeddedNeo4j.isEmbeddedUrl(url)) {
+            String boltUrl = EmbeddedNeo4j.start(EmbeddedNeo4j.storeDir(url));
+            Neo4jConnection.connect(boltUrl, InferenceConfig.neo4jUser, InferenceConfig.neo4jPassword);
+            setQueryRunner(EmbeddedNeo4j::run);
+        } else {
+            Neo4jConnection.connect(url, InferenceConfig.neo4jUser, InferenceConfig.neo4jPassword);
+            if (EmbeddedNeo4j.isRunning()) {
+                setQueryRunner(null);
+                EmbeddedNeo4j.stop();
+            }
+        }
+        Projects.useNeo4j(Neo4jConnection.driver() != before);
+    }
 
-        System.out.println("Connecting to Neo4j at: " + url + " (user=" + user + ")");
-        neo4jDriver = GraphDatabase.driver(url, AuthTokens.basic(user, pass));
+    private static void stopNeo4j() {
+        Neo4jConnection.close();
+        if (EmbeddedNeo4j.isRunning()) {
+            setQueryRunner(null);
+            EmbeddedNeo4j.stop();
+        }
     }
 
     public static void closeNeo4jDriver() {
-        if (neo4jDriver != null) {
-            neo4jDriver.close();
-            neo4jDriver = null;
-        }
+        Neo4jConnection.close();
     }
 
-    public static boolean isNeo4jAvailable() {
-        if (neo4jDriver == null) {
-            System.err.println("Neo4j driver not initialized. Call initNeo4jConnection() first.");
-            return false;
-        }
+    // the active project's graph, which queries read; Neo4j until a memory: url is connected
+    public static GraphStore store() {
+        return Projects.get(activeProject);
+    }
+
+    public static GraphStore store(String project) {
+        return Projects.get(project);
+    }
+
+    public static String activeProject() {
+        return activeProject;
+    }
+
+    public static void useProject(String project) {
+        activeProject = project;
+    }
+
+    // Sends the graph calls below to the project (null: back to the active one). One ingest runs at a time.
+    public static GraphStore ingestInto(String project) {
+        ingestTarget = project == null ? null : Projects.get(project);
+        return writes();
+    }
+
+    private static GraphStore writes() {
+        GraphStore target = ingestTarget;
+        return target != null ? target : store();
+    }
+
+    // what out-of-process clients (Embed.py) should connect to
+    public static String boltUrl() {
+        return EmbeddedNeo4j.isRunning() ? EmbeddedNeo4j.boltUrl() : InferenceConfig.neo4jUrl;
+    }
+
+    // no round trip: the Neo4j store answers from its heartbeat (after the one that finds the projects)
+    public static boolean isGraphAvailable() {
         try {
-            neo4jDriver.verifyConnectivity();
-            return true;
-        } catch (Exception e) {
-            System.err.println("Neo4j unavailable: " + e.getMessage());
+            return store().isAvailable();
+        } catch (IllegalStateException e) {
             return false;
         }
     }
 
     public static Driver getNeo4jDriver() {
-        return neo4jDriver;
+        return Neo4jConnection.driver();
+    }
+
+    // sessions with the configured fetch size; reads may be routed to followers in a cluster
+    public static Session readSession() {
+        return Neo4jConnection.session(AccessMode.READ);
+    }
+
+    public static Session writeSession() {
+        return Neo4jConnection.session(AccessMode.WRITE);
     }
 
     // ---------------------------------------------------------------
     //                          graph calls
     // ---------------------------------------------------------------
     public static void insertFile(String filePath, String fileType) {
-        String query = "MERGE (:File {path: $filePath, type: $fileType})";
-        runQuery(query, Values.parameters("filePath", filePath, "fileType", fileType));
+        writes().mergeNode(new NodeKey("File", "path", filePath), props("type", fileType));
     }
 
     public static void insertDir(String dirName) {
-        String query = "MERGE (:Dir {path: $dirname})";
-        runQuery(query, Values.parameters("dirname", dirName));
+        writes().mergeNode(new NodeKey("Dir", "path", dirName), Map.of());
     }
 
     public static void insertClass(String className) {
-        String query = "MERGE (:Class {name: $className})";
-        runQuery(query, Values.parameters("className", className));
+        writes().mergeNode(new NodeKey("Class", "name", className), Map.of());
     }
 
     public static void insertPackage(String pkgName) {
-        String query = "MERGE (p:Pkg {name: $pkgName})";
-        runQuery(query, Values.parameters("pkgName", pkgName));
+        writes().mergeNode(new NodeKey("Pkg", "name", pkgName), Map.of());
     }
 
-    public static void insertMethod(String methodName, String simpleName, String fileName, int startLine, int endLine, String methodCode) {
-        String query = "MERGE (m:Method {name: $methodName}) "
-                + "SET m.simple_name = $simpleName, m.file = $fileName, m.start_line = $startLine, m.end_line = $endLine, m.code = $methodCode";
-        runQuery(query, Values.parameters("methodName", methodName,
-                "simpleName", simpleName,
-                "fileName", fileName,
-                "startLine", startLine,
-                "endLine", endLine,
-                "methodCode", methodCode));
+    // the code itself is in the BlobStore under codeHash
+    public static void insertMethod(String methodName, String simpleName, String fileName, int startLine, int endLine, String codeHash) {
+        methodsWritten.inc();
+        writes().mergeNode(new NodeKey("Method", "name", methodName), props(
+                "simple_name", simpleName,
+                "file", fileName,
+                "start_line", startLine,
+                "end_line", endLine,
+                BlobStore.HASH_PROPERTY, codeHash));
     }
 
     public static void insertMethod(String methodName) {
-        String query = "MERGE (m:Method {name: $methodName})";
-        runQuery(query, Values.parameters("methodName", methodName));
+        writes().mergeNode(new NodeKey("Method", "name", methodName), Map.of());
     }
 
     public static void ClassToConstructor(String className, String constructorName) {
-        String query = "MATCH (c:Class {name: $className}), (m:Method {name: $constructorName}) "
-                + "MERGE (c)-[:HAS_CONSTRUCTOR]->(m)";
-        runQuery(query, Values.parameters("className", className, "constructorName", constructorName));
+        writes().mergeEdge(new NodeKey("Class", "name", className), "HAS_CONSTRUCTOR",
+                new NodeKey("Method", "name", constructorName), false);
     }
 
-    public static void insertConstructor(String constructorName, String simpleName, String fileName, int startLine, int endLine, String constructorCode) {
-        String query = "MERGE (m:Method {name: $constructorName}) "
-                + "SET m.simple_name = $simpleName, m.file = $fileName, m.start_line = $startLine, m.end_line = $endLine, m.code = $constructorCode";
-        runQuery(query, Values.parameters("constructorName", constructorName,
-                "simpleName", simpleName,
-                "fileName", fileName,
-                "startLine", startLine,
-                "endLine", endLine,
-                "constructorCode", constructorCode));
+    public static void insertConstructor(String constructorName, String simpleName, String fileName, int startLine, int endLine, String codeHash) {
+        insertMethod(constructorName, simpleName, fileName, startLine, endLine, codeHash);
     }
 
     public static void ClassToField(String className, String variableName, String variableType, String initialValue) {
-        String query = "MATCH (c:Class {name: $className}) "
-                + "CREATE (f:Field {name: $variableName, type: $variableType, initialValue: $initialValue}) "
-                + "MERGE (c)-[:HAS_FIELD]->(f)";
-        runQuery(query, Values.parameters("className", className,
-                "variableName", variableName,
-                "variableType", variableType,
-                "initialValue", initialValue));
+        writes().createAttached(new NodeKey("Class", "name", className), "HAS_FIELD", "Field",
+                props("name", variableName, "type", variableType, "initialValue", initialValue),
+                null, null);
     }
 
     public static void ClassToFieldToClass(String currentClassName, String fieldName, String fieldType, String initialValue) {
-        String query = "MATCH (c:Class {name: $currentClassName}) "
-                + "CREATE (f:Field {name: $fieldName, type: $fieldType, initialValue: $initialValue}) "
-                + "MERGE (t:Class {name: $fieldType}) "
-                + "MERGE (c)-[:HAS_FIELD]->(f) "
-                + "MERGE (f)-[:HAS_TYPE]->(t)";
-        runQuery(query, Values.parameters("currentClassName", currentClassName,
-                "fieldName", fieldName,
-                "fieldType", fieldType,
-                "initialValue", initialValue));
+        writes().createAttached(new NodeKey("Class", "name", currentClassName), "HAS_FIELD", "Field",
+                props("name", fieldName, "type", fieldType, "initialValue", initialValue),
+                "HAS_TYPE", new NodeKey("Class", "name", fieldType));
     }
 
     public static void ClassExtendsClass(String className, String extendedTypeName) {
-        String query = "MATCH (c:Class {name: $className}) "
-                + "MERGE (e:Class {name: $extendedTypeName}) "
-                + "MERGE (c)-[:EXTENDS]->(e)";
-        runQuery(query, Values.parameters("className", className, "extendedTypeName", extendedTypeName));
+        writes().mergeEdge(new NodeKey("Class", "name", className), "EXTENDS",
+                new NodeKey("Class", "name", extendedTypeName), true);
     }
 
     public static void ClassImplementsClass(String className, String implementedTypeName) {
-        String query = "MATCH (c:Class {name: $className}) "
-                + "MERGE (i:Class {name: $implementedTypeName}) "
-                + "MERGE (c)-[:IMPLEMENTS]->(i)";
-        runQuery(query, Values.parameters("className", className, "implementedTypeName", implementedTypeName));
+        writes().mergeEdge(new NodeKey("Class", "name", className), "IMPLEMENTS",
+                new NodeKey("Class", "name", implementedTypeName), true);
     }
 
     public static void insertImport(String importName) {
-        String query = "MERGE (:Import {name: $importName})";
-        runQuery(query, Values.parameters("importName", importName));
+        writes().mergeNode(new NodeKey("Import", "name", importName), Map.of());
     }
 
     public static void insertXml(String filePath, String content) {
-        String query = "CREATE (x:XML { path: $filePath, content: $content })";
-        runQuery(query, Values.parameters("filePath", filePath, "content", content));
+        writes().createNode("XML", props("path", filePath, "content", content));
     }
 
     public static void dirToXml(String dirPath, String xmlFilePath) {
-        String query = "MATCH (d:Dir {path: $dirPath}), (x:XML {path: $xmlFilePath}) "
-                + "MERGE (d)-[:HAS_XML]->(x)";
-        runQuery(query, Values.parameters("dirPath", dirPath, "xmlFilePath", xmlFilePath));
+        writes().mergeEdge(new NodeKey("Dir", "path", dirPath), "HAS_XML", new NodeKey("XML", "path", xmlFilePath), false);
     }
 
     public static void FileToImport(String filePath, String importName) {
-        String query = "MATCH (f:File {path: $filePath}), (c:Import {name: $importName}) "
-                + "MERGE (f)-[:HAS_IMPORT]->(c)";
-        runQuery(query, Values.parameters("filePath", filePath, "importName", importName));
+        writes().mergeEdge(new NodeKey("File", "path", filePath), "HAS_IMPORT", new NodeKey("Import", "name", importName), false);
     }
 
     public static void FileToClass(String filePath, String className) {
-        String query = "MATCH (f:File {path: $filePath}), (c:Class {name: $className}) "
-                + "MERGE (f)-[:HAS_CLASS]->(c)";
-        runQuery(query, Values.parameters("filePath", filePath, "className", className));
+        writes().mergeEdge(new NodeKey("File", "path", filePath), "HAS_CLASS", new NodeKey("Class", "name", className), false);
     }
 
     public static void fileToPackage(String filePath, String pkgName) {
-        String query = "MATCH (f:File {path: $filePath}), (p:Pkg {name: $packageName}) "
-                + "MERGE (f)-[:IN_PACKAGE]->(p)";
-        runQuery(query, Values.parameters("filePath", filePath, "packageName", pkgName));
+        writes().mergeEdge(new NodeKey("File", "path", filePath), "IN_PACKAGE", new NodeKey("Pkg", "name", pkgName), false);
     }
 
     public static void DirToDir(String dirName1, String dirName2) {
-        String query = "MATCH (d1:Dir {path: $dirName1}), (d2:Dir {path: $dirName2}) "
-                + "MERGE (d1)-[:HAS_DIR]->(d2)";
-        runQuery(query, Values.parameters("dirName1", dirName1, "dirName2", dirName2));
+        writes().mergeEdge(new NodeKey("Dir", "path", dirName1), "HAS_DIR", new NodeKey("Dir", "path", dirName2), false);
     }
 
     public static void DirToFile(String dirName, String filePath) {
-        String query = "MATCH (d:Dir {path: $dirName}), (f:File {path: $filePath}) "
-                + "MERGE (d)-[:HAS_FILE]->(f)";
-        runQuery(query, Values.parameters("dirName", dirName, "filePath", filePath));
+        writes().mergeEdge(new NodeKey("Dir", "path", dirName), "HAS_FILE", new NodeKey("File", "path", filePath), false);
     }
 
     public static void ClassToMethod(String className, String methodName) {
-        String query = "MATCH (c:Class {name: $className}), (m:Method {name: $methodName}) "
-                + "MERGE (c)-[:HAS_METHOD]->(m)";
-        runQuery(query, Values.parameters("className", className, "methodName", methodName));
+        writes().mergeEdge(new NodeKey("Class", "name", className), "HAS_METHOD", new NodeKey("Method", "name", methodName), false);
     }
 
     public static void MethodCallsMethod(String callerName, String calleeName) {
-        String query = "MATCH (c:Method {name: $callerName}), (m:Method {name: $calleeName}) "
-                + "MERGE (c)-[:CALLS_METHOD]->(m)";
-        runQuery(query, Values.parameters("callerName", callerName, "calleeName", calleeName));
+        writes().mergeEdge(new NodeKey("Method", "name", callerName), "CALLS_METHOD", new NodeKey("Method", "name", calleeName), false);
     }
 
     public static void MethodUsesClass(String methodName, String className) {
-        String query = "MATCH (m:Method {name: $methodName}), (c:Class {name: $className}) "
-                + "MERGE (m)-[:USES_CLASS]->(c)";
-        runQuery(query, Values.parameters("methodName", methodName, "className", className));
+        writes().mergeEdge(new NodeKey("Method", "name", methodName), "USES_CLASS", new NodeKey("Class", "name", className), false);
     }
 
     public static void ConstructorUsesClass(String constructorName, String className) {
-        String query = "MATCH (m:Method {name: $constructorName}), (c:Class {name: $className}) "
-                + "MERGE (m)-[:USES_CLASS]->(c)";
-        runQuery(query, Values.parameters("constructorName", constructorName, "className", className));
+        MethodUsesClass(constructorName, className);
+    }
+
+    // alternating name, value; unlike Map.of, values may be null
+    private static Map<String, Object> props(Object... pairs) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            map.put((String) pairs[i], pairs[i + 1]);
+        }
+        return map;
     }
 
+    // ---------------------------------------------------------------
+    //                          Cypher
+    // ---------------------------------------------------------------
     public static void runQuery(String query, Value parameters) {
-        try (Session session = neo4jDriver.session()) {
-            session.run(query, parameters);
-        } catch (Exception e) {
-            System.err.println("Neo4j Query Error: " + e.getMessage());
+        CypherEvent event = new CypherEvent();
+        long start = System.nanoTime();
+        event.begin();
+        try {
+            queryRunner.run(query, parameters);
+        } finally {
+            writeLatency.observeSince(start);
+            event.end();
+            if (event.shouldCommit()) {
+                event.query = query;
+                event.parameters = parameters.size();
+                event.commit();
+            }
         }
     }
 
     public static void runQuery(String query) {
-        try (Session session = neo4jDriver.session()) {
-            session.run(query);
+        runQuery(query, Values.EmptyMap);
+    }
+
+    // null puts Neo4j back
+    public static void setQueryRunner(QueryRunner runner) {
+        queryRunner = runner == null ? DbClient::runOnNeo4j : runner;
+    }
+
+    // managed transaction, so transient failures (leader switch, deadlock) are retried by the driver
+    private static void runOnNeo4j(String query, Value parameters) {
+        try (Session session = writeSession()) {
+            session.executeWriteWithoutResult(tx -> tx.run(query, parameters).consume());
         } catch (Exception e) {
-            System.err.println("Neo4j Query Error:" + e.getMessage());
+            System.err.println("Neo4j Query Error: " + e.getMessage());
         }
     }
 
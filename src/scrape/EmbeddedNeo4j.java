@@ -0,0 +1,164 @@
+package scrape;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.neo4j.configuration.GraphDatabaseSettings;
+import org.neo4j.configuration.connectors.BoltConnector;
+import org.neo4j.configuration.helpers.SocketAddress;
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.dbms.api.DatabaseManagementServiceBuilder;
+import org.neo4j.driver.Value;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Result;
+import org.neo4j.graphdb.Transaction;
+
+/*
+ * Neo4j running inside this JVM, for single-team deployments that don't
+ * want to run a server. Chosen by connecting with a url of the form
+ *   embedded:<store dir>      (embedded: alone uses purple.neo4j.embedded.dir)
+ *
+ * Graph writes from ingestion go straight into the database through
+ * DbClient's QueryRunner seam, and the query path's reads (vector search,
+ * expansion, outlines, details) through read(), neither with a Bolt round
+ * trip. A Bolt connector is still opened on loopback so the remaining driver
+ * sessions (discovery, snapshots, deletes) and Embed.py keep working
+ * unchanged against the same store, vector index included.
+ *
+ *   purple.neo4j.embedded.dir        default store directory (purple-data/neo4j)
+ *   purple.neo4j.embedded.boltPort   loopback Bolt port (7688)
+ *   purple.neo4j.embedded.pageCache  page cache size, e.g. 512m (Neo4j's default when unset)
+ */
+public class EmbeddedNeo4j {
+
+    public static final String SCHEME = "embedded:";
+
+    private static final String DEFAULT_DIR = System.getProperty("purple.neo4j.embedded.dir", "purple-data/neo4j");
+    private static final int BOLT_PORT = Integer.getInteger("purple.neo4j.embedded.boltPort", 7688);
+    private static final String PAGE_CACHE = System.getProperty("purple.neo4j.embedded.pageCache");
+
+    // guarded by EmbeddedNeo4j.class; db is read without the lock on the write path
+    private static DatabaseManagementService dbms;
+    private static volatile GraphDatabaseService db;
+    private static Path storeDir;
+    private static boolean shutdownHookAdded = false;
+
+    private EmbeddedNeo4j() {
+        /* Utility class; no public constructor. */ }
+
+    public static boolean isEmbeddedUrl(String url) {
+        return url != null && url.startsWith(SCHEME);
+    }
+
+    public static Path storeDir(String url) {
+        String dir = url.substring(SCHEME.length()).trim();
+        return Paths.get(dir.isEmpty() ? DEFAULT_DIR : dir).toAbsolutePath();
+    }
+
+    // Starts (or keeps) the database on dir and returns the loopback Bolt url.
+    public static synchronized String start(Path dir) {
+        if (dbms != null && dir.equals(storeDir)) {
+            return boltUrl();
+        }
+        stop();
+
+        System.out.println("[EmbeddedNeo4j] starting in " + dir + " (bolt on 127.0.0.1:" + BOLT_PORT + ")");
+        long start = System.currentTimeMillis();
+        DatabaseManagementServiceBuilder builder = new DatabaseManagementServiceBuilder(dir)
+                .setConfig(BoltConnector.enabled, true)
+                .setConfig(BoltConnector.listen_address, new SocketAddress("127.0.0.1", BOLT_PORT))
+                .setConfig(GraphDatabaseSettings.auth_enabled, false);
+        if (PAGE_CACHE != null) {
+            builder.setConfig(GraphDatabaseSettings.pagecache_memory, parseBytes(PAGE_CACHE));
+        }
+        dbms = builder.build();
+        db = dbms.database(GraphDatabaseSettings.DEFAULT_DATABASE_NAME);
+        storeDir = dir;
+        if (!shutdownHookAdded) {
+            Runtime.getRuntime().addShutdownHook(new Thread(EmbeddedNeo4j::stop, "embedded-neo4j-shutdown"));
+            shutdownHookAdded = true;
+        }
+        System.out.println("[EmbeddedNeo4j] ready in " + (System.currentTimeMillis() - start) + " ms");
+        return boltUrl();
+    }
+
+    public static synchronized void stop() {
+        if (dbms == null) {
+            return;
+        }
+        System.out.println("[EmbeddedNeo4j] shutting down");
+        db = null;
+        dbms.shutdown();
+        dbms = null;
+        storeDir = null;
+    }
+
+    public static boolean isRunning() {
+        return db != null;
+    }
+
+    public static String boltUrl() {
+        return "bolt://127.0.0.1:" + BOLT_PORT;
+    }
+
+    // DbClient.QueryRunner for embedded mode: one in-process transaction per statement
+    static void run(String query, Value parameters) {
+        GraphDatabaseService database = db;
+        if (database == null) {
+            System.err.println("Neo4j Query Error: embedded database is not running");
+            return;
+        }
+        try {
+            database.executeTransactionally(query, parameters.asMap());
+        } catch (Exception e) {
+            System.err.println("Neo4j Query Error: " + e.getMessage());
+        }
+    }
+
+    /*
+     * A read in this JVM, for Neo4jGraphStore's readers: the rows as plain maps
+     * (Long, Double, String, List, Map), so queries must return values rather
+     * than nodes. timeoutMillis <= 0 means none. Null if the database isn't
+     * running; the caller then goes over Bolt.
+     */
+    public static List<Map<String, Object>> read(String query, Map<String, Object> parameters, long timeoutMillis) {
+        GraphDatabaseService database = db;
+        if (database == null) {
+            return null;
+        }
+        try (Transaction tx = timeoutMillis > 0 ? database.beginTx(timeoutMillis, TimeUnit.MILLISECONDS) : database.beginTx();
+                Result result = tx.execute(query, parameters)) {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            while (result.hasNext()) {
+                rows.add(new HashMap<>(result.next()));
+            }
+            return rows;
+        }
+    }
+
+    private static long parseBytes(String size) {
+        String s = size.trim().toLowerCase();
+        long unit = 1;
+        if (s.endsWith("k")) {
+            unit = 1L << 10;
+        } else if (s.endsWith("m")) {
+            unit = 1L << 20;
+        } else if (s.endsWith("g")) {
+            unit = 1L << 30;
+        }
+        return Long.parseLong(unit == 1 ? s : s.substring(0, s.length() - 1)) * unit;
+    }
+
+    public static synchronized JSONObject stats() {
+        return new JSONObject()
+                .put("running", dbms != null)
+                .put("storeDir", storeDir == null ? JSONObject.NULL : storeDir.toString())
+                .put("boltUrl", dbms == null ? JSONObject.NULL : boltUrl());
+    }
+}
@@ -0,0 +1,178 @@
+package scrape;
+
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONObject;
+import org.neo4j.driver.AccessMode;
+import org.neo4j.driver.AuthTokens;
+import org.neo4j.driver.Config;
+import org.neo4j.driver.Driver;
+import org.neo4j.driver.GraphDatabase;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.SessionConfig;
+
+/*
+ * Owns the one Neo4j driver. Connecting again with the same url/user/password
+ * keeps the existing driver (and its warm connection pool); only a config
+ * change builds a new one. Whether Neo4j is reachable is answered from a
+ * background heartbeat, so callers don't pay a round trip to find out.
+ *
+ * Tunables (system properties):
+ *   purple.neo4j.maxPoolSize               connections per driver (50)
+ *   purple.neo4j.acquisitionTimeoutMillis  wait for a pooled connection (10000)
+ *   purple.neo4j.connectionTimeoutMillis   TCP connect (5000)
+ *   purple.neo4j.maxRetryMillis            retry budget of managed transactions (15000)
+ *   purple.neo4j.fetchSize                 records pulled per batch (1000)
+ *   purple.neo4j.heartbeatMillis           health check period (5000)
+ */
+public class Neo4jConnection {
+
+    private static final int MAX_POOL_SIZE = Integer.getInteger("purple.neo4j.maxPoolSize", 50);
+    private static final long ACQUISITION_TIMEOUT_MS = Long.getLong("purple.neo4j.acquisitionTimeoutMillis", 10_000L);
+    private static final long CONNECTION_TIMEOUT_MS = Long.getLong("purple.neo4j.connectionTimeoutMillis", 5_000L);
+    private static final long MAX_RETRY_MS = Long.getLong("purple.neo4j.maxRetryMillis", 15_000L);
+    private static final int FETCH_SIZE = Integer.getInteger("purple.neo4j.fetchSize", 1000);
+    private static final long HEARTBEAT_MS = Long.getLong("purple.neo4j.heartbeatMillis", 5_000L);
+
+    // guarded by Neo4jConnection.class; read without the lock through the volatile
+    private static volatile Driver driver;
+    private static String url;
+    private static String user;
+    private static String password;
+
+    private static volatile boolean healthy = false;
+    private static volatile long lastCheckMillis = 0;
+    private static volatile String lastError = null;
+
+    private static ScheduledExecutorService heartbeat;
+
+    private Neo4jConnection() {
+        /* Utility class; no public constructor. */ }
+
+    // Same config as last time: keep the driver, just re-check it. Otherwise replace it.
+    public static Driver connect(String newUrl, String newUser, String newPassword) {
+        synchronized (Neo4jConnection.class) {
+            boolean sameConfig = driver != null
+                    && Objects.equals(url, newUrl)
+                    && Objects.equals(user, newUser)
+                    && Objects.equals(password, newPassword);
+            if (!sameConfig) {
+                close();
+                System.out.println("Connecting to Neo4j at: " + newUrl + " (user=" + newUser + ")");
+                driver = GraphDatabase.driver(newUrl, AuthTokens.basic(newUser, newPassword), config());
+                url = newUrl;
+                user = newUser;
+                password = newPassword;
+            }
+            startHeartbeat();
+        }
+        check();
+        return driver;
+    }
+
+    public static void close() {
+        synchronized (Neo4jConnection.class) {
+            Driver old = driver;
+            // cleared first so a heartbeat racing with close() doesn't report the closed pool
+            driver = null;
+            if (old != null) {
+                old.close();
+            }
+            url = null;
+            user = null;
+            password = null;
+            healthy = false;
+        }
+    }
+
+    public static Driver driver() {
+        return driver;
+    }
+
+    // last heartbeat result; no network
+    public static boolean isAvailable() {
+        return driver != null && healthy;
+    }
+
+    public static Session session(AccessMode mode) {
+        Driver d = driver;
+        if (d == null) {
+            throw new IllegalStateException("Neo4j driver not initialized. Call initNeo4jConnection() first.");
+        }
+        return d.session(SessionConfig.builder()
+                .withDefaultAccessMode(mode)
+                .withFetchSize(FETCH_SIZE)
+                .build());
+    }
+
+    private static Config config() {
+        return Config.builder()
+                .withMaxConnectionPoolSize(MAX_POOL_SIZE)
+                .withConnectionAcquisitionTimeout(ACQUISITION_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .withConnectionTimeout(CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .withMaxTransactionRetryTime(MAX_RETRY_MS, TimeUnit.MILLISECONDS)
+                .withFetchSize(FETCH_SIZE)
+                .build();
+    }
+
+    // ---------------------------------------------------------------
+    //                          heartbeat
+    // ---------------------------------------------------------------
+    private static void startHeartbeat() {
+        if (heartbeat != null) {
+            return;
+        }
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "neo4j-heartbeat");
+            t.setDaemon(true);
+            return t;
+        });
+        heartbeat.scheduleWithFixedDelay(Neo4jConnection::check, HEARTBEAT_MS, HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    // Only state changes are logged, so a dead server doesn't flood the log every few seconds.
+    static boolean check() {
+        Driver d = driver;
+        if (d == null) {
+            return false;
+        }
+        boolean ok;
+        String error = null;
+        try {
+            d.verifyConnectivity();
+            ok = true;
+        } catch (Exception e) {
+            ok = false;
+            error = e.getMessage();
+        }
+        if (d != driver) {
+            return false; // replaced while we were checking; its own check will report
+        }
+        if (ok != healthy || (!ok && lastCheckMillis == 0)) {
+            if (ok) {
+                System.out.println("[Neo4jConnection] Neo4j reachable");
+            } else {
+                System.err.println("Neo4j unavailable: " + error);
+            }
+        }
+        healthy = ok;
+        lastError = error;
+        lastCheckMillis = System.currentTimeMillis();
+        return ok;
+    }
+
+    public static JSONObject stats() {
+        long last = lastCheckMillis;
+        return new JSONObject()
+                .put("initialized", driver != null)
+                .put("healthy", isAvailable())
+                .put("lastCheckAgoMs", last == 0 ? -1 : System.currentTimeMillis() - last)
+                .put("lastError", lastError == null ? JSONObject.NULL : lastError)
+                .put("maxPoolSize", MAX_POOL_SIZE)
+                .put("fetchSize", FETCH_SIZE)
+                .put("heartbeatMillis", HEARTBEAT_MS);
+    }
+}
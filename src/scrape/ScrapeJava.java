@@ -1,12 +1,19 @@
 package scrape;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;              // <-- Our unified AI client
-import java.io.FileInputStream;      // <-- Holds the front-end config (llmProvider, llmModel, etc.)
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Stream;
 
@@ -14,20 +21,30 @@ import com.github.javaparser.JavaParser;
 import com.github.javaparser.ParserConfiguration;
 import com.github.javaparser.StaticJavaParser;
 import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.ImportDeclaration;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.CallableDeclaration;
 import com.github.javaparser.ast.body.ClassOrInterfaceDeclaration;
 import com.github.javaparser.ast.body.ConstructorDeclaration;
 import com.github.javaparser.ast.body.FieldDeclaration;
 import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.ast.expr.MethodCallExpr;
 import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.type.Type;
 import com.github.javaparser.ast.visitor.VoidVisitorAdapter;
-import com.github.javaparser.resolution.UnsolvedSymbolException;
 import com.github.javaparser.resolution.types.ResolvedType;
 import com.github.javaparser.symbolsolver.JavaSymbolSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
 import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
 
+import scrape.UnresolvedSymbols.Kind;
+import store.BlobStore;
+import trace.Metrics;
+import trace.ScrapeFileEvent;
+
 public class ScrapeJava {
 
     private static PrintWriter errorLogWriter;
@@ -36,6 +53,11 @@ public class ScrapeJava {
     private static CompilationUnit cu;
     private static JavaParser psr;
 
+    private static final Metrics.Counter filesScraped = Metrics.counter("purple_ingest_files_total", "Java files scraped");
+    private static final Metrics.Counter bytesScraped = Metrics.counter("purple_ingest_bytes_total", "Bytes of Java source scraped");
+    private static final Metrics.Histogram fileLatency = Metrics.histogram("purple_ingest_file_seconds",
+            "Parse, resolve and graph writes per Java file");
+
     // --------------------------------------
     // A. init solver 
     // --------------------------------------
@@ -54,6 +76,7 @@ public class ScrapeJava {
             System.err.println("Failed to initialize error loading log: " + e.getMessage());
         }
         loadLogWriter.println("Turning your files into a graph");
+        UnresolvedSymbols.reset();
 
         AtomicBoolean foundSource = new AtomicBoolean(false);
         Path root = projectRoot.toPath();
@@ -96,6 +119,10 @@ public class ScrapeJava {
 
     public static void processJavaFile(File file) {
 
+        ScrapeFileEvent event = new ScrapeFileEvent();
+        long start = System.nanoTime();
+        event.begin();
+
         String filePath = file.getAbsolutePath();
         DbClient.insertFile(filePath, "java");
 
@@ -105,7 +132,11 @@ public class ScrapeJava {
         String parentDir = file.getParentFile().getAbsolutePath();
         DbClient.DirToFile(parentDir, filePath);
 
-        try (FileInputStream in = new FileInputStream(file)) {
+        byte[] source = null;
+        try {
+            // kept for slicing method code out by line range
+            source = Files.readAllBytes(file.toPath());
+            ByteArrayInputStream in = new ByteArrayInputStream(source);
 
             JavaSymbolSolver symbolSolver = new JavaSymbolSolver(globalTypeSolver);
             ParserConfiguration config = new ParserConfiguration().setSymbolResolver(symbolSolver);
@@ -116,13 +147,16 @@ public class ScrapeJava {
                 psr = new JavaParser();
             }
 
+            long parseStart = System.nanoTime();
             cu = psr.parse(in).getResult().orElse(null);
             symbolSolver.inject(cu);
+            event.parseNanos = System.nanoTime() - parseStart;
 
             if (cu == null) {
                 errorLogWriter.println("FAILED to parse jave file at AST stage: " + file.getName());
                 return;
             }
+            event.parsed = true;
 
             cu.getPackageDeclaration().ifPresent(pkg -> {
                 String pkgName = pkg.getNameAsString();
@@ -136,35 +170,109 @@ public class ScrapeJava {
                 DbClient.FileToImport(filePath, name);
             });
 
-            cu.accept(new FullASTVisitor(filePath), null);
+            long resolveStart = System.nanoTime();
+            cu.accept(new FullASTVisitor(filePath, source), null);
+            event.resolveNanos = System.nanoTime() - resolveStart;
 
         } catch (Exception e) {
             errorLogWriter.println("ERROR parsing Java: " + e.getMessage());
+        } finally {
+            long bytes = source != null ? source.length : file.length();
+            fileLatency.observeSince(start);
+            filesScraped.inc();
+            bytesScraped.add(bytes);
+            event.end();
+            if (event.shouldCommit()) {
+                event.path = filePath;
+                event.bytes = bytes;
+                event.commit();
+            }
+        }
+    }
+
+    // end of a run: what didn't resolve, totalled, instead of a line per failure
+    public static void reportUnresolved() {
+        UnresolvedSymbols.report(errorLogWriter);
+        if (UnresolvedSymbols.total() > 0) {
+            loadLogWriter.println(UnresolvedSymbols.total() + " symbols could not be resolved (see scrape_errors.log)");
         }
     }
 
     private static class FullASTVisitor extends VoidVisitorAdapter<Void> {
 
         private final String filePath;
+        private final byte[] source;
+        private int[] lineStarts;
+        // simple name -> qualified name, from the file's single-type imports
+        private final Map<String, String> imports = new HashMap<>();
         private ClassOrInterfaceDeclaration currentClassOrInterface = null;
         private MethodDeclaration currentMethod = null;
         private Object currentExecutable = null;
 
-        public FullASTVisitor(String filePath) {
+        // resolved once per declaration instead of at every name and call inside it; null if it didn't resolve
+        private String currentMethodSignature = null;
+        private String currentExecutableSignature = null;
+        // declared types by name, built on first use; a null type is a local declared with var or untyped
+        private Map<String, Type> fields = null;
+        private Map<String, Type> locals = null;
+        // locals declared more than once in the executable (separate blocks, lambdas, local classes):
+        // which one a use means depends on its block, so they're never answered from the cache
+        private Set<String> redeclared = null;
+        // name/arity of calls that failed in this class, so successful calls never pay for a text key
+        private Set<String> failedCallNames = new HashSet<>();
+
+        public FullASTVisitor(String filePath, byte[] source) {
             this.filePath = filePath;
+            this.source = source;
+            for (ImportDeclaration importDecl : cu.getImports()) {
+                if (!importDecl.isStatic() && !importDecl.isAsterisk()) {
+                    imports.put(importDecl.getName().getIdentifier(), importDecl.getNameAsString());
+                }
+            }
         }
 
+        // The declaration's lines exactly as written in the file, into the blob store; returns the hash.
+        private String storeCode(Node decl) {
+            if (lineStarts == null) {
+                lineStarts = lineStarts(source);
+            }
+            int startLine = decl.getRange().get().begin.line;
+            int endLine = decl.getRange().get().end.line;
+            int from = lineStarts[startLine - 1];
+            int to = endLine < lineStarts.length ? lineStarts[endLine] : source.length;
+            while (to > from && (source[to - 1] == '\n' || source[to - 1] == '\r')) {
+                to--;
+            }
+            return BlobStore.put(source, from, to - from);
+        }
+
+        // A nested or local class swaps in its own class state and hands the outer one back when it ends.
         @Override
         public void visit(ClassOrInterfaceDeclaration classDecl, Void arg) {
+            ClassOrInterfaceDeclaration outerClass = currentClassOrInterface;
+            Map<String, Type> outerFields = fields;
+            Set<String> outerFailedCallNames = failedCallNames;
             currentClassOrInterface = classDecl;
+            fields = null;
+            failedCallNames = new HashSet<>();
+            try {
+                visitClass(classDecl, arg);
+            } finally {
+                currentClassOrInterface = outerClass;
+                fields = outerFields;
+                failedCallNames = outerFailedCallNames;
+            }
+        }
+
+        private void visitClass(ClassOrInterfaceDeclaration classDecl, Void arg) {
             final String classId = sanitaizeId(currentClassOrInterface.resolve().getQualifiedName());
 
             DbClient.insertClass(classId);
             DbClient.FileToClass(filePath, classId);
 
             currentClassOrInterface.getExtendedTypes().forEach(extendedType -> {
-                try {
-                    ResolvedType resolvedExtendedType = extendedType.resolve();
+                ResolvedType resolvedExtendedType = resolveType(extendedType);
+                if (resolvedExtendedType != null) {
                     String extendedTypeQualifiedName;
                     if (resolvedExtendedType.isReferenceType()) {
                         extendedTypeQualifiedName = resolvedExtendedType.asReferenceType().getQualifiedName();
@@ -172,14 +280,12 @@ public class ScrapeJava {
                         extendedTypeQualifiedName = resolvedExtendedType.describe();
                     }
                     DbClient.ClassExtendsClass(classId, extendedTypeQualifiedName);
-                } catch (Exception e) {
-                    errorLogWriter.println("Error resolving extended type '" + extendedType.getNameAsString() + " : " + e.getMessage());
                 }
             });
 
             currentClassOrInterface.getImplementedTypes().forEach(implementedType -> {
-                try {
-                    ResolvedType resolvedImplementedType = implementedType.resolve();
+                ResolvedType resolvedImplementedType = resolveType(implementedType);
+                if (resolvedImplementedType != null) {
                     String implementedTypeQualifiedName;
                     if (resolvedImplementedType.isReferenceType()) {
                         implementedTypeQualifiedName = resolvedImplementedType.asReferenceType().getQualifiedName();
@@ -187,22 +293,40 @@ public class ScrapeJava {
                         implementedTypeQualifiedName = resolvedImplementedType.describe();
                     }
                     DbClient.ClassImplementsClass(classId, implementedTypeQualifiedName);
-                } catch (Exception e) {
-                    errorLogWriter.println("Error resolving implemented type '" + implementedType.getNameAsString() + " : " + e.getMessage());
                 }
             });
             super.visit(classDecl, arg);
         }
 
+        // Likewise for a method or constructor, which may sit in an anonymous or local class inside another.
         @Override
         public void visit(MethodDeclaration methodDecl, Void arg) {
+            Object outerExecutable = currentExecutable;
+            MethodDeclaration outerMethod = currentMethod;
+            String outerMethodSignature = currentMethodSignature;
+            String outerExecutableSignature = currentExecutableSignature;
+            Map<String, Type> outerLocals = locals;
+            Set<String> outerRedeclared = redeclared;
+            try {
+                visitMethod(methodDecl, arg);
+            } finally {
+                currentExecutable = outerExecutable;
+                currentMethod = outerMethod;
+                currentMethodSignature = outerMethodSignature;
+                currentExecutableSignature = outerExecutableSignature;
+                locals = outerLocals;
+                redeclared = outerRedeclared;
+            }
+        }
+
+        private void visitMethod(MethodDeclaration methodDecl, Void arg) {
             currentExecutable = methodDecl;
             currentMethod = methodDecl;
-            String currentMethodSignature = "";
-            try {
-                currentMethodSignature = methodDecl.resolve().getQualifiedSignature();
-            } catch (UnsolvedSymbolException e) {
-                errorLogWriter.println("UnsolvedSymbolException: cannot resolve method" + currentMethod + " : " + e.getMessage());
+            locals = null;
+            redeclared = null;
+            currentMethodSignature = signature(methodDecl);
+            currentExecutableSignature = currentMethodSignature;
+            if (currentMethodSignature == null) {
                 return;
             }
 
@@ -210,10 +334,10 @@ public class ScrapeJava {
 
             int startLine = methodDecl.getRange().get().begin.line;
             int endLine = methodDecl.getRange().get().end.line;
-            String methodCode = methodDecl.getSignature().asString() + methodDecl.getBody().map(b -> b.toString()).orElse("");
+            String codeHash = storeCode(methodDecl);
             String simpleMethodName = methodDecl.getNameAsString() + "()";
 
-            DbClient.insertMethod(methodId, simpleMethodName, filePath, startLine, endLine, methodCode);
+            DbClient.insertMethod(methodId, simpleMethodName, filePath, startLine, endLine, codeHash);
             DbClient.ClassToMethod(currentClassOrInterface.resolve().getQualifiedName(), methodId);
 
             super.visit(methodDecl, arg);
@@ -221,23 +345,37 @@ public class ScrapeJava {
 
         @Override
         public void visit(ConstructorDeclaration constructorDecl, Void arg) {
-            currentExecutable = constructorDecl;
-            String constructorSignature = "";
+            Object outerExecutable = currentExecutable;
+            String outerExecutableSignature = currentExecutableSignature;
+            Map<String, Type> outerLocals = locals;
+            Set<String> outerRedeclared = redeclared;
             try {
-                constructorSignature = constructorDecl.resolve().getQualifiedSignature();
-            } catch (UnsolvedSymbolException e) {
-                errorLogWriter.println("UnsolvedSymbolException: cannot resolve constructor " + constructorDecl + " : " + e.getMessage());
+                visitConstructor(constructorDecl, arg);
+            } finally {
+                currentExecutable = outerExecutable;
+                currentExecutableSignature = outerExecutableSignature;
+                locals = outerLocals;
+                redeclared = outerRedeclared;
+            }
+        }
+
+        private void visitConstructor(ConstructorDeclaration constructorDecl, Void arg) {
+            currentExecutable = constructorDecl;
+            locals = null;
+            redeclared = null;
+            currentExecutableSignature = signature(constructorDecl);
+            if (currentExecutableSignature == null) {
                 return;
             }
 
-            String constructorId = sanitaizeId(constructorSignature);
+            String constructorId = sanitaizeId(currentExecutableSignature);
 
             int startLine = constructorDecl.getRange().get().begin.line;
             int endLine = constructorDecl.getRange().get().end.line;
-            String constructorCode = constructorDecl.getSignature().asString() + (constructorDecl.getBody() != null ? constructorDecl.getBody().toString() : "");
+            String codeHash = storeCode(constructorDecl);
             String simpleConstructorName = constructorDecl.getNameAsString() + "()";
 
-            DbClient.insertConstructor(constructorId, simpleConstructorName, filePath, startLine, endLine, constructorCode);
+            DbClient.insertConstructor(constructorId, simpleConstructorName, filePath, startLine, endLine, codeHash);
             DbClient.ClassToConstructor(currentClassOrInterface.resolve().getQualifiedName(), constructorId);
 
             super.visit(constructorDecl, arg);
@@ -256,18 +394,14 @@ public class ScrapeJava {
                     String typeString = varDecl.getType().asString();
                     DbClient.ClassToField(className, variableName, typeString, initialValue);
                 } else {
-                    try {
-                        ResolvedType resolvedType = varDecl.getType().resolve();
-                        if (resolvedType.isReferenceType()) {
-                            String qualifiedName = resolvedType.asReferenceType().getQualifiedName();
-                            if (qualifiedName.startsWith("java.") || qualifiedName.startsWith("javax.")) {
-                                DbClient.ClassToField(className, variableName, qualifiedName, initialValue);
-                            } else {
-                                DbClient.ClassToFieldToClass(className, variableName, qualifiedName, initialValue);
-                            }
+                    ResolvedType resolvedType = resolveType(varDecl.getType());
+                    if (resolvedType != null && resolvedType.isReferenceType()) {
+                        String qualifiedName = resolvedType.asReferenceType().getQualifiedName();
+                        if (qualifiedName.startsWith("java.") || qualifiedName.startsWith("javax.")) {
+                            DbClient.ClassToField(className, variableName, qualifiedName, initialValue);
+                        } else {
+                            DbClient.ClassToFieldToClass(className, variableName, qualifiedName, initialValue);
                         }
-                    } catch (Exception e) {
-                        errorLogWriter.println("Error resolving type for field " + variableName + " : " + e.getMessage());
                     }
                 }
             }
@@ -278,31 +412,22 @@ public class ScrapeJava {
         @Override
         public void visit(NameExpr nameExpr, Void arg) {
             if (currentExecutable != null) {
-                try {
-                    ResolvedType resolvedType = nameExpr.calculateResolvedType();
-                    if (resolvedType.isReferenceType()) {
-                        String typeQualifiedName = resolvedType.asReferenceType().getQualifiedName();
-                        if (!(typeQualifiedName.startsWith("java.") || typeQualifiedName.startsWith("javax."))) {
+                ResolvedType resolvedType = resolveName(nameExpr);
+                if (resolvedType != null && resolvedType.isReferenceType()) {
+                    String typeQualifiedName = resolvedType.asReferenceType().getQualifiedName();
+                    if (!(typeQualifiedName.startsWith("java.") || typeQualifiedName.startsWith("javax."))) {
 
-                            DbClient.insertClass(typeQualifiedName);
+                        DbClient.insertClass(typeQualifiedName);
 
-                            String callerSignature;
-                            String callerId;
+                        if (currentExecutableSignature != null) {
+                            String callerId = sanitaizeId(currentExecutableSignature);
                             if (currentExecutable instanceof MethodDeclaration) {
-                                callerSignature = ((MethodDeclaration) currentExecutable).resolve().getQualifiedSignature();
-                                callerId = sanitaizeId(callerSignature);
                                 DbClient.MethodUsesClass(callerId, typeQualifiedName);
                             } else if (currentExecutable instanceof ConstructorDeclaration) {
-                                callerSignature = ((ConstructorDeclaration) currentExecutable).resolve().getQualifiedSignature();
-                                callerId = sanitaizeId(callerSignature);
                                 DbClient.ConstructorUsesClass(callerId, typeQualifiedName);
-                            } else {
-                                callerSignature = "unknown";
                             }
                         }
                     }
-                } catch (Exception e) {
-                    errorLogWriter.println("Error resolving variable usage '" + nameExpr + " : " + e.getMessage());
                 }
             }
             super.visit(nameExpr, arg);
@@ -312,30 +437,229 @@ public class ScrapeJava {
         public void visit(MethodCallExpr methodCall, Void arg) {
             if (currentMethod != null) {
 
-                String calledMethodSignature = "";
-                String currentMethodSignature = "";
+                String calledMethodSignature = resolveCall(methodCall);
 
-                try {
-                    calledMethodSignature = methodCall.resolve().getQualifiedSignature();
-                } catch (UnsolvedSymbolException e) {
-                    errorLogWriter.println("UnsolvedSymbolException: cannot resolve method call " + methodCall + " : " + e.getMessage());
+                if (calledMethodSignature != null && currentMethodSignature != null) {
+                    String currentMethodId = sanitaizeId(currentMethodSignature);
+                    String calledMethodId = sanitaizeId(calledMethodSignature);
+                    DbClient.insertMethod(calledMethodId);
+                    DbClient.MethodCallsMethod(currentMethodId, calledMethodId);
                 }
+            }
+        }
+
+        // ---------------------------------------------------------------
+        //      resolution, skipping what already failed this run
+        // ---------------------------------------------------------------
+        private String signature(CallableDeclaration<?> decl) {
+            try {
+                return (decl instanceof MethodDeclaration method ? method.resolve() : ((ConstructorDeclaration) decl).resolve())
+                        .getQualifiedSignature();
+            } catch (RuntimeException e) {
+                // each declaration is visited once, so there's nothing to skip next time; just counted
+                UnresolvedSymbols.failed(Kind.DECLARATION, "declaration:" + classKey() + "#" + decl.getDeclarationAsString(),
+                        classKey() + "." + decl.getNameAsString(), e);
+                return null;
+            }
+        }
 
-                try {
-                    currentMethodSignature = currentMethod.resolve().getQualifiedSignature();
-                } catch (UnsolvedSymbolException e) {
-                    errorLogWriter.println("UnsolvedSymbolException: cannot resolve method call " + currentMethod + " : " + e.getMessage());
+        private ResolvedType resolveType(Type type) {
+            String key = typeKey(type);
+            if (UnresolvedSymbols.known(Kind.TYPE, key)) {
+                return null;
+            }
+            try {
+                return type.resolve();
+            } catch (RuntimeException e) {
+                UnresolvedSymbols.failed(Kind.TYPE, key, type.asString(), e);
+                return null;
+            }
+        }
+
+        private ResolvedType resolveName(NameExpr nameExpr) {
+            String name = nameExpr.getNameAsString();
+            Type declared = declaredType(nameExpr);
+            if (declared != null && UnresolvedSymbols.known(Kind.NAME, typeKey(declared))) {
+                return null;
+            }
+            String key = "name:" + (locals().containsKey(name) ? executableKey() : classKey()) + "#" + name;
+            if (!redeclared().contains(name) && UnresolvedSymbols.known(Kind.NAME, key)) {
+                return null;
+            }
+            try {
+                return nameExpr.calculateResolvedType();
+            } catch (RuntimeException e) {
+                UnresolvedSymbols.failed(Kind.NAME, key, name, e);
+                if (declared != null) {
+                    // learns whether the declared type is the cause, for every other use of it
+                    resolveType(declared);
                 }
+                return null;
+            }
+        }
 
-                String currentMethodId = sanitaizeId(currentMethodSignature);
-                String calledMethodId = sanitaizeId(calledMethodSignature);
+        private String resolveCall(MethodCallExpr methodCall) {
+            // a call on or with a variable whose declared type doesn't resolve can't resolve either
+            List<Expression> operands = new ArrayList<>(methodCall.getArguments());
+            methodCall.getScope().ifPresent(operands::add);
+            for (Expression operand : operands) {
+                Type declared = declaredType(operand);
+                if (declared != null && UnresolvedSymbols.known(Kind.CALL, typeKey(declared))) {
+                    return null;
+                }
+            }
 
-                if (calledMethodId != "") {
-                    DbClient.insertMethod(calledMethodId);
-                    DbClient.MethodCallsMethod(currentMethodId, calledMethodId);
+            String shape = methodCall.getNameAsString() + "/" + methodCall.getArguments().size();
+            String key = null;
+            if (failedCallNames.contains(shape)) {
+                key = callKey(methodCall);
+                if (!usesRedeclared(methodCall) && UnresolvedSymbols.known(Kind.CALL, key)) {
+                    return null;
+                }
+            }
+            try {
+                return methodCall.resolve().getQualifiedSignature();
+            } catch (RuntimeException e) {
+                failedCallNames.add(shape);
+                UnresolvedSymbols.failed(Kind.CALL, key != null ? key : callKey(methodCall), methodCall.toString(), e);
+                for (Expression operand : operands) {
+                    Type declared = declaredType(operand);
+                    if (declared != null) {
+                        resolveType(declared);
+                    }
+                }
+                return null;
+            }
+        }
+
+        // the call as written, within its method if it involves a local, else within the class
+        private String callKey(MethodCallExpr methodCall) {
+            boolean local = false;
+            for (NameExpr name : methodCall.findAll(NameExpr.class)) {
+                local |= locals().containsKey(name.getNameAsString());
+            }
+            return "call:" + (local ? executableKey() : classKey()) + "#" + methodCall;
+        }
+
+        private boolean usesRedeclared(MethodCallExpr methodCall) {
+            if (redeclared().isEmpty()) {
+                return false;
+            }
+            for (NameExpr name : methodCall.findAll(NameExpr.class)) {
+                if (redeclared.contains(name.getNameAsString())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /*
+         * Run-wide once the name is qualified, in the code or by a single-type
+         * import, since the type solver is the same for every file; otherwise
+         * (same-package, on-demand imports, type variables, generics) only
+         * within the class.
+         */
+        private String typeKey(Type type) {
+            Type element = type.getElementType();
+            if (element.isClassOrInterfaceType() && type.asString().indexOf('<') < 0) {
+                String name = element.asClassOrInterfaceType().getNameWithScope();
+                int dot = name.indexOf('.');
+                String head = dot < 0 ? name : name.substring(0, dot);
+                String imported = imports.get(head);
+                if (imported != null) {
+                    return "type:" + imported + name.substring(head.length());
+                }
+                if (dot > 0 && Character.isLowerCase(head.charAt(0))) {
+                    return "type:" + name;
+                }
+            }
+            return "type:" + classKey() + "#" + type.asString();
+        }
+
+        // what a plain name is declared as in this method or class, without resolving anything
+        private Type declaredType(Expression expr) {
+            if (!expr.isNameExpr()) {
+                return null;
+            }
+            String name = expr.asNameExpr().getNameAsString();
+            if (redeclared().contains(name)) {
+                return null;
+            }
+            if (locals().containsKey(name)) {
+                return locals().get(name);
+            }
+            return fields().get(name);
+        }
+
+        private Map<String, Type> locals() {
+            if (locals == null) {
+                locals = new HashMap<>();
+                redeclared = new HashSet<>();
+                if (currentExecutable instanceof Node executable) {
+                    for (Parameter parameter : executable.findAll(Parameter.class)) {
+                        Type type = parameter.getType();
+                        declareLocal(parameter.getNameAsString(), type.isUnknownType() || type.isVarType() ? null : type);
+                    }
+                    for (VariableDeclarator variable : executable.findAll(VariableDeclarator.class)) {
+                        Type type = variable.getType();
+                        declareLocal(variable.getNameAsString(), type.isVarType() ? null : type);
+                    }
+                }
+            }
+            return locals;
+        }
+
+        private void declareLocal(String name, Type type) {
+            if (locals.containsKey(name)) {
+                redeclared.add(name);
+            }
+            locals.put(name, type);
+        }
+
+        private Set<String> redeclared() {
+            locals();
+            return redeclared;
+        }
+
+        private Map<String, Type> fields() {
+            if (fields == null) {
+                fields = new HashMap<>();
+                if (currentClassOrInterface != null) {
+                    for (FieldDeclaration field : currentClassOrInterface.getFields()) {
+                        for (VariableDeclarator variable : field.getVariables()) {
+                            fields.put(variable.getNameAsString(), variable.getType());
+                        }
+                    }
+                }
+            }
+            return fields;
+        }
+
+        private String classKey() {
+            return currentClassOrInterface == null ? filePath
+                    : currentClassOrInterface.getFullyQualifiedName().orElse(filePath + "#" + currentClassOrInterface.getNameAsString());
+        }
+
+        private String executableKey() {
+            Node executable = (Node) currentExecutable;
+            return classKey() + "@" + executable.getBegin().map(p -> p.line + ":" + p.column).orElse("?");
+        }
+    }
+
+    // byte offset of each line's first byte; line breaks counted the way JavaParser numbers lines (\n, \r\n, \r)
+    private static int[] lineStarts(byte[] source) {
+        int[] starts = new int[64];
+        int lines = 1;
+        for (int i = 0; i < source.length; i++) {
+            byte b = source[i];
+            if (b == '\n' || (b == '\r' && (i + 1 == source.length || source[i + 1] != '\n'))) {
+                if (lines == starts.length) {
+                    starts = Arrays.copyOf(starts, lines * 2);
                 }
+                starts[lines++] = i + 1;
             }
         }
+        return Arrays.copyOf(starts, lines);
     }
 
     private static String sanitaizeId(String id) {
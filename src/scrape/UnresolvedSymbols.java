@@ -0,0 +1,135 @@
+package scrape;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import trace.Metrics;
+
+/*
+ * What the symbol solver couldn't resolve during one ingest run. Each miss is
+ * remembered under a key naming the symbol as the code writes it, scoped as
+ * narrowly as its meaning can vary (a fully qualified type: the whole run; a
+ * local variable: its method; anything else: its class or file). The visitor
+ * checks the key first and skips the solver on a repeat, since with a fixed
+ * type solver the same symbol fails the same way again, and building and
+ * unwinding the exception is most of the cost. Projects whose dependencies
+ * aren't on the solver hit the same few symbols thousands of times.
+ *
+ * Misses are counted instead of logged one by one; report() writes the run's
+ * totals and most frequent symbols to the scrape error log.
+ */
+public class UnresolvedSymbols {
+
+    public enum Kind {
+        TYPE, NAME, CALL, DECLARATION
+    }
+
+    private static final int REPORT_TOP = 20;
+
+    private static final Map<String, Miss> misses = new ConcurrentHashMap<>();
+    private static final Map<Kind, AtomicLong> failed = new EnumMap<>(Kind.class);
+    private static final Map<Kind, AtomicLong> skipped = new EnumMap<>(Kind.class);
+    private static final Map<Kind, Metrics.Counter> unresolvedTotal = new EnumMap<>(Kind.class);
+    private static final Map<Kind, Metrics.Counter> skippedTotal = new EnumMap<>(Kind.class);
+
+    static {
+        for (Kind kind : Kind.values()) {
+            String label = kind.name().toLowerCase();
+            failed.put(kind, new AtomicLong());
+            skipped.put(kind, new AtomicLong());
+            unresolvedTotal.put(kind, Metrics.counter("purple_ingest_unresolved_total",
+                    "Symbols the solver couldn't resolve during ingest, repeats included", "kind", label));
+            skippedTotal.put(kind, Metrics.counter("purple_ingest_resolve_skipped_total",
+                    "Resolutions skipped because the symbol already failed this run", "kind", label));
+        }
+    }
+
+    private static final class Miss {
+        final Kind kind;
+        final String symbol;
+        final String reason;
+        final AtomicLong count = new AtomicLong(1);
+
+        Miss(Kind kind, String symbol, String reason) {
+            this.kind = kind;
+            this.symbol = symbol;
+            this.reason = reason;
+        }
+    }
+
+    private UnresolvedSymbols() {
+        /* Utility class; no public constructor. */ }
+
+    // a new run: new source roots may make earlier misses resolvable
+    public static void reset() {
+        misses.clear();
+        for (Kind kind : Kind.values()) {
+            failed.get(kind).set(0);
+            skipped.get(kind).set(0);
+        }
+    }
+
+    // true if key already failed this run; the caller then skips resolving it
+    static boolean known(Kind kind, String key) {
+        Miss miss = misses.get(key);
+        if (miss == null) {
+            return false;
+        }
+        miss.count.incrementAndGet();
+        skipped.get(kind).incrementAndGet();
+        skippedTotal.get(kind).inc();
+        unresolvedTotal.get(kind).inc();
+        return true;
+    }
+
+    // symbol: how the report names it; e: what the solver threw
+    static void failed(Kind kind, String key, String symbol, Exception e) {
+        Miss miss = misses.putIfAbsent(key, new Miss(kind, symbol, reason(e)));
+        if (miss != null) {
+            miss.count.incrementAndGet();
+        }
+        failed.get(kind).incrementAndGet();
+        unresolvedTotal.get(kind).inc();
+    }
+
+    public static long total() {
+        long total = 0;
+        for (Kind kind : Kind.values()) {
+            total += failed.get(kind).get() + skipped.get(kind).get();
+        }
+        return total;
+    }
+
+    public static void report(PrintWriter out) {
+        if (total() == 0) {
+            return;
+        }
+        out.println("\nUNRESOLVED SYMBOLS THIS RUN (occurrences / sent to the solver / distinct)");
+        for (Kind kind : Kind.values()) {
+            long tried = failed.get(kind).get();
+            long all = tried + skipped.get(kind).get();
+            if (all > 0) {
+                long distinct = misses.values().stream().filter(m -> m.kind == kind).count();
+                out.println("  " + kind.name().toLowerCase() + ": " + all + " / " + tried + " / " + distinct);
+            }
+        }
+        List<Miss> top = new ArrayList<>(misses.values());
+        top.sort((a, b) -> Long.compare(b.count.get(), a.count.get()));
+        out.println("  most frequent:");
+        for (Miss miss : top.subList(0, Math.min(REPORT_TOP, top.size()))) {
+            out.println("    " + miss.count.get() + "x " + miss.kind.name().toLowerCase() + " " + miss.symbol
+                    + " : " + miss.reason);
+        }
+        out.flush();
+    }
+
+    private static String reason(Exception e) {
+        String message = e.getMessage();
+        return e.getClass().getSimpleName() + (message == null ? "" : ": " + message.lines().findFirst().orElse(""));
+    }
+}
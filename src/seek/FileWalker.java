@@ -53,6 +53,7 @@ public class FileWalker {
                 return FileVisitResult.CONTINUE;
             }
         });
+        ScrapeJava.reportUnresolved();
     }
 
     private static String getFileExtension(String fileName) {
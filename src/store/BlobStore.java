@@ -0,0 +1,283 @@
+package store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import org.json.JSONObject;
+
+/*
+ * Method source, off the graph. Ingest slices each method out of the file's
+ * own bytes and puts it here; the Method node keeps only its SHA-256
+ * (HASH_PROPERTY), so neither store drags source through memory or the page
+ * cache when it walks the graph. Node details and the embedders read the code
+ * back by hash.
+ *
+ * Blobs are appended to pack files in -Dpurple.blob.dir (default
+ * purple-data/blobs), little-endian:
+ *
+ *   pack-N.blob: (sha256:32 bytes, length:int, content)*
+ *
+ * and read through a read-only mapping of the pack, remapped when a read
+ * lands past what was mapped. Opening walks the record headers to rebuild the
+ * hash index, cutting off a record left half-written by a crash. Content
+ * addressing makes a put of known code a no-op, so projects and re-ingests
+ * share their blobs; nothing is ever removed.
+ */
+public class BlobStore {
+
+    public static final String HASH_PROPERTY = "code_hash";
+
+    private static final Path DIR = Path.of(System.getProperty("purple.blob.dir", "purple-data/blobs"));
+    // offsets stay ints, so a pack never outgrows a single mapping
+    private static final long PACK_BYTES = Math.min(Long.getLong("purple.blob.packBytes", 256L << 20), 1L << 30);
+    private static final String PREFIX = "pack-";
+    private static final String SUFFIX = ".blob";
+    private static final int HASH_BYTES = 32;
+    private static final int HEADER = HASH_BYTES + 4;
+
+    // hash -> pack << 32 | offset of the record
+    private static final Map<String, Long> index = new ConcurrentHashMap<>();
+    private static final List<Pack> packs = new CopyOnWriteArrayList<>();
+    private static volatile boolean opened;
+
+    private BlobStore() {
+        /* Utility class; no public constructor. */ }
+
+    public static Path dir() {
+        return DIR;
+    }
+
+    // ---------------------------------------------------------------
+    //                          writing
+    // ---------------------------------------------------------------
+    // Stores bytes[from, from + length) unless already present; returns its hash.
+    public static String put(byte[] bytes, int from, int length) {
+        byte[] digest = sha256(bytes, from, length);
+        String hash = HexFormat.of().formatHex(digest);
+        open();
+        if (index.containsKey(hash)) {
+            return hash;
+        }
+        synchronized (BlobStore.class) {
+            if (index.containsKey(hash)) {
+                return hash;
+            }
+            try {
+                Pack pack = packs.isEmpty() ? null : packs.get(packs.size() - 1);
+                if (pack == null || pack.size + HEADER + length > PACK_BYTES && pack.size > 0) {
+                    pack = Pack.create(packs.size());
+                    packs.add(pack);
+                }
+                ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+                header.put(digest).putInt(length).flip();
+                long offset = pack.size;
+                pack.write(new ByteBuffer[] { header, ByteBuffer.wrap(bytes, from, length) });
+                index.put(hash, (long) pack.number << 32 | offset);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Blob store write failed in " + DIR, e);
+            }
+        }
+        return hash;
+    }
+
+    public static String put(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        return put(bytes, 0, bytes.length);
+    }
+
+    // ---------------------------------------------------------------
+    //                          reading
+    // ---------------------------------------------------------------
+    // The content as UTF-8 text, or null if the hash isn't here (e.g. a graph restored without its blobs).
+    public static String get(String hash) {
+        byte[] bytes = bytes(hash);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static byte[] bytes(String hash) {
+        if (hash == null) {
+            return null;
+        }
+        open();
+        Long location = index.get(hash);
+        if (location == null) {
+            return null;
+        }
+        Pack pack = packs.get((int) (location >>> 32));
+        int offset = (int) (long) location;
+        try {
+            ByteBuffer map = pack.mapped(offset + HEADER);
+            int length = map.getInt(offset + HASH_BYTES);
+            byte[] content = new byte[length];
+            pack.mapped(offset + HEADER + length).get(offset + HEADER, content);
+            return content;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Blob store read failed in " + pack.path, e);
+        }
+    }
+
+    public static boolean contains(String hash) {
+        open();
+        return hash != null && index.containsKey(hash);
+    }
+
+    public static JSONObject stats() {
+        open();
+        long bytes = 0;
+        for (Pack pack : packs) {
+            bytes += pack.size;
+        }
+        return new JSONObject()
+                .put("blobs", index.size())
+                .put("packs", packs.size())
+                .put("bytes", bytes);
+    }
+
+    // ---------------------------------------------------------------
+    //                          packs
+    // ---------------------------------------------------------------
+    private static void open() {
+        if (opened) {
+            return;
+        }
+        synchronized (BlobStore.class) {
+            if (opened) {
+                return;
+            }
+            try {
+                Files.createDirectories(DIR);
+                List<Path> files;
+                try (Stream<Path> paths = Files.list(DIR)) {
+                    files = paths.filter(p -> packNumber(p) >= 0).sorted((a, b) -> packNumber(a) - packNumber(b)).toList();
+                }
+                // numbered by position, so a gap left by a removed pack can't misroute reads
+                List<Pack> found = new ArrayList<>();
+                for (Path file : files) {
+                    Pack pack = new Pack(found.size(), file);
+                    pack.scan();
+                    found.add(pack);
+                }
+                packs.addAll(found);
+                System.out.println("[BlobStore] " + index.size() + " blobs in " + packs.size() + " packs at " + DIR);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Blob store at " + DIR + " can't be opened", e);
+            }
+            opened = true;
+        }
+    }
+
+    private static int packNumber(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes, int from, int length) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(bytes, from, length);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class Pack {
+
+        final int number;
+        final Path path;
+        final FileChannel channel;
+        // bytes of whole records; grows under the BlobStore lock, read by get() after the index says so
+        volatile long size;
+        private volatile MappedByteBuffer map;
+
+        Pack(int number, Path path) throws IOException {
+            this.number = number;
+            this.path = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.size = channel.size();
+        }
+
+        static Pack create(int number) throws IOException {
+            Pack pack = new Pack(number, DIR.resolve(PREFIX + number + SUFFIX));
+            pack.scan();
+            return pack;
+        }
+
+        // indexes the records; a torn one at the end is cut off
+        void scan() throws IOException {
+            long fileSize = channel.size();
+            ByteBuffer map = fileSize == 0 ? ByteBuffer.allocate(0) : mapped(fileSize);
+            byte[] digest = new byte[HASH_BYTES];
+            int offset = 0;
+            while (offset + HEADER <= fileSize) {
+                int length = map.getInt(offset + HASH_BYTES);
+                if (length < 0 || offset + HEADER + (long) length > fileSize) {
+                    break;
+                }
+                map.get(offset, digest);
+                index.putIfAbsent(HexFormat.of().formatHex(digest), (long) number << 32 | offset);
+                offset += HEADER + length;
+            }
+            if (offset < fileSize) {
+                System.err.println("[BlobStore] " + path + ": dropping " + (fileSize - offset) + " bytes of a torn record");
+                channel.truncate(offset);
+                this.map = null;
+            }
+            size = offset;
+        }
+
+        void write(ByteBuffer[] record) throws IOException {
+            long position = size;
+            channel.position(position);
+            long written = 0;
+            long total = 0;
+            for (ByteBuffer buffer : record) {
+                total += buffer.remaining();
+            }
+            while (written < total) {
+                written += channel.write(record);
+            }
+            size = position + total;
+        }
+
+        // a read-only mapping covering at least [0, end)
+        ByteBuffer mapped(long end) throws IOException {
+            MappedByteBuffer current = map;
+            if (current == null || current.capacity() < end) {
+                synchronized (this) {
+                    current = map;
+                    if (current == null || current.capacity() < end) {
+                        current = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.max(end, channel.size()));
+                        current.order(ByteOrder.LITTLE_ENDIAN);
+                        map = current;
+                    }
+                }
+            }
+            return current;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * A whole search space laid out as columns: what a GraphStore exports for a
+ * snapshot and bulk-loads on restore (see SnapshotFile).
+ *
+ * Nodes are dense 0..nodeCount-1 with a label bitmask each. Every property
+ * is one column over all nodes; edges are parallel src/dst/type arrays over
+ * node indexes; vectors are packed floats with the node each one belongs to.
+ * Arrays may be longer than their counts.
+ */
+public class GraphImage {
+
+    final List<String> labelNames = new ArrayList<>();
+    final List<String> typeNames = new ArrayList<>();
+
+    int nodeCount;
+    int[] nodeLabels = new int[16];
+    final Map<String, Column> columns = new LinkedHashMap<>();
+
+    int edgeCount;
+    int[] edgeSrc = new int[16];
+    int[] edgeDst = new int[16];
+    byte[] edgeType = new byte[16];
+
+    int dimensions;
+    int vectorCount;
+    int[] vectorNode = new int[16];
+    float[] vectors = new float[0];
+
+    /*
+     * One property across all nodes. Typed by the first value written: ints
+     * and longs go into a long[] with a presence bitmap, everything else is
+     * kept as a String. A long column given anything else becomes a String
+     * column, its numbers written out in decimal.
+     */
+    static final class Column {
+
+        long[] longs;
+        BitSet present;
+        String[] strings;
+
+        Object get(int node) {
+            if (longs != null) {
+                return node < longs.length && present.get(node) ? (Object) longs[node] : null;
+            }
+            return strings != null && node < strings.length ? strings[node] : null;
+        }
+
+        void set(int node, Object value) {
+            if (longs == null && strings == null) {
+                if (value instanceof Integer || value instanceof Long) {
+                    longs = new long[Math.max(1024, node + 1)];
+                    present = new BitSet();
+                } else {
+                    strings = new String[Math.max(1024, node + 1)];
+                }
+            }
+            if (longs != null) {
+                if (value == null) {
+                    present.clear(node);
+                    return;
+                }
+                if (!(value instanceof Integer || value instanceof Long)) {
+                    widen();
+                    set(node, value);
+                    return;
+                }
+                if (node >= longs.length) {
+                    longs = Arrays.copyOf(longs, Math.max(node + 1, longs.length * 2));
+                }
+                longs[node] = ((Number) value).longValue();
+                present.set(node);
+            } else {
+                if (node >= strings.length) {
+                    strings = Arrays.copyOf(strings, Math.max(node + 1, strings.length * 2));
+                }
+                strings[node] = value == null ? null : value.toString();
+            }
+        }
+
+        private void widen() {
+            strings = new String[Math.max(1024, longs.length)];
+            for (int n = present.nextSetBit(0); n >= 0; n = present.nextSetBit(n + 1)) {
+                strings[n] = Long.toString(longs[n]);
+            }
+            longs = null;
+            present = null;
+        }
+
+        // a copy cut to the first count nodes
+        Column copy(int count) {
+            Column c = new Column();
+            if (longs != null) {
+                c.longs = Arrays.copyOf(longs, count);
+                c.present = present.get(0, count);
+            } else if (strings != null) {
+                c.strings = Arrays.copyOf(strings, count);
+            }
+            return c;
+        }
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    public int vectorCount() {
+        return vectorCount;
+    }
+
+    // ---------------------------------------------------------------
+    //                          building, row by row
+    // ---------------------------------------------------------------
+    int addNode(List<String> labels) {
+        int mask = 0;
+        for (String label : labels) {
+            int bit = indexOf(labelNames, label);
+            if (bit >= 32) {
+                throw new IllegalStateException("more than 32 distinct labels");
+            }
+            mask |= 1 << bit;
+        }
+        if (nodeCount == nodeLabels.length) {
+            nodeLabels = Arrays.copyOf(nodeLabels, nodeCount * 2);
+        }
+        nodeLabels[nodeCount] = mask;
+        return nodeCount++;
+    }
+
+    void set(int node, String name, Object value) {
+        if (value != null) {
+            columns.computeIfAbsent(name, k -> new Column()).set(node, value);
+        }
+    }
+
+    void addEdge(int src, String type, int dst) {
+        int t = indexOf(typeNames, type);
+        if (t > Byte.MAX_VALUE) {
+            throw new IllegalStateException("more than 128 distinct relationship types");
+        }
+        if (edgeCount == edgeSrc.length) {
+            edgeSrc = Arrays.copyOf(edgeSrc, edgeCount * 2);
+            edgeDst = Arrays.copyOf(edgeDst, edgeCount * 2);
+            edgeType = Arrays.copyOf(edgeType, edgeCount * 2);
+        }
+        edgeSrc[edgeCount] = src;
+        edgeDst[edgeCount] = dst;
+        edgeType[edgeCount] = (byte) t;
+        edgeCount++;
+    }
+
+    void addVector(int node, List<Double> vector) {
+        if (dimensions == 0) {
+            dimensions = vector.size();
+        }
+        if (vector.size() != dimensions) {
+            throw new IllegalArgumentException("vector has " + vector.size() + " dimensions, image has " + dimensions);
+        }
+        if (vectorCount == vectorNode.length) {
+            vectorNode = Arrays.copyOf(vectorNode, vectorCount * 2);
+        }
+        if ((vectorCount + 1) * dimensions > vectors.length) {
+            vectors = Arrays.copyOf(vectors, Math.max(16, vectorCount * 2) * dimensions);
+        }
+        int base = vectorCount * dimensions;
+        for (int i = 0; i < dimensions; i++) {
+            vectors[base + i] = vector.get(i).floatValue();
+        }
+        vectorNode[vectorCount++] = node;
+    }
+
+    // ---------------------------------------------------------------
+    //                          reading, row by row
+    // ---------------------------------------------------------------
+    List<String> labels(int node) {
+        List<String> names = new ArrayList<>(1);
+        for (int i = 0; i < labelNames.size(); i++) {
+            if ((nodeLabels[node] & (1 << i)) != 0) {
+                names.add(labelNames.get(i));
+            }
+        }
+        return names;
+    }
+
+    Map<String, Object> properties(int node) {
+        Map<String, Object> props = new LinkedHashMap<>();
+        for (Map.Entry<String, Column> column : columns.entrySet()) {
+            Object value = column.getValue().get(node);
+            if (value != null) {
+                props.put(column.getKey(), value);
+            }
+        }
+        return props;
+    }
+
+    private static int indexOf(List<String> dict, String name) {
+        int i = dict.indexOf(name);
+        if (i < 0) {
+            dict.add(name);
+            i = dict.size() - 1;
+        }
+        return i;
+    }
+}
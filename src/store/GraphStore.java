@@ -0,0 +1,107 @@
+package store;
+
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONObject;
+
+/*
+ * Everything the rest of PurpleSearch needs from the graph, so the storage
+ * behind it can be swapped: Neo4jGraphStore (server or embedded) or
+ * MemoryGraphStore (no database at all). DbClient holds the active one.
+ *
+ * Writes are the ingest vocabulary: nodes are found by one key property of a
+ * label (Method.name, File.path, ...), edges are merged between two such
+ * nodes. Node ids handed out by reads are the store's own and only stable
+ * until the graph is reset.
+ *
+ * Reads go through a Reader, which lets a store keep one session open for a
+ * run of reads that belong together (one query's clusters, say).
+ */
+public interface GraphStore {
+
+    // A node addressed by a key property, e.g. new NodeKey("Class", "name", "a.b.C").
+    record NodeKey(String label, String property, String value) {
+    }
+
+    /*
+     * One expansion rule: walk undirected up to maxHops edges of relType
+     * (null for any type) from the seed, keeping nodes with label (null for
+     * any), nearest first.
+     */
+    record Traversal(String relType, int maxHops, String label) {
+    }
+
+    String kind();
+
+    boolean isAvailable();
+
+    // ---------------------------------------------------------------
+    //                          writes
+    // ---------------------------------------------------------------
+    // MERGE on the key, then set properties (a null value removes one)
+    void mergeNode(NodeKey node, Map<String, Object> properties);
+
+    // always a new node, e.g. an XML file's content
+    void createNode(String label, Map<String, Object> properties);
+
+    // no-op if from (or to, unless mergeTarget) doesn't exist
+    void mergeEdge(NodeKey from, String type, NodeKey to, boolean mergeTarget);
+
+    /*
+     * A new node hung off owner by an edge of ownerType, optionally pointing
+     * at a merged target by an edge of targetType (fields and their types).
+     * No-op if owner doesn't exist.
+     */
+    void createAttached(NodeKey owner, String ownerType, String label, Map<String, Object> properties,
+            String targetType, NodeKey target);
+
+    // methods with code, ids after afterId, ascending: [{ id, code }, …]; code read from the BlobStore, "" if missing
+    List<JSONObject> codeToEmbed(long afterId, int limit);
+
+    // (re)creates the vector index for vectors of this size
+    void prepareVectors(int dimensions);
+
+    void setVector(long nodeId, double[] vector);
+
+    long nodeCount();
+
+    void clear();
+
+    JSONObject stats();
+
+    // ---------------------------------------------------------------
+    //                          snapshots
+    // ---------------------------------------------------------------
+    // everything in the store, copied out as columns
+    GraphImage image();
+
+    // replaces the whole graph with the image, in bulk rather than write by write
+    void load(GraphImage image);
+
+    // ---------------------------------------------------------------
+    //                          reads
+    // ---------------------------------------------------------------
+    Reader reader();
+
+    interface Reader extends AutoCloseable {
+
+        // nearest method vectors, best first: [{ id, similarity }, …] with similarity in [0, 1]
+        List<JSONObject> vectorSearch(double[] query, int limit);
+
+        // node ids reached by the traversal, nearest first; timeoutMillis <= 0 means none
+        long[] expand(long seedId, Traversal traversal, int limit, long timeoutMillis);
+
+        // { nodes: [{ id, labels, name }], relationships: [{ id, type, start, end }] } among ids
+        JSONObject outline(List<Long> nodeIds);
+
+        // [{ id, labels, properties }] without embedding and line numbers
+        List<JSONObject> nodeDetails(List<Long> nodeIds);
+
+        // [{ type, start, end }]
+        List<JSONObject> edges(List<Long> edgeIds);
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,978 @@
+package store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import store.GraphImage.Column;
+
+/*
+ * The whole graph in this JVM, for laptops and CI: no database to run, and
+ * every read is a few array walks.
+ *
+ * Nodes are dense ints (their index doubles as the id handed out). Labels are
+ * a bitmask per node over a dictionary. Properties are columnar: one array per
+ * property name indexed by node, ints unboxed, so a node costs nothing for
+ * the properties it doesn't have. Key lookups (Method.name, File.path, ...)
+ * go through a long -> int open-addressing map from a 64-bit hash of the
+ * value, checked against the key column. Edges are parallel src/dst/type
+ * arrays, deduplicated through one such map per type on (src, dst), and each
+ * node keeps the ids of the edges touching it for undirected walks.
+ *
+ * Vectors are normalised on the way in and packed into one float array, so
+ * vector search is an exact scan of dot products; scores are (1 + cos) / 2 to
+ * line up with Neo4j's cosine index.
+ *
+ * One writer or many readers at a time (read/write lock per call).
+ *
+ * load() restores a snapshot by adopting its columns wholesale and rebuilding
+ * the derived structures in a couple of linear passes.
+ */
+public class MemoryGraphStore implements GraphStore {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // dictionaries
+    private final List<String> labelNames = new ArrayList<>();
+    private final List<String> typeNames = new ArrayList<>();
+
+    // nodes
+    private int nodeCount;
+    private int[] nodeLabels = new int[1024]; // bitmask over labelNames
+    private final Map<String, Column> columns = new LinkedHashMap<>();
+    private final Map<String, KeyIndex> keyIndexes = new HashMap<>(); // "label.property"
+
+    // edges
+    private int edgeCount;
+    private int[] edgeSrc = new int[1024];
+    private int[] edgeDst = new int[1024];
+    private byte[] edgeType = new byte[1024];
+    private final List<LongIntMap> edgesByType = new ArrayList<>(); // (src << 32 | dst) -> edge
+    private int[][] incident = new int[1024][];
+    private int[] degree = new int[1024];
+
+    // vectors
+    private int dimensions;
+    private int vectorCount;
+    private float[] vectors = new float[0]; // vectorCount * dimensions, unit length
+    private int[] vectorNode = new int[0];
+    private int[] nodeVector = new int[1024]; // slot + 1, 0 for none
+
+    @Override
+    public String kind() {
+        return "memory";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    // ---------------------------------------------------------------
+    //                          writes
+    // ---------------------------------------------------------------
+    @Override
+    public void mergeNode(NodeKey node, Map<String, Object> properties) {
+        lock.writeLock().lock();
+        try {
+            int n = findOrCreate(node);
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                setProperty(n, property.getKey(), property.getValue());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void createNode(String label, Map<String, Object> properties) {
+        lock.writeLock().lock();
+        try {
+            int n = newNode(label);
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                setProperty(n, property.getKey(), property.getValue());
+            }
+            indexNew(n, label);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void mergeEdge(NodeKey from, String type, NodeKey to, boolean mergeTarget) {
+        lock.writeLock().lock();
+        try {
+            int a = find(from);
+            if (a < 0) {
+                return;
+            }
+            int b = mergeTarget ? findOrCreate(to) : find(to);
+            if (b < 0) {
+                return;
+            }
+            mergeEdge(a, type, b);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void createAttached(NodeKey owner, String ownerType, String label, Map<String, Object> properties,
+            String targetType, NodeKey target) {
+        lock.writeLock().lock();
+        try {
+            int o = find(owner);
+            if (o < 0) {
+                return;
+            }
+            int n = newNode(label);
+            for (Map.Entry<String, Object> property : properties.entrySet()) {
+                setProperty(n, property.getKey(), property.getValue());
+            }
+            indexNew(n, label);
+            mergeEdge(o, ownerType, n);
+            if (target != null) {
+                mergeEdge(n, targetType, findOrCreate(target));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<JSONObject> codeToEmbed(long afterId, int limit) {
+        lock.readLock().lock();
+        try {
+            List<JSONObject> batch = new ArrayList<>();
+            Column hash = columns.get(BlobStore.HASH_PROPERTY);
+            // graphs from before the blob store carry the code inline
+            Column code = columns.get("code");
+            int method = labelBit("Method");
+            if ((hash == null && code == null) || method == 0) {
+                return batch;
+            }
+            for (int n = (int) Math.max(0, afterId + 1); n < nodeCount && batch.size() < limit; n++) {
+                Object key = hash == null ? null : hash.get(n);
+                Object inline = code == null ? null : code.get(n);
+                if ((key == null && inline == null) || (nodeLabels[n] & method) == 0) {
+                    continue;
+                }
+                // "" when the blob is gone, like Neo4jGraphStore
+                String value = BlobStore.get((String) key);
+                batch.add(new JSONObject().put("id", n).put("code", value != null ? value : inline != null ? inline : ""));
+            }
+            return batch;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // a new size drops the vectors held so far, like recreating the Neo4j index
+    @Override
+    public void prepareVectors(int dimensions) {
+        lock.writeLock().lock();
+        try {
+            if (dimensions != this.dimensions) {
+                this.dimensions = dimensions;
+                vectorCount = 0;
+                vectors = new float[0];
+                vectorNode = new int[0];
+                Arrays.fill(nodeVector, 0);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void setVector(long nodeId, double[] vector) {
+        lock.writeLock().lock();
+        try {
+            if (nodeId < 0 || nodeId >= nodeCount) {
+                throw new IllegalArgumentException("no node " + nodeId);
+            }
+            if (dimensions == 0) {
+                dimensions = vector.length;
+            }
+            if (vector.length != dimensions) {
+                throw new IllegalArgumentException("vector has " + vector.length + " dimensions, store has " + dimensions);
+            }
+            int n = (int) nodeId;
+            int slot = nodeVector[n] - 1;
+            if (slot < 0) {
+                slot = vectorCount++;
+                if (slot == vectorNode.length) {
+                    vectorNode = Arrays.copyOf(vectorNode, Math.max(256, slot * 2));
+                    vectors = Arrays.copyOf(vectors, vectorNode.length * dimensions);
+                }
+                vectorNode[slot] = n;
+                nodeVector[n] = slot + 1;
+            }
+            double norm = 0;
+            for (double v : vector) {
+                norm += v * v;
+            }
+            double scale = norm == 0 ? 0 : 1 / Math.sqrt(norm);
+            int base = slot * dimensions;
+            for (int i = 0; i < dimensions; i++) {
+                vectors[base + i] = (float) (vector[i] * scale);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public long nodeCount() {
+        lock.readLock().lock();
+        try {
+            return nodeCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            labelNames.clear();
+            typeNames.clear();
+            nodeCount = 0;
+            nodeLabels = new int[1024];
+            columns.clear();
+            keyIndexes.clear();
+            edgeCount = 0;
+            edgeSrc = new int[1024];
+            edgeDst = new int[1024];
+            edgeType = new byte[1024];
+            edgesByType.clear();
+            incident = new int[1024][];
+            degree = new int[1024];
+            dimensions = 0;
+            vectorCount = 0;
+            vectors = new float[0];
+            vectorNode = new int[0];
+            nodeVector = new int[1024];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public JSONObject stats() {
+        lock.readLock().lock();
+        try {
+            return new JSONObject()
+                    .put("nodes", nodeCount)
+                    .put("edges", edgeCount)
+                    .put("vectors", vectorCount)
+                    .put("dimensions", dimensions)
+                    .put("labels", new JSONArray(labelNames))
+                    .put("relTypes", new JSONArray(typeNames))
+                    .put("properties", new JSONArray(columns.keySet()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------
+    //                          snapshots
+    // ---------------------------------------------------------------
+    // copies, so writes after this call don't show through
+    @Override
+    public GraphImage image() {
+        lock.readLock().lock();
+        try {
+            GraphImage image = new GraphImage();
+            image.labelNames.addAll(labelNames);
+            image.typeNames.addAll(typeNames);
+            image.nodeCount = nodeCount;
+            image.nodeLabels = Arrays.copyOf(nodeLabels, nodeCount);
+            for (Map.Entry<String, Column> column : columns.entrySet()) {
+                image.columns.put(column.getKey(), column.getValue().copy(nodeCount));
+            }
+            image.edgeCount = edgeCount;
+            image.edgeSrc = Arrays.copyOf(edgeSrc, edgeCount);
+            image.edgeDst = Arrays.copyOf(edgeDst, edgeCount);
+            image.edgeType = Arrays.copyOf(edgeType, edgeCount);
+            image.dimensions = dimensions;
+            image.vectorCount = vectorCount;
+            image.vectorNode = Arrays.copyOf(vectorNode, vectorCount);
+            image.vectors = Arrays.copyOf(vectors, vectorCount * dimensions);
+            return image;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /*
+     * Takes over the image's arrays (the image shouldn't be used afterwards)
+     * and rebuilds what's derived from them: edge dedup maps, incident lists
+     * and unit-length vectors. Key indexes come back lazily, per label and
+     * property, on the first lookup.
+     */
+    @Override
+    public void load(GraphImage image) {
+        lock.writeLock().lock();
+        try {
+            clear();
+            labelNames.addAll(image.labelNames);
+            typeNames.addAll(image.typeNames);
+
+            int capacity = Math.max(1024, image.nodeCount);
+            nodeCount = image.nodeCount;
+            nodeLabels = Arrays.copyOf(image.nodeLabels, capacity);
+            columns.putAll(image.columns);
+            incident = new int[capacity][];
+            degree = new int[capacity];
+            nodeVector = new int[capacity];
+
+            edgeCount = image.edgeCount;
+            edgeSrc = Arrays.copyOf(image.edgeSrc, Math.max(1024, edgeCount));
+            edgeDst = Arrays.copyOf(image.edgeDst, edgeSrc.length);
+            edgeType = Arrays.copyOf(image.edgeType, edgeSrc.length);
+            for (int i = 0; i < typeNames.size(); i++) {
+                edgesByType.add(new LongIntMap());
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                edgesByType.get(edgeType[e]).putIfAbsent(((long) edgeSrc[e] << 32) | edgeDst[e], e);
+                degree[edgeSrc[e]]++;
+                if (edgeDst[e] != edgeSrc[e]) {
+                    degree[edgeDst[e]]++;
+                }
+            }
+            int[] fill = new int[nodeCount];
+            for (int n = 0; n < nodeCount; n++) {
+                if (degree[n] > 0) {
+                    incident[n] = new int[degree[n]];
+                }
+            }
+            for (int e = 0; e < edgeCount; e++) {
+                int a = edgeSrc[e];
+                int b = edgeDst[e];
+                incident[a][fill[a]++] = e;
+                if (b != a) {
+                    incident[b][fill[b]++] = e;
+                }
+            }
+
+            dimensions = image.dimensions;
+            vectorCount = image.vectorCount;
+            vectorNode = Arrays.copyOf(image.vectorNode, vectorCount);
+            vectors = Arrays.copyOf(image.vectors, vectorCount * dimensions);
+            for (int slot = 0, base = 0; slot < vectorCount; slot++, base += dimensions) {
+                double norm = 0;
+                for (int i = 0; i < dimensions; i++) {
+                    norm += vectors[base + i] * vectors[base + i];
+                }
+                float scale = norm == 0 ? 0 : (float) (1 / Math.sqrt(norm));
+                for (int i = 0; i < dimensions; i++) {
+                    vectors[base + i] *= scale;
+                }
+                nodeVector[vectorNode[slot]] = slot + 1;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ---------------------------------------------------------------
+    //                          node / edge internals (write lock held)
+    // ---------------------------------------------------------------
+    private int find(NodeKey key) {
+        if (!columns.containsKey(key.property())) {
+            return -1;
+        }
+        return keyIndex(key).find(key.value());
+    }
+
+    private int findOrCreate(NodeKey key) {
+        KeyIndex index = keyIndex(key);
+        int n = index.find(key.value());
+        if (n < 0) {
+            n = newNode(key.label());
+            setProperty(n, key.property(), key.value());
+            index.put(key.value(), n);
+        }
+        return n;
+    }
+
+    // built on first use from the nodes already there (a restored graph has none yet)
+    private KeyIndex keyIndex(NodeKey key) {
+        return keyIndexes.computeIfAbsent(key.label() + "." + key.property(), k -> {
+            Column column = column(key.property());
+            KeyIndex index = new KeyIndex(key.label(), column);
+            int label = labelBit(key.label());
+            if (label != 0) {
+                for (int n = 0; n < nodeCount; n++) {
+                    Object value = column.get(n);
+                    if ((nodeLabels[n] & label) != 0 && value != null && index.find(value.toString()) < 0) {
+                        index.put(value.toString(), n);
+                    }
+                }
+            }
+            return index;
+        });
+    }
+
+    // a node created without a key lookup joins the indexes built so far, so later merges find it
+    private void indexNew(int n, String label) {
+        for (KeyIndex index : keyIndexes.values()) {
+            Object value = index.label.equals(label) ? index.column.get(n) : null;
+            if (value != null && index.find(value.toString()) < 0) {
+                index.put(value.toString(), n);
+            }
+        }
+    }
+
+    private int newNode(String label) {
+        int bit = indexOf(labelNames, label);
+        if (bit >= 32) {
+            throw new IllegalStateException("more than 32 distinct labels");
+        }
+        int n = nodeCount++;
+        if (n == nodeLabels.length) {
+            int capacity = n * 2;
+            nodeLabels = Arrays.copyOf(nodeLabels, capacity);
+            incident = Arrays.copyOf(incident, capacity);
+            degree = Arrays.copyOf(degree, capacity);
+            nodeVector = Arrays.copyOf(nodeVector, capacity);
+        }
+        nodeLabels[n] = 1 << bit;
+        return n;
+    }
+
+    private void setProperty(int node, String name, Object value) {
+        if (value == null) {
+            Column column = columns.get(name);
+            if (column != null) {
+                column.set(node, null);
+            }
+            return;
+        }
+        column(name).set(node, value);
+    }
+
+    private Column column(String name) {
+        return columns.computeIfAbsent(name, k -> new Column());
+    }
+
+    private void mergeEdge(int a, String type, int b) {
+        int t = indexOf(typeNames, type);
+        if (t > Byte.MAX_VALUE) {
+            throw new IllegalStateException("more than 128 distinct relationship types");
+        }
+        if (t == edgesByType.size()) {
+            edgesByType.add(new LongIntMap());
+        }
+        int e = edgeCount;
+        if (edgesByType.get(t).putIfAbsent(((long) a << 32) | b, e) >= 0) {
+            return;
+        }
+        edgeCount++;
+        if (e == edgeSrc.length) {
+            edgeSrc = Arrays.copyOf(edgeSrc, e * 2);
+            edgeDst = Arrays.copyOf(edgeDst, e * 2);
+            edgeType = Arrays.copyOf(edgeType, e * 2);
+        }
+        edgeSrc[e] = a;
+        edgeDst[e] = b;
+        edgeType[e] = (byte) t;
+        addIncident(a, e);
+        if (b != a) {
+            addIncident(b, e);
+        }
+    }
+
+    private void addIncident(int node, int edge) {
+        int[] list = incident[node];
+        int d = degree[node];
+        if (list == null) {
+            list = incident[node] = new int[4];
+        } else if (d == list.length) {
+            list = incident[node] = Arrays.copyOf(list, d * 2);
+        }
+        list[d] = edge;
+        degree[node] = d + 1;
+    }
+
+    private int labelBit(String label) {
+        int i = labelNames.indexOf(label);
+        return i < 0 ? 0 : 1 << i;
+    }
+
+    private List<String> labels(int node) {
+        List<String> names = new ArrayList<>(1);
+        int mask = nodeLabels[node];
+        for (int i = 0; i < labelNames.size(); i++) {
+            if ((mask & (1 << i)) != 0) {
+                names.add(labelNames.get(i));
+            }
+        }
+        return names;
+    }
+
+    private boolean isNode(long id) {
+        return id >= 0 && id < nodeCount;
+    }
+
+    private static int indexOf(List<String> dict, String name) {
+        int i = dict.indexOf(name);
+        if (i < 0) {
+            dict.add(name);
+            i = dict.size() - 1;
+        }
+        return i;
+    }
+
+    // ---------------------------------------------------------------
+    //                          reads
+    // ---------------------------------------------------------------
+    @Override
+    public Reader reader() {
+        return new MemoryReader();
+    }
+
+    private final class MemoryReader implements Reader {
+
+        @Override
+        public List<JSONObject> vectorSearch(double[] query, int limit) {
+            lock.readLock().lock();
+            try {
+                List<JSONObject> hits = new ArrayList<>();
+                if (vectorCount == 0 || query.length != dimensions || limit <= 0) {
+                    return hits;
+                }
+                double norm = 0;
+                for (double v : query) {
+                    norm += v * v;
+                }
+                double scale = norm == 0 ? 0 : 1 / Math.sqrt(norm);
+                float[] q = new float[dimensions];
+                for (int i = 0; i < dimensions; i++) {
+                    q[i] = (float) (query[i] * scale);
+                }
+
+                // bounded min-heap of the best slots so far
+                int k = Math.min(limit, vectorCount);
+                float[] heapScore = new float[k];
+                int[] heapSlot = new int[k];
+                int size = 0;
+                for (int slot = 0; slot < vectorCount; slot++) {
+                    float dot = 0;
+                    for (int i = 0, base = slot * dimensions; i < dimensions; i++) {
+                        dot += q[i] * vectors[base + i];
+                    }
+                    if (size < k) {
+                        heapScore[size] = dot;
+                        heapSlot[size] = slot;
+                        siftUp(heapScore, heapSlot, size++);
+                    } else if (dot > heapScore[0]) {
+                        heapScore[0] = dot;
+                        heapSlot[0] = slot;
+                        siftDown(heapScore, heapSlot, size);
+                    }
+                }
+
+                // drain worst first into the back of the array
+                JSONObject[] ordered = new JSONObject[size];
+                for (int i = size - 1; i >= 0; i--) {
+                    ordered[i] = new JSONObject()
+                            .put("id", vectorNode[heapSlot[0]])
+                            .put("similarity", (1 + (double) heapScore[0]) / 2);
+                    heapScore[0] = heapScore[i];
+                    heapSlot[0] = heapSlot[i];
+                    siftDown(heapScore, heapSlot, i);
+                }
+                hits.addAll(Arrays.asList(ordered));
+                return hits;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public long[] expand(long seedId, Traversal traversal, int limit, long timeoutMillis) {
+            lock.readLock().lock();
+            try {
+                if (!isNode(seedId) || limit <= 0) {
+                    return new long[0];
+                }
+                int type = -1;
+                if (traversal.relType() != null) {
+                    type = typeNames.indexOf(traversal.relType());
+                    if (type < 0) {
+                        return new long[0];
+                    }
+                }
+                int labelMask = 0;
+                if (traversal.label() != null) {
+                    labelMask = labelBit(traversal.label());
+                    if (labelMask == 0) {
+                        return new long[0];
+                    }
+                }
+
+                Scratch s = Scratch.get(nodeCount);
+                int visit = s.nextStamp();
+                int seed = (int) seedId;
+                int[] queue = s.queue;
+                s.seen[seed] = visit;
+                s.depth[seed] = 0;
+                queue[0] = seed;
+                int head = 0;
+                int tail = 1;
+                long[] out = new long[Math.min(limit, 64)];
+                int found = 0;
+
+                while (head < tail && found < limit) {
+                    int node = queue[head++];
+                    int d = s.depth[node];
+                    if (node != seed && (labelMask == 0 || (nodeLabels[node] & labelMask) != 0)) {
+                        if (found == out.length) {
+                            out = Arrays.copyOf(out, Math.min(limit, found * 2));
+                        }
+                        out[found++] = node;
+                    }
+                    if (d == traversal.maxHops()) {
+                        continue;
+                    }
+                    int[] edges = incident[node];
+                    for (int i = 0, end = degree[node]; i < end; i++) {
+                        int e = edges[i];
+                        if (type != -1 && edgeType[e] != type) {
+                            continue;
+                        }
+                        int next = edgeSrc[e] == node ? edgeDst[e] : edgeSrc[e];
+                        if (s.seen[next] != visit) {
+                            s.seen[next] = visit;
+                            s.depth[next] = d + 1;
+                            queue[tail++] = next;
+                        }
+                    }
+                }
+                return Arrays.copyOf(out, found);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public JSONObject outline(List<Long> nodeIds) {
+            lock.readLock().lock();
+            try {
+                long[] members = sortedIds(nodeIds);
+                Column name = columns.get("name");
+                Column path = columns.get("path");
+                List<JSONObject> nodes = new ArrayList<>();
+                List<JSONObject> rels = new ArrayList<>();
+                for (long id : members) {
+                    int n = (int) id;
+                    Object display = name == null ? null : name.get(n);
+                    if (display == null && path != null) {
+                        display = path.get(n);
+                    }
+                    nodes.add(new JSONObject()
+                            .put("id", id)
+                            .put("labels", labels(n))
+                            .put("name", display == null ? JSONObject.NULL : display));
+
+                    int[] edges = incident[n];
+                    for (int i = 0, end = degree[n]; i < end; i++) {
+                        int e = edges[i];
+                        if (edgeSrc[e] == n && Arrays.binarySearch(members, edgeDst[e]) >= 0) {
+                            rels.add(new JSONObject()
+                                    .put("id", e)
+                                    .put("type", typeNames.get(edgeType[e]))
+                                    .put("start", id)
+                                    .put("end", edgeDst[e]));
+                        }
+                    }
+                }
+                return new JSONObject()
+                        .put("nodes", nodes)
+                        .put("relationships", rels);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public List<JSONObject> nodeDetails(List<Long> nodeIds) {
+            lock.readLock().lock();
+            try {
+                List<JSONObject> details = new ArrayList<>();
+                for (long id : sortedIds(nodeIds)) {
+                    int n = (int) id;
+                    JSONObject props = new JSONObject();
+                    for (Map.Entry<String, Column> column : columns.entrySet()) {
+                        String key = column.getKey();
+                        if (key.equals("start_line") || key.equals("end_line")) {
+                            continue;
+                        }
+                        Object value = column.getValue().get(n);
+                        if (key.equals(BlobStore.HASH_PROPERTY)) {
+                            key = "code";
+                            value = BlobStore.get((String) value);
+                        }
+                        if (value != null) {
+                            props.put(key, value);
+                        }
+                    }
+                    details.add(new JSONObject()
+                            .put("id", id)
+                            .put("labels", labels(n))
+                            .put("properties", props));
+                }
+                return details;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public List<JSONObject> edges(List<Long> edgeIds) {
+            lock.readLock().lock();
+            try {
+                List<JSONObject> rels = new ArrayList<>();
+                for (long id : edgeIds) {
+                    if (id >= 0 && id < edgeCount) {
+                        int e = (int) id;
+                        rels.add(new JSONObject()
+                                .put("type", typeNames.get(edgeType[e]))
+                                .put("start", edgeSrc[e])
+                                .put("end", edgeDst[e]));
+                    }
+                }
+                return rels;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        // the ids that exist, ascending and once each
+        private long[] sortedIds(List<Long> nodeIds) {
+            long[] ids = new long[nodeIds.size()];
+            int count = 0;
+            for (long id : nodeIds) {
+                if (isNode(id)) {
+                    ids[count++] = id;
+                }
+            }
+            Arrays.sort(ids, 0, count);
+            int unique = 0;
+            for (int i = 0; i < count; i++) {
+                if (unique == 0 || ids[unique - 1] != ids[i]) {
+                    ids[unique++] = ids[i];
+                }
+            }
+            return Arrays.copyOf(ids, unique);
+        }
+
+        @Override
+        public void close() {
+            // nothing held between calls
+        }
+    }
+
+    private static void siftUp(float[] score, int[] slot, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (score[parent] <= score[i]) {
+                return;
+            }
+            swap(score, slot, i, parent);
+            i = parent;
+        }
+    }
+
+    private static void siftDown(float[] score, int[] slot, int size) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) {
+                return;
+            }
+            int smallest = left + 1 < size && score[left + 1] < score[left] ? left + 1 : left;
+            if (score[i] <= score[smallest]) {
+                return;
+            }
+            swap(score, slot, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(float[] score, int[] slot, int a, int b) {
+        float s = score[a];
+        score[a] = score[b];
+        score[b] = s;
+        int t = slot[a];
+        slot[a] = slot[b];
+        slot[b] = t;
+    }
+
+    // ---------------------------------------------------------------
+    //                          storage pieces
+    // ---------------------------------------------------------------
+    // Key property value -> node. The hash map holds the first value per hash; the rare collision goes to a side map.
+    private static final class KeyIndex {
+
+        private final String label;
+        private final Column column;
+        private final LongIntMap byHash = new LongIntMap();
+        private Map<String, Integer> collisions;
+
+        KeyIndex(String label, Column column) {
+            this.label = label;
+            this.column = column;
+        }
+
+        int find(String value) {
+            int n = byHash.get(hash(value));
+            if (n < 0) {
+                return -1;
+            }
+            if (value.equals(column.get(n))) {
+                return n;
+            }
+            Integer other = collisions == null ? null : collisions.get(value);
+            return other == null ? -1 : other;
+        }
+
+        void put(String value, int node) {
+            if (byHash.putIfAbsent(hash(value), node) >= 0) {
+                if (collisions == null) {
+                    collisions = new HashMap<>();
+                }
+                collisions.put(value, node);
+            }
+        }
+
+        // 64-bit FNV-1a over the chars
+        private static long hash(String value) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                h ^= value.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            return h;
+        }
+    }
+
+    // Open addressing long -> int with linear probing. Values are >= 0; -1 means absent.
+    private static final class LongIntMap {
+
+        private static final long EMPTY = Long.MIN_VALUE;
+        // stands in for a real key equal to EMPTY
+        private static final long EMPTY_STAND_IN = Long.MIN_VALUE + 1;
+
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        LongIntMap() {
+            keys = new long[16];
+            values = new int[16];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        int get(long key) {
+            key = key == EMPTY ? EMPTY_STAND_IN : key;
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask);; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) {
+                    return values[i];
+                }
+                if (k == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        // the value already there, or -1 after storing this one
+        int putIfAbsent(long key, int value) {
+            key = key == EMPTY ? EMPTY_STAND_IN : key;
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            for (;; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == key) {
+                    return values[i];
+                }
+                if (k == EMPTY) {
+                    break;
+                }
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size * 2 > keys.length) {
+                grow();
+            }
+            return -1;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[keys.length];
+            Arrays.fill(keys, EMPTY);
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != EMPTY) {
+                    int i = slot(oldKeys[j], mask);
+                    while (keys[i] != EMPTY) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+    }
+
+    // Per-thread BFS arrays. Stamps avoid clearing them between walks.
+    private static final class Scratch {
+
+        private static final ThreadLocal<Scratch> LOCAL = new ThreadLocal<>();
+
+        int[] queue;
+        int[] depth;
+        int[] seen;
+        int stamp;
+
+        static Scratch get(int nodeCount) {
+            Scratch s = LOCAL.get();
+            if (s == null || s.queue.length < nodeCount) {
+                s = new Scratch();
+                s.queue = new int[Math.max(16, nodeCount)];
+                s.depth = new int[s.queue.length];
+                s.seen = new int[s.queue.length];
+                LOCAL.set(s);
+            }
+            return s;
+        }
+
+        int nextStamp() {
+            if (++stamp == Integer.MAX_VALUE) {
+                Arrays.fill(seen, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+    }
+}
@@ -0,0 +1,592 @@
+package store;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.neo4j.driver.Record;
+import org.neo4j.driver.Session;
+import org.neo4j.driver.TransactionConfig;
+import org.neo4j.driver.Values;
+
+import scrape.DbClient;
+import scrape.EmbeddedNeo4j;
+import scrape.Neo4jConnection;
+
+/*
+ * One project's graph in Neo4j, over Bolt or embedded. Writes are single
+ * Cypher statements sent through DbClient.runQuery, so they keep its
+ * QueryRunner seam (embedded mode, benchmarks) and its tracing. A Reader runs
+ * its reads in this JVM when Neo4j is embedded (EmbeddedNeo4j.read), and
+ * otherwise on one pooled driver session held for its lifetime, opened on
+ * first use.
+ *
+ * Projects share the database. Every node of a project carries the extra
+ * label P_<epoch>_<project>, which every statement matches on and reads strip
+ * again, and the project has a vector index over that label. The epoch moves
+ * on when a project is reset (see Projects), so the old nodes can be deleted
+ * in the background while the project is filled again under the new label.
+ */
+public class Neo4jGraphStore implements GraphStore {
+
+    public static final String LABEL_PREFIX = "P_";
+
+    private static final Pattern PROJECT_LABEL = Pattern.compile("P_(\\d+)_(.+)");
+    private static final int LOAD_BATCH = 5000;
+    private static final int DELETE_BATCH = Integer.getInteger("purple.delete.batchSize", 10_000);
+
+    private final String project;
+    private final long epoch;
+    private final String label;
+    private final String scope; // ":`label`", to append to a node pattern
+    private final String vectorIndex;
+
+    private final Map<Traversal, String> expansionQueries = new ConcurrentHashMap<>();
+
+    public Neo4jGraphStore(String project, long epoch) {
+        this.project = project;
+        this.epoch = epoch;
+        this.label = LABEL_PREFIX + epoch + "_" + project;
+        this.scope = ":`" + label + "`";
+        this.vectorIndex = "vectors_" + label;
+    }
+
+    public String project() {
+        return project;
+    }
+
+    public long epoch() {
+        return epoch;
+    }
+
+    // the label every node of this project carries
+    public String label() {
+        return label;
+    }
+
+    public String vectorIndex() {
+        return vectorIndex;
+    }
+
+    // { epoch, project } for a project label, else null
+    static Object[] parseLabel(String label) {
+        Matcher m = PROJECT_LABEL.matcher(label);
+        return m.matches() ? new Object[] { Long.parseLong(m.group(1)), m.group(2) } : null;
+    }
+
+    public static boolean isProjectLabel(String label) {
+        return parseLabel(label) != null;
+    }
+
+    @Override
+    public String kind() {
+        return EmbeddedNeo4j.isRunning() ? "neo4j-embedded" : "neo4j";
+    }
+
+    // from the background heartbeat, not a round trip
+    @Override
+    public boolean isAvailable() {
+        if (Neo4jConnection.driver() == null) {
+            System.err.println("Neo4j driver not initialized. Call initNeo4jConnection() first.");
+            return false;
+        }
+        return Neo4jConnection.isAvailable();
+    }
+
+    // ---------------------------------------------------------------
+    //                          writes
+    // ---------------------------------------------------------------
+    @Override
+    public void mergeNode(NodeKey node, Map<String, Object> properties) {
+        String merge = "MERGE (n:" + node.label() + scope + " {" + node.property() + ": $key})";
+        if (properties.isEmpty()) {
+            DbClient.runQuery(merge, Values.parameters("key", node.value()));
+        } else {
+            DbClient.runQuery(merge + " SET n += $props", Values.parameters("key", node.value(), "props", properties));
+        }
+    }
+
+    @Override
+    public void createNode(String label, Map<String, Object> properties) {
+        DbClient.runQuery("CREATE (n:" + label + scope + ") SET n = $props", Values.parameters("props", properties));
+    }
+
+    @Override
+    public void mergeEdge(NodeKey from, String type, NodeKey to, boolean mergeTarget) {
+        String query = mergeTarget
+                ? "MATCH (a:" + from.label() + scope + " {" + from.property() + ": $from}) "
+                + "MERGE (b:" + to.label() + scope + " {" + to.property() + ": $to}) "
+                + "MERGE (a)-[:" + type + "]->(b)"
+                : "MATCH (a:" + from.label() + scope + " {" + from.property() + ": $from}), "
+                + "(b:" + to.label() + scope + " {" + to.property() + ": $to}) "
+                + "MERGE (a)-[:" + type + "]->(b)";
+        DbClient.runQuery(query, Values.parameters("from", from.value(), "to", to.value()));
+    }
+
+    @Override
+    public void createAttached(NodeKey owner, String ownerType, String label, Map<String, Object> properties,
+            String targetType, NodeKey target) {
+        StringBuilder query = new StringBuilder()
+                .append("MATCH (o:").append(owner.label()).append(scope)
+                .append(" {").append(owner.property()).append(": $owner}) ")
+                .append("CREATE (n:").append(label).append(scope).append(") SET n = $props ");
+        if (target != null) {
+            query.append("MERGE (t:").append(target.label()).append(scope)
+                    .append(" {").append(target.property()).append(": $target}) ");
+        }
+        query.append("MERGE (o)-[:").append(ownerType).append("]->(n)");
+        if (target != null) {
+            query.append(" MERGE (n)-[:").append(targetType).append("]->(t)");
+        }
+        DbClient.runQuery(query.toString(), Values.parameters(
+                "owner", owner.value(),
+                "props", properties,
+                "target", target == null ? null : target.value()));
+    }
+
+    @Override
+    public List<JSONObject> codeToEmbed(long afterId, int limit) {
+        try (Session session = DbClient.readSession()) {
+            return session.executeRead(tx -> {
+                List<JSONObject> batch = new ArrayList<>();
+                // graphs from before the blob store carry the code inline
+                var result = tx.run("MATCH (m:Method" + scope + ") WHERE (m." + BlobStore.HASH_PROPERTY + " IS NOT NULL "
+                        + "OR m.code IS NOT NULL) AND id(m) > $after "
+                        + "RETURN id(m) AS id, m." + BlobStore.HASH_PROPERTY + " AS hash, m.code AS code ORDER BY id LIMIT $limit",
+                        Values.parameters("after", afterId, "limit", limit));
+                while (result.hasNext()) {
+                    var rec = result.next();
+                    String code = BlobStore.get(rec.get("hash").asString(null));
+                    // "" when the blob is gone, so the page still moves the cursor along
+                    code = code != null ? code : rec.get("code").asString("");
+                    batch.add(new JSONObject()
+                            .put("id", rec.get("id").asLong())
+                            .put("code", code));
+                }
+                return batch;
+            });
+        }
+    }
+
+    // same index Embed.py builds; only methods carry an embedding, so the project label is enough
+    @Override
+    public void prepareVectors(int dimensions) {
+        DbClient.runQuery("DROP INDEX `" + vectorIndex + "` IF EXISTS");
+        DbClient.runQuery("CREATE VECTOR INDEX `" + vectorIndex + "` FOR (m" + scope + ") ON (m.embedding) "
+                + "OPTIONS {indexConfig: {`vector.dimensions`: " + dimensions
+                + ", `vector.similarity_function`: 'cosine'}}");
+    }
+
+    @Override
+    public void setVector(long nodeId, double[] vector) {
+        DbClient.runQuery("MATCH (m) WHERE id(m) = $id SET m.embedding = $embedding",
+                Values.parameters("id", nodeId, "embedding", vector));
+    }
+
+    // answered from the count store (one label), no scan
+    @Override
+    public long nodeCount() {
+        try (Session session = DbClient.readSession()) {
+            return session.run("MATCH (n" + scope + ") RETURN count(n) AS c").single().get("c").asLong();
+        }
+    }
+
+    /*
+     * DELETE_BATCH nodes per transaction, so neither side has to hold the
+     * whole graph in one transaction's state, and reads of other projects go
+     * on in between. Projects runs this on a background thread.
+     */
+    @Override
+    public void clear() {
+        long deleted = 0;
+        try (Session session = DbClient.writeSession()) {
+            while (true) {
+                long n = session.executeWrite(tx -> tx.run(
+                        "MATCH (n" + scope + ") WITH n LIMIT $batch DETACH DELETE n RETURN count(*) AS c",
+                        Values.parameters("batch", DELETE_BATCH)).single().get("c").asLong());
+                deleted += n;
+                if (n < DELETE_BATCH) {
+                    break;
+                }
+            }
+            session.executeWriteWithoutResult(tx -> tx.run("DROP INDEX `" + vectorIndex + "` IF EXISTS").consume());
+        }
+        if (deleted > 0) {
+            System.out.println("[Neo4jGraphStore] deleted " + deleted + " nodes of " + label);
+        }
+    }
+
+    @Override
+    public JSONObject stats() {
+        return Neo4jConnection.stats()
+                .put("embedded", EmbeddedNeo4j.stats())
+                .put("label", label)
+                .put("vectorIndex", vectorIndex);
+    }
+
+    // ---------------------------------------------------------------
+    //                          snapshots
+    // ---------------------------------------------------------------
+    // Neo4j ids become dense indexes in id order; the embedding property becomes the node's vector.
+    // The driver may retry a transaction function, so each attempt fills its own
+    // buffers and nothing outside is touched until executeRead has returned.
+    @Override
+    public GraphImage image() {
+        NodeRows nodes;
+        EdgeRows edges;
+        try (Session session = DbClient.readSession()) {
+            nodes = session.executeRead(tx -> {
+                NodeRows rows = new NodeRows();
+                var result = tx.run("MATCH (n" + scope + ") RETURN id(n) AS id, "
+                        + "[l IN labels(n) WHERE l <> $label] AS labels, properties(n) AS props ORDER BY id",
+                        Values.parameters("label", label));
+                while (result.hasNext()) {
+                    var rec = result.next();
+                    rows.add(rec.get("id").asLong(), rec.get("labels").asList(v -> v.asString()), rec.get("props").asMap());
+                }
+                return rows;
+            });
+            edges = session.executeRead(tx -> {
+                EdgeRows rows = new EdgeRows();
+                var result = tx.run("MATCH (a" + scope + ")-[r]->(b) RETURN id(a) AS a, type(r) AS type, id(b) AS b");
+                while (result.hasNext()) {
+                    var rec = result.next();
+                    int a = Arrays.binarySearch(nodes.ids, 0, nodes.count, rec.get("a").asLong());
+                    int b = Arrays.binarySearch(nodes.ids, 0, nodes.count, rec.get("b").asLong());
+                    if (a >= 0 && b >= 0) { // both ends existed when the nodes were read
+                        rows.add(a, rec.get("type").asString(), b);
+                    }
+                }
+                return rows;
+            });
+        }
+
+        GraphImage image = new GraphImage();
+        for (int i = 0; i < nodes.count; i++) {
+            int n = image.addNode(nodes.labels.get(i));
+            for (Map.Entry<String, Object> prop : nodes.props.get(i).entrySet()) {
+                if (prop.getKey().equals("embedding")) {
+                    image.addVector(n, toDoubles((List<?>) prop.getValue()));
+                } else {
+                    image.set(n, prop.getKey(), prop.getValue());
+                }
+            }
+        }
+        for (int e = 0; e < edges.count; e++) {
+            image.addEdge(edges.from[e], edges.types.get(e), edges.to[e]);
+        }
+        return image;
+    }
+
+    private static List<Double> toDoubles(List<?> values) {
+        List<Double> doubles = new ArrayList<>(values.size());
+        for (Object value : values) {
+            doubles.add(((Number) value).doubleValue());
+        }
+        return doubles;
+    }
+
+    // one read attempt's nodes, in id order
+    private static final class NodeRows {
+        long[] ids = new long[1024];
+        final List<List<String>> labels = new ArrayList<>();
+        final List<Map<String, Object>> props = new ArrayList<>();
+        int count;
+
+        void add(long id, List<String> nodeLabels, Map<String, Object> nodeProps) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = id;
+            labels.add(nodeLabels);
+            props.add(nodeProps);
+        }
+    }
+
+    // one read attempt's edges, as node indexes
+    private static final class EdgeRows {
+        int[] from = new int[1024];
+        int[] to = new int[1024];
+        final List<String> types = new ArrayList<>();
+        int count;
+
+        void add(int a, String type, int b) {
+            if (count == from.length) {
+                from = Arrays.copyOf(from, count * 2);
+                to = Arrays.copyOf(to, count * 2);
+            }
+            from[count] = a;
+            to[count++] = b;
+            types.add(type);
+        }
+    }
+
+    /*
+     * Clears the database and replays the image as UNWIND batches: nodes per
+     * label set (labels can't be parameters), edges per type, then vectors and
+     * the vector index.
+     */
+    @Override
+    public void load(GraphImage image) {
+        clear();
+        long[] ids = new long[image.nodeCount];
+
+        Map<Integer, List<Integer>> byLabels = new LinkedHashMap<>();
+        for (int n = 0; n < image.nodeCount; n++) {
+            byLabels.computeIfAbsent(image.nodeLabels[n], k -> new ArrayList<>()).add(n);
+        }
+        try (Session session = DbClient.writeSession()) {
+            for (List<Integer> nodes : byLabels.values()) {
+                String labels = String.join(":", image.labels(nodes.get(0)));
+                String query = "UNWIND $rows AS row CREATE (n" + (labels.isEmpty() ? "" : ":" + labels) + scope + ") "
+                        + "SET n = row.props RETURN row.i AS i, id(n) AS id";
+                for (int from = 0; from < nodes.size(); from += LOAD_BATCH) {
+                    List<Map<String, Object>> rows = new ArrayList<>();
+                    for (int n : nodes.subList(from, Math.min(nodes.size(), from + LOAD_BATCH))) {
+                        rows.add(Map.of("i", n, "props", image.properties(n)));
+                    }
+                    session.executeWriteWithoutResult(tx -> {
+                        var result = tx.run(query, Values.parameters("rows", rows));
+                        while (result.hasNext()) {
+                            var rec = result.next();
+                            ids[rec.get("i").asInt()] = rec.get("id").asLong();
+                        }
+                    });
+                }
+            }
+
+            for (int t = 0; t < image.typeNames.size(); t++) {
+                String query = "UNWIND $rows AS row MATCH (a) WHERE id(a) = row[0] MATCH (b) WHERE id(b) = row[1] "
+                        + "CREATE (a)-[:" + image.typeNames.get(t) + "]->(b)";
+                List<List<Long>> rows = new ArrayList<>();
+                for (int e = 0; e < image.edgeCount; e++) {
+                    if (image.edgeType[e] == t) {
+                        rows.add(List.of(ids[image.edgeSrc[e]], ids[image.edgeDst[e]]));
+                    }
+                    if (rows.size() == LOAD_BATCH || (e == image.edgeCount - 1 && !rows.isEmpty())) {
+                        List<List<Long>> batch = rows;
+                        session.executeWriteWithoutResult(tx -> tx.run(query, Values.parameters("rows", batch)).consume());
+                        rows = new ArrayList<>();
+                    }
+                }
+            }
+
+            int dims = image.dimensions;
+            for (int from = 0; from < image.vectorCount; from += LOAD_BATCH / 5) {
+                List<Map<String, Object>> rows = new ArrayList<>();
+                for (int slot = from; slot < Math.min(image.vectorCount, from + LOAD_BATCH / 5); slot++) {
+                    double[] vector = new double[dims];
+                    for (int i = 0; i < dims; i++) {
+                        vector[i] = image.vectors[slot * dims + i];
+                    }
+                    rows.add(Map.of("id", ids[image.vectorNode[slot]], "embedding", vector));
+                }
+                session.executeWriteWithoutResult(tx -> tx.run(
+                        "UNWIND $rows AS row MATCH (m) WHERE id(m) = row.id SET m.embedding = row.embedding",
+                        Values.parameters("rows", rows)).consume());
+            }
+        }
+        if (image.vectorCount > 0) {
+            prepareVectors(image.dimensions);
+        }
+    }
+
+    // ---------------------------------------------------------------
+    //                          reads
+    // ---------------------------------------------------------------
+    @Override
+    public Reader reader() {
+        return new Neo4jReader();
+    }
+
+    /*
+     * The rules as Cypher. Nodes reached over several paths are counted once
+     * against the limit; with a label, the shortest path decides the order.
+     */
+    private String expansionQuery(Traversal traversal) {
+        return expansionQueries.computeIfAbsent(traversal, t -> {
+            String rel = (t.relType() == null ? "" : ":" + t.relType()) + "*1.." + t.maxHops();
+            if (t.label() == null) {
+                return """
+                    MATCH (start%s)
+                    WHERE id(start) = $id
+
+                    MATCH (start)-[%s]-(n%s)
+                    WITH DISTINCT n
+                    LIMIT $limit
+                    RETURN collect(id(n)) AS ids
+                    """.formatted(scope, rel, scope);
+            }
+            return """
+                MATCH (start%s)
+                WHERE id(start) = $id
+
+                MATCH path = (start)-[%s]-(m:%s%s)
+                WHERE id(m) <> id(start)
+                WITH m, min(length(path)) AS depth
+                ORDER BY depth ASC
+                LIMIT $limit
+
+                RETURN collect(id(m)) AS ids
+                """.formatted(scope, rel, t.label(), scope);
+        });
+    }
+
+    private final class Neo4jReader implements Reader {
+
+        private Session session;
+
+        private Session session() {
+            if (session == null) {
+                session = DbClient.readSession();
+            }
+            return session;
+        }
+
+        // in this JVM when Neo4j is embedded, else one read transaction on the session; timeoutMillis <= 0: none
+        private List<Map<String, Object>> rows(String cypher, Map<String, Object> parameters, long timeoutMillis) {
+            if (EmbeddedNeo4j.isRunning()) {
+                List<Map<String, Object>> rows = EmbeddedNeo4j.read(cypher, parameters, timeoutMillis);
+                if (rows != null) {
+                    return rows;
+                }
+            }
+            TransactionConfig config = timeoutMillis <= 0
+                    ? TransactionConfig.empty()
+                    : TransactionConfig.builder().withTimeout(Duration.ofMillis(timeoutMillis)).build();
+            return session().executeRead(tx -> tx.run(cypher, parameters).list(Record::asMap), config);
+        }
+
+        @Override
+        public List<JSONObject> vectorSearch(double[] query, int limit) {
+            // the label check only matters for an index left over from before projects
+            String cypher = String.format("""
+                CALL db.index.vector.queryNodes('%s', %d, $queryEmbedding)
+                  YIELD node, score
+                WHERE node:`%s`
+                RETURN
+                  id(node)       AS id,
+                  score          AS similarity
+                ORDER BY similarity DESC
+                """, vectorIndex, limit, label);
+
+            List<JSONObject> hits = new ArrayList<>();
+            for (Map<String, Object> row : rows(cypher, Map.of("queryEmbedding", query), 0)) {
+                hits.add(new JSONObject()
+                        .put("id", ((Number) row.get("id")).longValue())
+                        .put("similarity", ((Number) row.get("similarity")).doubleValue()));
+            }
+            return hits;
+        }
+
+        @Override
+        public long[] expand(long seedId, Traversal traversal, int limit, long timeoutMillis) {
+            List<Long> ids = new ArrayList<>();
+            for (Map<String, Object> row : rows(expansionQuery(traversal), Map.of("id", seedId, "limit", limit), timeoutMillis)) {
+                for (Object id : (List<?>) row.get("ids")) {
+                    ids.add(((Number) id).longValue());
+                }
+            }
+            long[] arr = new long[ids.size()];
+            for (int i = 0; i < arr.length; i++) {
+                arr[i] = ids.get(i);
+            }
+            return arr;
+        }
+
+        @Override
+        public JSONObject outline(List<Long> nodeIds) {
+            // ids are database-wide; the scope keeps other projects' nodes out
+            String outlineQuery = """
+                MATCH (n%s) WHERE id(n) IN $ids
+                OPTIONAL MATCH (n)-[r]->(m%s) WHERE id(m) IN $ids
+                RETURN id(n) AS id, [l IN labels(n) WHERE l <> $label] AS labels, coalesce(n.name, n.path) AS name,
+                       collect(CASE WHEN r IS NULL THEN null
+                               ELSE {id: id(r), type: type(r), end: id(m)} END) AS out
+                """.formatted(scope, scope);
+
+            List<JSONObject> nodes = new ArrayList<>();
+            List<JSONObject> rels = new ArrayList<>();
+            for (Map<String, Object> row : rows(outlineQuery, Map.of("ids", nodeIds, "label", label), 0)) {
+                long id = ((Number) row.get("id")).longValue();
+                Object name = row.get("name");
+                nodes.add(new JSONObject()
+                        .put("id", id)
+                        .put("labels", new JSONArray((List<?>) row.get("labels")))
+                        .put("name", name == null ? JSONObject.NULL : name));
+
+                for (Object out : (List<?>) row.get("out")) {
+                    Map<?, ?> edge = (Map<?, ?>) out;
+                    rels.add(new JSONObject()
+                            .put("id", ((Number) edge.get("id")).longValue())
+                            .put("type", edge.get("type"))
+                            .put("start", id)
+                            .put("end", ((Number) edge.get("end")).longValue()));
+                }
+            }
+            return new JSONObject()
+                    .put("nodes", nodes)
+                    .put("relationships", rels);
+        }
+
+        @Override
+        public List<JSONObject> nodeDetails(List<Long> nodeIds) {
+            // properties rather than the node, which an in-process read can't hand out past its transaction
+            String nodeQuery
+                    = "MATCH (n" + scope + ") WHERE id(n) IN $ids "
+                    + "RETURN id(n) AS id, [l IN labels(n) WHERE l <> $label] AS labels, properties(n) AS props";
+
+            List<JSONObject> nodesDetail = new ArrayList<>();
+            for (Map<String, Object> row : rows(nodeQuery, Map.of("ids", nodeIds, "label", label), 0)) {
+                Map<String, Object> props = new HashMap<>();
+                ((Map<?, ?>) row.get("props")).forEach((key, value) -> props.put((String) key, value));
+                props.remove("embedding");
+                props.remove("start_line");
+                props.remove("end_line");
+                Object hash = props.remove(BlobStore.HASH_PROPERTY);
+                if (hash != null) {
+                    props.put("code", BlobStore.get((String) hash));
+                }
+
+                nodesDetail.add(new JSONObject()
+                        .put("id", ((Number) row.get("id")).longValue())
+                        .put("labels", new JSONArray((List<?>) row.get("labels")))
+                        .put("properties", new JSONObject(props)));
+            }
+            return nodesDetail;
+        }
+
+        @Override
+        public List<JSONObject> edges(List<Long> edgeIds) {
+            String relQuery
+                    = "MATCH (" + scope + ")-[r]-() WHERE id(r) IN $ids "
+                    + "RETURN id(r) AS id, type(r) AS type, "
+                    + "id(startNode(r)) AS start, id(endNode(r)) AS end";
+
+            List<JSONObject> rels = new ArrayList<>();
+            for (Map<String, Object> row : rows(relQuery, Map.of("ids", edgeIds), 0)) {
+                rels.add(new JSONObject()
+                        .put("type", row.get("type"))
+                        .put("start", ((Number) row.get("start")).longValue())
+                        .put("end", ((Number) row.get("end")).longValue()));
+            }
+            return rels;
+        }
+
+        @Override
+        public void close() {
+            if (session != null) {
+                session.close();
+            }
+        }
+    }
+}
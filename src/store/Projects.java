@@ -0,0 +1,327 @@
+package store;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.neo4j.driver.Session;
+
+import scrape.DbClient;
+
+/*
+ * The named search spaces (projects) of the connected backend, each its own
+ * GraphStore: a MemoryGraphStore per project, or a Neo4jGraphStore per
+ * project label in the one database.
+ *
+ * Resetting or deleting a project never deletes inline. The project gets a
+ * fresh store at once (for Neo4j, the next epoch's label) and the old one is
+ * emptied on a single background thread, in batches, while everything else
+ * carries on. An epoch is never handed out twice, so a store being emptied
+ * can't take a recreated project's nodes with it. The old label is recorded
+ * on a DELETED_LABEL marker node until it is empty; if the process dies first,
+ * the next discovery finds the marked label and queues it again instead of
+ * bringing it back as the live epoch.
+ *
+ * Neo4j projects are discovered from the database's labels on first use after
+ * a (re)connect; until that succeeds there is no store to hand out. Nodes
+ * from before projects existed carry no project label; discovery adopts them
+ * into the default project on a background thread of its own. The default
+ * project is served meanwhile, filling in as the batches land, and the
+ * listeners hear when it is complete.
+ */
+public class Projects {
+
+    public static final String DEFAULT = "default";
+
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9_-]{1,48}");
+    private static final String LEGACY_VECTOR_INDEX = "methodEmbeddings";
+    // carries the project prefix, so legacy adoption leaves the markers alone
+    private static final String DELETED_LABEL = Neo4jGraphStore.LABEL_PREFIX + "Deleted";
+
+    // kept across reconnects, so switching away from memory: and back doesn't lose the graphs
+    private static final Map<String, MemoryGraphStore> memory = new ConcurrentHashMap<>();
+    private static final Map<String, Neo4jGraphStore> neo4j = new ConcurrentHashMap<>();
+    // highest epoch each name has used, live, being emptied or deleted
+    private static final Map<String, Long> epochs = new ConcurrentHashMap<>();
+    private static volatile boolean useMemory;
+    private static volatile boolean discovered;
+
+    private static final ExecutorService deleter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "graph-delete");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicInteger pendingDeletes = new AtomicInteger();
+
+    private static final ExecutorService adopter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "graph-adopt");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final AtomicBoolean adopting = new AtomicBoolean();
+    private static final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    private Projects() {
+        /* Utility class; no public constructor. */ }
+
+    public static boolean isValidName(String name) {
+        return name != null && NAME.matcher(name).matches();
+    }
+
+    // run on a background thread whenever a project's contents changed behind the caller's back
+    public static void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    private static void changed() {
+        for (Runnable listener : listeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                System.err.println("[Projects] listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------
+    //                          backend
+    // ---------------------------------------------------------------
+    public static synchronized void useMemory() {
+        useMemory = true;
+    }
+
+    // reconnected: a new driver, so the projects are looked up again
+    public static synchronized void useNeo4j(boolean reconnected) {
+        useMemory = false;
+        if (reconnected) {
+            neo4j.clear();
+            discovered = false;
+        }
+    }
+
+    // ---------------------------------------------------------------
+    //                          projects
+    // ---------------------------------------------------------------
+    // the project's store, created empty if it doesn't exist yet; IllegalStateException while Neo4j can't be asked
+    public static GraphStore get(String name) {
+        if (useMemory) {
+            return memory.computeIfAbsent(name, k -> new MemoryGraphStore());
+        }
+        Neo4jGraphStore store = neo4j.get(name);
+        return store != null ? store : neo4jStore(name);
+    }
+
+    private static synchronized GraphStore neo4jStore(String name) {
+        if (!ensureDiscovered()) {
+            // which epoch is live is only known from the database; any guess could be a stale or deleted one
+            throw new IllegalStateException("Neo4j projects not discovered yet");
+        }
+        return neo4j.computeIfAbsent(name, Projects::freshStore);
+    }
+
+    private static synchronized boolean ensureDiscovered() {
+        if (!discovered) {
+            try {
+                discover();
+                discovered = true;
+            } catch (RuntimeException e) {
+                System.err.println("[Projects] discovery failed: " + e.getMessage());
+            }
+        }
+        return discovered;
+    }
+
+    // a store under an epoch above any this name has had
+    private static Neo4jGraphStore freshStore(String name) {
+        return new Neo4jGraphStore(name, epochs.merge(name, 0L, (used, ignored) -> used + 1));
+    }
+
+    private static void remember(Neo4jGraphStore store) {
+        epochs.merge(store.project(), store.epoch(), Math::max);
+    }
+
+    public static List<String> names() {
+        TreeSet<String> names = new TreeSet<>(useMemory ? memory.keySet() : neo4j.keySet());
+        names.add(DEFAULT);
+        return new ArrayList<>(names);
+    }
+
+    // swaps in an empty store for the project and empties the old one in the background; returns the new one
+    public static synchronized GraphStore reset(String name) {
+        if (useMemory) {
+            // nothing to delete: the old arrays go when the last reader lets go of them
+            MemoryGraphStore fresh = new MemoryGraphStore();
+            memory.put(name, fresh);
+            return fresh;
+        }
+        Neo4jGraphStore old = (Neo4jGraphStore) get(name);
+        // until the fresh epoch has nodes, the marker is all that tells a restart the old one is dead
+        markDeleted(old);
+        Neo4jGraphStore fresh = freshStore(name);
+        neo4j.put(name, fresh);
+        deleteInBackground(old);
+        return fresh;
+    }
+
+    public static synchronized void delete(String name) {
+        if (useMemory) {
+            memory.remove(name);
+            return;
+        }
+        // a name that never existed has nothing to delete
+        Neo4jGraphStore old = ensureDiscovered() ? neo4j.get(name) : null;
+        if (old == null) {
+            return;
+        }
+        markDeleted(old);
+        neo4j.remove(name);
+        deleteInBackground(old);
+    }
+
+    private static void markDeleted(Neo4jGraphStore store) {
+        try (Session session = DbClient.writeSession()) {
+            session.run("MERGE (:`" + DELETED_LABEL + "` {label: $label})", Map.of("label", store.label())).consume();
+        }
+    }
+
+    private static void deleteInBackground(Neo4jGraphStore store) {
+        pendingDeletes.incrementAndGet();
+        deleter.submit(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                store.clear();
+                try (Session session = DbClient.writeSession()) {
+                    session.run("MATCH (d:`" + DELETED_LABEL + "` {label: $label}) DELETE d", Map.of("label", store.label())).consume();
+                }
+                System.out.println("[Projects] emptied " + store.label() + " in " + (System.currentTimeMillis() - start) + " ms");
+            } catch (Exception e) {
+                // left for the next discovery to pick up
+                System.err.println("[Projects] deleting " + store.label() + " failed: " + e.getMessage());
+            } finally {
+                pendingDeletes.decrementAndGet();
+            }
+        });
+    }
+
+    // node counts come from the count store, one label each
+    public static JSONObject stats() {
+        JSONArray projects = new JSONArray();
+        for (String name : names()) {
+            JSONObject project = new JSONObject().put("name", name);
+            try {
+                project.put("nodes", get(name).nodeCount());
+            } catch (RuntimeException e) {
+                project.put("error", e.getMessage());
+            }
+            projects.put(project);
+        }
+        return new JSONObject()
+                .put("backend", useMemory ? "memory" : "neo4j")
+                .put("projects", projects)
+                .put("pendingDeletes", pendingDeletes.get())
+                .put("adopting", adopting.get());
+    }
+
+    // ---------------------------------------------------------------
+    //                          discovery (Neo4j)
+    // ---------------------------------------------------------------
+    private static void discover() {
+        List<Neo4jGraphStore> found = new ArrayList<>();
+        Set<String> deleted = new HashSet<>();
+        long scoped = 0;
+        long total;
+        try (Session session = DbClient.readSession()) {
+            for (var rec : session.run("CALL db.labels() YIELD label RETURN label").list()) {
+                Object[] parsed = Neo4jGraphStore.parseLabel(rec.get("label").asString());
+                if (parsed != null) {
+                    found.add(new Neo4jGraphStore((String) parsed[1], (Long) parsed[0]));
+                }
+            }
+            for (var rec : session.run("MATCH (d:`" + DELETED_LABEL + "`) RETURN d.label AS label").list()) {
+                deleted.add(rec.get("label").asString());
+            }
+            for (Neo4jGraphStore store : found) {
+                scoped += store.nodeCount();
+            }
+            // both from the count store; the markers belong to no project
+            total = session.run("MATCH (n) RETURN count(n) AS c").single().get("c").asLong()
+                    - session.run("MATCH (d:`" + DELETED_LABEL + "`) RETURN count(d) AS c").single().get("c").asLong();
+        }
+
+        // the newest epoch of each project is the live one; older ones are leftovers of a reset
+        for (Neo4jGraphStore store : found) {
+            remember(store);
+            if (deleted.contains(store.label())) {
+                // a delete the last run didn't finish
+                deleteInBackground(store);
+                continue;
+            }
+            Neo4jGraphStore live = neo4j.get(store.project());
+            if (live == null || live.epoch() < store.epoch()) {
+                neo4j.put(store.project(), store);
+                if (live != null) {
+                    deleteInBackground(live);
+                }
+            } else {
+                deleteInBackground(store);
+            }
+        }
+
+        if (total > scoped) {
+            adoptInBackground(neo4j.computeIfAbsent(DEFAULT, Projects::freshStore), total - scoped);
+        }
+        System.out.println("[Projects] found " + neo4j.keySet() + " in Neo4j");
+    }
+
+    private static void adoptInBackground(Neo4jGraphStore store, long nodes) {
+        // a rediscovery while a run is still going leaves it to that run
+        if (!adopting.compareAndSet(false, true)) {
+            return;
+        }
+        adopter.submit(() -> {
+            long start = System.currentTimeMillis();
+            try {
+                adoptLegacy(store, nodes);
+                System.out.println("[Projects] adopted into " + store.label() + " in " + (System.currentTimeMillis() - start) + " ms");
+            } catch (Exception e) {
+                // the nodes stay unscoped; the next discovery tries again
+                System.err.println("[Projects] adopting into " + store.label() + " failed: " + e.getMessage());
+            } finally {
+                adopting.set(false);
+            }
+            changed();
+        });
+    }
+
+    /*
+     * Labels the unscoped nodes into the default project, batched server-side,
+     * and moves their vectors from the old global index to the project's.
+     */
+    private static void adoptLegacy(Neo4jGraphStore store, long nodes) {
+        System.out.println("[Projects] adopting " + nodes + " nodes without a project into " + store.label());
+        int dimensions;
+        try (Session session = DbClient.writeSession()) {
+            session.run("MATCH (n) WHERE none(l IN labels(n) WHERE l STARTS WITH '" + Neo4jGraphStore.LABEL_PREFIX + "') "
+                    + "CALL { WITH n SET n:`" + store.label() + "` } IN TRANSACTIONS OF 10000 ROWS").consume();
+            var sample = session.run("MATCH (m:Method:`" + store.label() + "`) WHERE m.embedding IS NOT NULL "
+                    + "RETURN size(m.embedding) AS d LIMIT 1").list();
+            dimensions = sample.isEmpty() ? 0 : sample.get(0).get("d").asInt();
+            session.run("DROP INDEX " + LEGACY_VECTOR_INDEX + " IF EXISTS").consume();
+        }
+        if (dimensions > 0) {
+            store.prepareVectors(dimensions);
+        }
+    }
+}
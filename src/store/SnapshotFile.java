@@ -0,0 +1,540 @@
+package store;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/*
+ * A GraphImage on disk. Little-endian throughout:
+ *
+ *   "PSNP" version:int
+ *   section chunks, each zlib-compressed on its own
+ *   table of contents: count:int, then per chunk
+ *       nameLength:short name:utf8 offset:long compressed:int raw:int
+ *   tocOffset:long "PSNP"
+ *
+ * The "meta" chunk is JSON (counts, dictionaries, column names and types).
+ * Everything else is a typed array split into chunks of at most CHUNK_BYTES
+ * raw, named "section#k": label masks and edge sources delta-coded per chunk,
+ * long columns as values plus presence words, string columns in groups of
+ * at most STRING_ROWS rows that stay within CHUNK_BYTES unless a single value
+ * is bigger (first row:int, rows:int, lengths with -1 for null, then the
+ * UTF-8 bytes; version 1 had no row header and always STRING_ROWS rows),
+ * vectors as packed floats. The code behind the image's code hashes comes along as the
+ * blob lengths and their bytes back to back; a restore puts them into the
+ * BlobStore, which recomputes the hashes.
+ *
+ * Reading maps each chunk straight from the file and inflates the chunks of a
+ * section in parallel into the final arrays, so a restore is disk reads plus
+ * inflate; nothing is parsed or re-embedded. The zlib checksum catches a
+ * damaged chunk. A file from a newer VERSION is refused.
+ */
+public class SnapshotFile {
+
+    public static final int VERSION = 2;
+
+    private static final int MAGIC = 0x504E5350; // "PSNP" little-endian
+    private static final int CHUNK_BYTES = 16 << 20;
+    private static final int STRING_ROWS = 1 << 16;
+    private static final int LEVEL = Integer.getInteger("purple.snapshot.level", Deflater.BEST_SPEED);
+
+    private SnapshotFile() {
+        /* Utility class; no public constructor. */ }
+
+    // Writes beside the target and moves it into place, so a crash never leaves half a snapshot. Returns the size.
+    public static long write(GraphImage image, JSONObject info, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        boolean moved = false;
+        try {
+            writeImage(image, info, tmp);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+        return Files.size(file);
+    }
+
+    private static void writeImage(GraphImage image, JSONObject info, Path tmp) throws IOException {
+        try (Writer out = new Writer(tmp)) {
+            JSONArray columns = new JSONArray();
+            for (Map.Entry<String, GraphImage.Column> entry : image.columns.entrySet()) {
+                GraphImage.Column column = entry.getValue();
+                columns.put(new JSONObject()
+                        .put("name", entry.getKey())
+                        .put("type", column.longs != null ? "long" : "string"));
+            }
+            List<byte[]> blobs = blobs(image);
+            long blobBytes = 0;
+            for (byte[] blob : blobs) {
+                blobBytes += blob.length;
+            }
+            if (blobBytes > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot of more than 2 GB of code isn't supported");
+            }
+            JSONObject meta = new JSONObject()
+                    .put("version", VERSION)
+                    .put("createdAt", System.currentTimeMillis())
+                    .put("info", info)
+                    .put("nodes", image.nodeCount)
+                    .put("edges", image.edgeCount)
+                    .put("vectors", image.vectorCount)
+                    .put("dimensions", image.dimensions)
+                    .put("labels", new JSONArray(image.labelNames))
+                    .put("relTypes", new JSONArray(image.typeNames))
+                    .put("columns", columns)
+                    .put("blobs", blobs.size())
+                    .put("blobBytes", blobBytes);
+            out.chunk("meta", ByteBuffer.wrap(meta.toString().getBytes(StandardCharsets.UTF_8)));
+
+            out.ints("node.labels", image.nodeLabels, image.nodeCount, true);
+            int c = 0;
+            for (GraphImage.Column column : image.columns.values()) {
+                String name = "column." + c++;
+                if (column.longs != null) {
+                    // padded out to every node; a column can stop short of nodes that lack the property
+                    out.longs(name + ".values", Arrays.copyOf(column.longs, image.nodeCount), image.nodeCount);
+                    int words = (image.nodeCount + 63) / 64;
+                    out.longs(name + ".present", Arrays.copyOf(column.present.toLongArray(), words), words);
+                } else {
+                    out.strings(name, column.strings, image.nodeCount);
+                }
+            }
+
+            out.ints("edge.src", image.edgeSrc, image.edgeCount, true);
+            out.ints("edge.dst", image.edgeDst, image.edgeCount, false);
+            out.bytes("edge.type", image.edgeType, image.edgeCount);
+
+            out.ints("vector.node", image.vectorNode, image.vectorCount, true);
+            out.floats("vector.data", image.vectors, image.vectorCount * image.dimensions);
+
+            int[] lengths = new int[blobs.size()];
+            byte[] data = new byte[(int) blobBytes];
+            for (int i = 0, at = 0; i < lengths.length; i++) {
+                byte[] blob = blobs.get(i);
+                lengths[i] = blob.length;
+                System.arraycopy(blob, 0, data, at, blob.length);
+                at += blob.length;
+            }
+            out.ints("blob.length", lengths, lengths.length, false);
+            out.bytes("blob.data", data, data.length);
+        }
+    }
+
+    // just the meta section
+    public static JSONObject describe(Path file) throws IOException {
+        try (Reader in = new Reader(file)) {
+            return in.meta();
+        }
+    }
+
+    public static GraphImage read(Path file) throws IOException {
+        try (Reader in = new Reader(file)) {
+            JSONObject meta = in.meta();
+            GraphImage image = new GraphImage();
+            for (Object label : meta.getJSONArray("labels")) {
+                image.labelNames.add((String) label);
+            }
+            for (Object type : meta.getJSONArray("relTypes")) {
+                image.typeNames.add((String) type);
+            }
+
+            int nodes = meta.getInt("nodes");
+            image.nodeCount = nodes;
+            image.nodeLabels = in.ints("node.labels", nodes, true);
+            JSONArray columns = meta.getJSONArray("columns");
+            for (int c = 0; c < columns.length(); c++) {
+                JSONObject spec = columns.getJSONObject(c);
+                GraphImage.Column column = new GraphImage.Column();
+                String name = "column." + c;
+                if (spec.getString("type").equals("long")) {
+                    column.longs = in.longs(name + ".values", nodes);
+                    column.present = BitSet.valueOf(in.longs(name + ".present", (nodes + 63) / 64));
+                } else {
+                    column.strings = in.strings(name, nodes);
+                }
+                image.columns.put(spec.getString("name"), column);
+            }
+
+            int edges = meta.getInt("edges");
+            image.edgeCount = edges;
+            image.edgeSrc = in.ints("edge.src", edges, true);
+            image.edgeDst = in.ints("edge.dst", edges, false);
+            image.edgeType = in.bytes("edge.type", edges);
+
+            int vectors = meta.getInt("vectors");
+            image.dimensions = meta.getInt("dimensions");
+            image.vectorCount = vectors;
+            image.vectorNode = in.ints("vector.node", vectors, true);
+            image.vectors = in.floats("vector.data", vectors * image.dimensions);
+
+            // absent from snapshots taken before the blob store
+            int blobs = meta.optInt("blobs");
+            if (blobs > 0) {
+                int[] lengths = in.ints("blob.length", blobs, false);
+                byte[] data = in.bytes("blob.data", meta.getInt("blobBytes"));
+                for (int i = 0, at = 0; i < blobs; at += lengths[i++]) {
+                    BlobStore.put(data, at, lengths[i]);
+                }
+            }
+            return image;
+        }
+    }
+
+    // each distinct code hash's content; ones the BlobStore doesn't have are left out
+    private static List<byte[]> blobs(GraphImage image) {
+        List<byte[]> blobs = new ArrayList<>();
+        GraphImage.Column hashes = image.columns.get(BlobStore.HASH_PROPERTY);
+        if (hashes == null || hashes.strings == null) {
+            return blobs;
+        }
+        Set<String> seen = new HashSet<>();
+        for (int n = 0; n < image.nodeCount && n < hashes.strings.length; n++) {
+            String hash = hashes.strings[n];
+            if (hash != null && seen.add(hash)) {
+                byte[] blob = BlobStore.bytes(hash);
+                if (blob != null) {
+                    blobs.add(blob);
+                }
+            }
+        }
+        return blobs;
+    }
+
+    // ---------------------------------------------------------------
+    //                          writing
+    // ---------------------------------------------------------------
+    private static final class Writer implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final Deflater deflater = new Deflater(LEVEL);
+        private final byte[] buffer = new byte[1 << 16];
+        private final List<Entry> toc = new ArrayList<>();
+
+        Writer(Path file) throws IOException {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            ByteBuffer header = little(8).putInt(MAGIC).putInt(VERSION).flip();
+            channel.write(header);
+        }
+
+        void ints(String name, int[] values, int count, boolean delta) throws IOException {
+            int per = CHUNK_BYTES / 4;
+            for (int k = 0, from = 0; from < count; k++, from += per) {
+                int n = Math.min(per, count - from);
+                ByteBuffer raw = little(n * 4);
+                int previous = 0;
+                for (int i = from; i < from + n; i++) {
+                    raw.putInt(delta ? values[i] - previous : values[i]);
+                    previous = values[i];
+                }
+                chunk(name + "#" + k, raw.flip());
+            }
+        }
+
+        void longs(String name, long[] values, int count) throws IOException {
+            int per = CHUNK_BYTES / 8;
+            for (int k = 0, from = 0; from < count; k++, from += per) {
+                int n = Math.min(per, count - from);
+                ByteBuffer raw = little(n * 8);
+                raw.asLongBuffer().put(values, from, n);
+                chunk(name + "#" + k, raw);
+            }
+        }
+
+        void floats(String name, float[] values, int count) throws IOException {
+            int per = CHUNK_BYTES / 4;
+            for (int k = 0, from = 0; from < count; k++, from += per) {
+                int n = Math.min(per, count - from);
+                ByteBuffer raw = little(n * 4);
+                raw.asFloatBuffer().put(values, from, n);
+                chunk(name + "#" + k, raw);
+            }
+        }
+
+        void bytes(String name, byte[] values, int count) throws IOException {
+            for (int k = 0, from = 0; from < count; k++, from += CHUNK_BYTES) {
+                chunk(name + "#" + k, ByteBuffer.wrap(values, from, Math.min(CHUNK_BYTES, count - from)));
+            }
+        }
+
+        // rows until the next one would take the chunk past CHUNK_BYTES (one at least), at most STRING_ROWS
+        void strings(String name, String[] values, int count) throws IOException {
+            for (int k = 0, from = 0; from < count; k++) {
+                List<byte[]> utf8 = new ArrayList<>();
+                long size = 8;
+                while (from + utf8.size() < count && utf8.size() < STRING_ROWS) {
+                    int row = from + utf8.size();
+                    String value = values != null && row < values.length ? values[row] : null;
+                    byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+                    long rowSize = 4L + (bytes == null ? 0 : bytes.length);
+                    if (!utf8.isEmpty() && size + rowSize > CHUNK_BYTES) {
+                        break;
+                    }
+                    utf8.add(bytes);
+                    size += rowSize;
+                }
+                if (size > Integer.MAX_VALUE - 8) {
+                    throw new IOException("A value of " + name + " is too large for a snapshot (" + size + " bytes)");
+                }
+                ByteBuffer raw = little((int) size).putInt(from).putInt(utf8.size());
+                for (byte[] value : utf8) {
+                    raw.putInt(value == null ? -1 : value.length);
+                }
+                for (byte[] value : utf8) {
+                    if (value != null) {
+                        raw.put(value);
+                    }
+                }
+                chunk(name + "#" + k, raw.flip());
+                from += utf8.size();
+            }
+        }
+
+        void chunk(String name, ByteBuffer raw) throws IOException {
+            long offset = channel.position();
+            int rawLength = raw.remaining();
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                ByteBuffer out = ByteBuffer.wrap(buffer, 0, n);
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+            }
+            toc.add(new Entry(name, offset, (int) (channel.position() - offset), rawLength));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                long tocOffset = channel.position();
+                int size = 4;
+                for (Entry entry : toc) {
+                    size += 2 + entry.name.getBytes(StandardCharsets.UTF_8).length + 16;
+                }
+                ByteBuffer out = little(size + 12).putInt(toc.size());
+                for (Entry entry : toc) {
+                    byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+                    out.putShort((short) name.length).put(name)
+                            .putLong(entry.offset).putInt(entry.compressed).putInt(entry.raw);
+                }
+                out.putLong(tocOffset).putInt(MAGIC).flip();
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(true);
+            } finally {
+                deflater.end();
+                channel.close();
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------
+    //                          reading
+    // ---------------------------------------------------------------
+    private static final class Reader implements AutoCloseable {
+
+        private final Path file;
+        private final FileChannel channel;
+        private final Map<String, Entry> toc = new HashMap<>();
+        private final int version;
+
+        Reader(Path file) throws IOException {
+            this.file = file;
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                if (size < 20) {
+                    throw new IOException(file + " is not a snapshot");
+                }
+                ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, 8).order(ByteOrder.LITTLE_ENDIAN);
+                ByteBuffer trailer = channel.map(FileChannel.MapMode.READ_ONLY, size - 12, 12).order(ByteOrder.LITTLE_ENDIAN);
+                if (header.getInt(0) != MAGIC || trailer.getInt(8) != MAGIC) {
+                    throw new IOException(file + " is not a snapshot");
+                }
+                version = header.getInt(4);
+                if (version > VERSION) {
+                    throw new IOException(file + " is snapshot version " + version + ", this build reads up to " + VERSION);
+                }
+                long tocOffset = trailer.getLong(0);
+                ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, tocOffset, size - 12 - tocOffset)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                for (int i = in.getInt(); i > 0; i--) {
+                    byte[] name = new byte[in.getShort()];
+                    in.get(name);
+                    Entry entry = new Entry(new String(name, StandardCharsets.UTF_8), in.getLong(), in.getInt(), in.getInt());
+                    toc.put(entry.name, entry);
+                }
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        JSONObject meta() throws IOException {
+            ByteBuffer raw = inflate("meta");
+            return new JSONObject(StandardCharsets.UTF_8.decode(raw).toString());
+        }
+
+        int[] ints(String name, int count, boolean delta) throws IOException {
+            int[] values = new int[count];
+            int per = CHUNK_BYTES / 4;
+            chunks(name, count, per, (k, raw) -> {
+                int from = k * per;
+                raw.asIntBuffer().get(values, from, raw.remaining() / 4);
+                if (delta) {
+                    for (int i = from + 1, end = from + raw.remaining() / 4; i < end; i++) {
+                        values[i] += values[i - 1];
+                    }
+                }
+            });
+            return values;
+        }
+
+        long[] longs(String name, int count) throws IOException {
+            long[] values = new long[count];
+            int per = CHUNK_BYTES / 8;
+            chunks(name, count, per, (k, raw) -> raw.asLongBuffer().get(values, k * per, raw.remaining() / 8));
+            return values;
+        }
+
+        float[] floats(String name, int count) throws IOException {
+            float[] values = new float[count];
+            int per = CHUNK_BYTES / 4;
+            chunks(name, count, per, (k, raw) -> raw.asFloatBuffer().get(values, k * per, raw.remaining() / 4));
+            return values;
+        }
+
+        byte[] bytes(String name, int count) throws IOException {
+            byte[] values = new byte[count];
+            chunks(name, count, CHUNK_BYTES, (k, raw) -> raw.get(values, k * CHUNK_BYTES, raw.remaining()));
+            return values;
+        }
+
+        String[] strings(String name, int count) throws IOException {
+            String[] values = new String[count];
+            int header = version >= 2 ? 8 : 0;
+            int chunks = version >= 2 ? chunkCount(name) : (count + STRING_ROWS - 1) / STRING_ROWS;
+            chunks(name, chunks, (k, raw) -> {
+                int from = version >= 2 ? raw.getInt(0) : k * STRING_ROWS;
+                int n = version >= 2 ? raw.getInt(4) : Math.min(STRING_ROWS, count - from);
+                if (from < 0 || n < 0 || from + n > count) {
+                    throw new IOException(file + ": section " + name + "#" + k + " is damaged");
+                }
+                int data = header + n * 4;
+                byte[] bytes = raw.array();
+                for (int i = 0; i < n; i++) {
+                    int length = raw.getInt(header + i * 4);
+                    if (length >= 0) {
+                        values[from + i] = new String(bytes, data, length, StandardCharsets.UTF_8);
+                        data += length;
+                    }
+                }
+            });
+            return values;
+        }
+
+        private int chunkCount(String name) {
+            int chunks = 0;
+            while (toc.containsKey(name + "#" + chunks)) {
+                chunks++;
+            }
+            return chunks;
+        }
+
+        // inflates chunks name#0.. (count items, per to a chunk) in parallel and hands each to fill
+        private void chunks(String name, int count, int per, ChunkConsumer fill) throws IOException {
+            chunks(name, (count + per - 1) / per, fill);
+        }
+
+        private void chunks(String name, int chunks, ChunkConsumer fill) throws IOException {
+            try {
+                IntStream.range(0, chunks).parallel().forEach(k -> {
+                    try {
+                        fill.accept(k, inflate(name + "#" + k));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        private ByteBuffer inflate(String name) throws IOException {
+            Entry entry = toc.get(name);
+            if (entry == null) {
+                throw new IOException(file + " has no section " + name);
+            }
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, entry.offset, entry.compressed);
+            // one spare byte, so running on to the zlib trailer (and its checksum) has room
+            byte[] out = new byte[entry.raw + 1];
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(in);
+                int n = 0;
+                while (n < out.length && !inflater.finished()) {
+                    int got = inflater.inflate(out, n, out.length - n);
+                    if (got == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    n += got;
+                }
+                if (!inflater.finished() || n != entry.raw) {
+                    throw new IOException(file + ": section " + name + " is damaged");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(file + ": section " + name + " is damaged (" + e.getMessage() + ")");
+            } finally {
+                inflater.end();
+            }
+            return ByteBuffer.wrap(out, 0, entry.raw).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private interface ChunkConsumer {
+
+        void accept(int chunk, ByteBuffer raw) throws IOException;
+    }
+
+    private record Entry(String name, long offset, int compressed, int raw) {
+    }
+
+    private static ByteBuffer little(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
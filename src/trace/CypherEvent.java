@@ -0,0 +1,23 @@
+package trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One DbClient.runQuery statement, whichever QueryRunner executed it.
+@Name("purple.Cypher")
+@Label("Cypher Statement")
+@Category({"PurpleSearch", "Neo4j"})
+@Description("A graph write issued through DbClient.runQuery")
+@StackTrace(false)
+public class CypherEvent extends Event {
+
+    @Label("Query")
+    public String query;
+
+    @Label("Parameters")
+    public int parameters;
+}
@@ -0,0 +1,30 @@
+package trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One AIClient.generateEmbedding call, gateway queueing and retries included.
+@Name("purple.Embedding")
+@Label("Embedding Call")
+@Category({"PurpleSearch", "Inference"})
+@Description("Text embedded through the embedding gateway, including time queued and retried")
+@StackTrace(false)
+public class EmbeddingEvent extends Event {
+
+    @Label("Priority")
+    public String priority;
+
+    @Label("Text Length")
+    @Description("Characters sent")
+    public int textLength;
+
+    @Label("Dimensions")
+    public int dimensions;
+
+    @Label("Succeeded")
+    public boolean succeeded;
+}
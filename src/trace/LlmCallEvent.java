@@ -0,0 +1,44 @@
+package trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// One upstream chat completion from LlmClient, streamed or not.
+@Name("purple.LlmCall")
+@Label("LLM Call")
+@Category({"PurpleSearch", "Inference"})
+@Description("An upstream chat completion")
+@StackTrace(false)
+public class LlmCallEvent extends Event {
+
+    @Label("Model")
+    public String model;
+
+    @Label("Streamed")
+    public boolean streamed;
+
+    @Label("Messages")
+    public int messages;
+
+    @Label("Request Size")
+    @DataAmount
+    public long requestBytes;
+
+    @Label("Reply Length")
+    @Description("Characters of assistant content received")
+    public int replyChars;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Time To First Token")
+    @Description("Streamed calls only")
+    @Timespan
+    public long firstTokenNanos;
+}
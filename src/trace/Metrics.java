@@ -0,0 +1,241 @@
+package trace;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/*
+ * Process-wide metrics, rendered in Prometheus text format by /api/metrics.
+ *
+ * Series are registered once (usually into a static final field) and then
+ * recorded into with no locking and no allocation: counters are LongAdders,
+ * histograms are a fixed array of LongAdder buckets. Registering the same
+ * name + labels again hands back the existing series. Values that already
+ * live elsewhere (cache hit counts, pool sizes) are registered as functions
+ * and only read when scraped.
+ */
+public class Metrics {
+
+    // seconds; roughly x2.5 steps from 1 ms to a minute
+    private static final double[] LATENCY_BUCKETS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+
+    // guarded by families
+    private static final Map<String, Family> families = new LinkedHashMap<>();
+
+    private Metrics() {
+        /* Utility class; no public constructor. */ }
+
+    public static final class Counter {
+
+        private final LongAdder value = new LongAdder();
+
+        private Counter() {
+        }
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long n) {
+            value.add(n);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    public static final class Histogram {
+
+        private final long[] boundsNanos;
+        private final double[] bounds;
+        // one per bound plus +Inf; not cumulative until rendered
+        private final LongAdder[] buckets;
+        private final LongAdder sumNanos = new LongAdder();
+
+        private Histogram(double[] bounds) {
+            this.bounds = bounds;
+            this.boundsNanos = new long[bounds.length];
+            for (int i = 0; i < bounds.length; i++) {
+                boundsNanos[i] = (long) (bounds[i] * 1e9);
+            }
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        public void observeNanos(long nanos) {
+            int i = 0;
+            while (i < boundsNanos.length && nanos > boundsNanos[i]) {
+                i++;
+            }
+            buckets[i].increment();
+            sumNanos.add(nanos);
+        }
+
+        // convenience for the usual start = System.nanoTime() ... pattern
+        public void observeSince(long startNanos) {
+            observeNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    private enum Type {
+        COUNTER, GAUGE, HISTOGRAM
+    }
+
+    private static final class Family {
+
+        final String name;
+        final String help;
+        final Type type;
+        // rendered label set ("" or {k="v",...}) -> Counter, Histogram, LongSupplier or DoubleSupplier
+        final Map<String, Object> series = new LinkedHashMap<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    // ---------------------------------------------------------------
+    //                          registration
+    // ---------------------------------------------------------------
+    // labels are alternating name, value pairs
+    public static Counter counter(String name, String help, String... labels) {
+        return (Counter) register(name, help, Type.COUNTER, labels, new Counter());
+    }
+
+    public static Histogram histogram(String name, String help, String... labels) {
+        return (Histogram) register(name, help, Type.HISTOGRAM, labels, new Histogram(LATENCY_BUCKETS));
+    }
+
+    // a monotonically increasing count that is kept somewhere else
+    public static void counterFunction(String name, String help, LongSupplier value, String... labels) {
+        register(name, help, Type.COUNTER, labels, value);
+    }
+
+    public static void gauge(String name, String help, DoubleSupplier value, String... labels) {
+        register(name, help, Type.GAUGE, labels, value);
+    }
+
+    private static Object register(String name, String help, Type type, String[] labels, Object metric) {
+        String labelSet = labelSet(labels);
+        synchronized (families) {
+            Family family = families.computeIfAbsent(name, n -> new Family(n, help, type));
+            if (family.type != type) {
+                throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+            }
+            Object existing = family.series.get(labelSet);
+            // functions are re-pointed, recorders are shared
+            if (existing != null && !(metric instanceof LongSupplier || metric instanceof DoubleSupplier)) {
+                return existing;
+            }
+            family.series.put(labelSet, metric);
+            return metric;
+        }
+    }
+
+    private static String labelSet(String[] labels) {
+        if (labels.length == 0) {
+            return "";
+        }
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels must be name, value pairs");
+        }
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(labels[i]).append("=\"").append(escape(labels[i + 1])).append('"');
+        }
+        return sb.append('}').toString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    // ---------------------------------------------------------------
+    //                          exposition
+    // ---------------------------------------------------------------
+    // Prometheus text format 0.0.4
+    public static String scrape() {
+        List<Family> snapshot;
+        synchronized (families) {
+            snapshot = new ArrayList<>(families.values());
+        }
+
+        StringBuilder out = new StringBuilder(8192);
+        for (Family family : snapshot) {
+            List<Map.Entry<String, Object>> series;
+            synchronized (families) {
+                series = new ArrayList<>(family.series.entrySet());
+            }
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.name().toLowerCase(Locale.ROOT)).append('\n');
+
+            for (Map.Entry<String, Object> entry : series) {
+                String labels = entry.getKey();
+                Object metric = entry.getValue();
+                try {
+                    if (metric instanceof Counter counter) {
+                        sample(out, family.name, labels, counter.get());
+                    } else if (metric instanceof LongSupplier fn) {
+                        sample(out, family.name, labels, fn.getAsLong());
+                    } else if (metric instanceof DoubleSupplier fn) {
+                        sample(out, family.name, labels, fn.getAsDouble());
+                    } else if (metric instanceof Histogram histogram) {
+                        histogram(out, family.name, labels, histogram);
+                    }
+                } catch (Exception e) {
+                    // one broken function shouldn't take the whole scrape down
+                    System.err.println("[Metrics] " + family.name + labels + " failed: " + e.getMessage());
+                }
+            }
+        }
+        return out.toString();
+    }
+
+    private static void histogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        String prefix = labels.isEmpty() ? "{" : labels.substring(0, labels.length() - 1) + ",";
+        long cumulative = 0;
+        for (int i = 0; i < histogram.buckets.length; i++) {
+            cumulative += histogram.buckets[i].sum();
+            String le = i < histogram.bounds.length ? formatDouble(histogram.bounds[i]) : "+Inf";
+            out.append(name).append("_bucket").append(prefix).append("le=\"").append(le).append("\"} ")
+                    .append(cumulative).append('\n');
+        }
+        sample(out, name + "_sum", labels, histogram.sumNanos.sum() / 1e9);
+        sample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, long value) {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String labels, double value) {
+        out.append(name).append(labels).append(' ').append(formatDouble(value)).append('\n');
+    }
+
+    private static String formatDouble(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        }
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value)
+                : Double.toString(value);
+    }
+}
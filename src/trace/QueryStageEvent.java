@@ -0,0 +1,30 @@
+package trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// One stage of UserQuery's pipeline: embed, vector, expand or detail.
+@Name("purple.QueryStage")
+@Label("Query Stage")
+@Category({"PurpleSearch", "Query"})
+@Description("One stage of a search request")
+@StackTrace(false)
+public class QueryStageEvent extends Event {
+
+    @Label("Stage")
+    public String stage;
+
+    @Label("Items")
+    @Description("What the stage produced: vector dimensions, hits, clusters or chat entries")
+    public int items;
+
+    @Label("Top K")
+    public int topK;
+
+    // not recorded (JFR skips transient fields); lets the stage histograms share this timing
+    public transient long startNanos;
+}
@@ -0,0 +1,38 @@
+package trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// One source file through ScrapeJava: parse, then resolve + graph writes.
+@Name("purple.ScrapeFile")
+@Label("Scrape File")
+@Category({"PurpleSearch", "Ingest"})
+@Description("Parsing and symbol resolution of one Java file")
+@StackTrace(false)
+public class ScrapeFileEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Parse Time")
+    @Timespan
+    public long parseNanos;
+
+    @Label("Resolve Time")
+    @Description("Visiting the AST: symbol resolution plus the graph writes it triggers")
+    @Timespan
+    public long resolveNanos;
+
+    @Label("Parsed")
+    public boolean parsed;
+}